@@ -0,0 +1,85 @@
+package xlong.bench;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import xlong.util.CompressionUtil;
+
+/**
+ * Compressing and decompressing 1 MB of text.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompressionBenchmark {
+
+	/** the size of the text in bytes. */
+	private static final int SIZE = 1 << 20;
+
+	/** the text. */
+	private byte[] text;
+
+	/** the compressed text. */
+	private Path compressed;
+
+	/**
+	 * Create the text, words drawn at random.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		String[] words = {"object", "blob", "leaf", "tree", "root",
+				"checksum", "file", "directory", "import", "restore"};
+		Random random = new Random(SIZE);
+		StringBuilder sb = new StringBuilder(SIZE + 16);
+		while (sb.length() < SIZE) {
+			sb.append(words[random.nextInt(words.length)])
+				.append(random.nextInt(8) == 0 ? '\n' : ' ');
+		}
+		text = sb.toString().getBytes(Charset.forName("UTF-8"));
+		compressed = Files.createTempFile("compressed", ".bench");
+		CompressionUtil.compressByteArray(text, compressed, true);
+	}
+
+	/**
+	 * Delete the compressed text.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(compressed);
+	}
+
+	/**
+	 * @return the compressed text
+	 */
+	@Benchmark
+	public byte[] compress() {
+		return CompressionUtil.compress(text);
+	}
+
+	/**
+	 * @return the text
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Benchmark
+	public byte[] decompress() throws IOException {
+		return CompressionUtil.decompressToByteArray(compressed);
+	}
+}
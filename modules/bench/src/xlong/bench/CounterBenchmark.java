@@ -0,0 +1,46 @@
+package xlong.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import xlong.util.Counter;
+
+/**
+ * Adding to one metric counter from several threads, as the workers
+ * of an import do. The Java 8 version of the counter is used on Java 8
+ * or later, see the multi-release JAR of the utilities.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CounterBenchmark {
+
+	/** the counter. */
+	private final Counter counter = new Counter();
+
+	/**
+	 * Add from four threads.
+	 */
+	@Benchmark
+	@Threads(4)
+	public void add() {
+		counter.add(64);
+	}
+
+	/**
+	 * @return the sum
+	 */
+	@Benchmark
+	public long sum() {
+		return counter.sum();
+	}
+}
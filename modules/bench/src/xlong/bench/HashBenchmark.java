@@ -0,0 +1,83 @@
+package xlong.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import xlong.util.SHA1Util;
+
+/**
+ * Hashing files and encoding checksums.
+ * Files of 4 MB or more are memory mapped, smaller files are read.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HashBenchmark {
+
+	/** the size of the file in bytes. */
+	@Param({"65536", "16777216"})
+	private int size;
+
+	/** the file. */
+	private Path file;
+
+	/** a digest to encode. */
+	private byte[] digest;
+
+	/**
+	 * Write the file.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Random random = new Random(size);
+		byte[] bytes = new byte[size];
+		random.nextBytes(bytes);
+		file = Files.createTempFile("hash", ".bench");
+		Files.write(file, bytes);
+		digest = new byte[20];
+		random.nextBytes(digest);
+	}
+
+	/**
+	 * Delete the file.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * @return the checksum of the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Benchmark
+	public String hashFile() throws IOException {
+		return SHA1Util.sha1Checksum(file);
+	}
+
+	/**
+	 * @return the hexadecimal digest
+	 */
+	@Benchmark
+	public String toHex() {
+		return SHA1Util.toHexString(digest);
+	}
+}
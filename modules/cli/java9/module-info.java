@@ -0,0 +1,26 @@
+/**
+ * The object manager, the command line, the daemon and the operators.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+module xlong.file {
+	requires transitive xlong.file.object;
+
+	exports xlong.file;
+	exports xlong.file.operator;
+
+	uses xlong.file.operator.Operator;
+
+	provides xlong.file.operator.Operator with
+		xlong.file.operator.Collect,
+		xlong.file.operator.Diff,
+		xlong.file.operator.Find,
+		xlong.file.operator.Import,
+		xlong.file.operator.Relayout,
+		xlong.file.operator.Remove,
+		xlong.file.operator.Restore,
+		xlong.file.operator.Show,
+		xlong.file.operator.Stats,
+		xlong.file.operator.Sync,
+		xlong.file.operator.Verify;
+}
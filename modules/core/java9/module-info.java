@@ -0,0 +1,10 @@
+/**
+ * The object store: blobs, leafs and trees.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+module xlong.file.object {
+	requires transitive xlong.util;
+
+	exports xlong.file.object;
+}
@@ -0,0 +1,17 @@
+/**
+ * Utilities: hashing, compression, atomic writes, metrics and tracing.
+ * The Java 11 version adds Flight Recorder for
+ * {@link xlong.util.FlightRecorderSink}.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+module xlong.util {
+	requires java.management;
+	requires jdk.jfr;
+
+	exports xlong.util;
+
+	uses xlong.util.TraceSink;
+
+	provides xlong.util.TraceSink with xlong.util.FlightRecorderSink;
+}
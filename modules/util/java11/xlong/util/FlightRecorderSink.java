@@ -0,0 +1,101 @@
+package xlong.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Sink commits a Flight Recorder event per span, with the name of the
+ * step, its subject, its size and its duration.
+ * <p>
+ * The sink is active while a recording enables the event "xlong.Span",
+ * for example when started with -XX:StartFlightRecording or by
+ * jcmd JFR.start. It follows recordings as they start and stop, so
+ * tracing costs nothing while none runs.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class FlightRecorderSink implements TraceSink {
+
+	/**
+	 * A step traced by {@link Tracer}. The event is committed when the
+	 * step ends, its own duration is 0.
+	 */
+	@Name("xlong.Span")
+	@Label("LxFile Step")
+	@Category("LxFile")
+	@Description("A step traced by xlong.util.Tracer")
+	@StackTrace(false)
+	static final class SpanEvent extends Event {
+
+		/** the name of the step. */
+		@Label("Step")
+		private String step;
+
+		/** the checksum or the file the step works on. */
+		@Label("Subject")
+		private String subject;
+
+		/** the bytes or the number of sons, -1 if unknown. */
+		@Label("Size")
+		private long size;
+
+		/** the duration of the step. */
+		@Label("Step Duration")
+		@Timespan(Timespan.NANOSECONDS)
+		private long stepDuration;
+	}
+
+	/** the type of the events. */
+	private final EventType type = EventType.getEventType(SpanEvent.class);
+
+	/** a recording enables the events or not. */
+	private volatile boolean active = type.isEnabled();
+
+	/**
+	 * Constructor, follows recordings from now on.
+	 */
+	public FlightRecorderSink() {
+		FlightRecorder.addListener(new FlightRecorderListener() {
+			@Override
+			public void recordingStateChanged(final Recording recording) {
+				boolean on = type.isEnabled();
+				if (on != active) {
+					active = on;
+					Tracer.refresh();
+				}
+			}
+		});
+	}
+
+	@Override
+	public boolean isActive() {
+		return active;
+	}
+
+	@Override
+	public void span(final Tracer.Span span) {
+		SpanEvent event = new SpanEvent();
+		if (!event.shouldCommit()) {
+			return;
+		}
+		event.step = span.getName();
+		event.subject = span.getSubject();
+		event.size = span.getSize();
+		event.stepDuration = span.getDuration();
+		event.commit();
+	}
+
+	@Override
+	public void flush() {
+		// events are written by the recording
+	}
+}
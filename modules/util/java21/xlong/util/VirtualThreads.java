@@ -0,0 +1,41 @@
+package xlong.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads.
+ * <p>
+ * Java 21 version of the multi-release JAR: the API is called
+ * directly instead of by reflection.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+final class VirtualThreads {
+
+	/** factory of virtual threads. */
+	private static final ThreadFactory FACTORY = Thread.ofVirtual().factory();
+
+	/**
+	 * Private constructor to make sure no instance of this class will be
+	 * created.
+	 */
+	private VirtualThreads() {
+		// will not be called
+	}
+
+	/**
+	 * @return a factory of virtual threads
+	 */
+	static ThreadFactory factory() {
+		return FACTORY;
+	}
+
+	/**
+	 * @return an executor runs each task in a new virtual thread
+	 */
+	static ExecutorService newExecutor() {
+		return Executors.newVirtualThreadPerTaskExecutor();
+	}
+}
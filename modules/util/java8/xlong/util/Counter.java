@@ -0,0 +1,53 @@
+package xlong.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter for many threads adding at the same time.
+ * <p>
+ * Java 8 version of the multi-release JAR: the value is kept by a
+ * {@link LongAdder}, which adds cells only when threads collide and
+ * pads them by the JVM.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Counter {
+
+	/** the value. */
+	private final LongAdder adder = new LongAdder();
+
+	/**
+	 * Add to the counter.
+	 * @param x the value to add
+	 */
+	public void add(final long x) {
+		adder.add(x);
+	}
+
+	/**
+	 * Add one to the counter.
+	 */
+	public void increment() {
+		adder.increment();
+	}
+
+	/**
+	 * Get the value. Adds at the same time may be missed.
+	 * @return the sum of all cells
+	 */
+	public long sum() {
+		return adder.sum();
+	}
+
+	/**
+	 * Set the value to zero. Adds at the same time may be lost.
+	 */
+	public void reset() {
+		adder.reset();
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(sum());
+	}
+}
@@ -0,0 +1,14 @@
+/**
+ * Utilities: hashing, compression, atomic writes, metrics and tracing.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+module xlong.util {
+	requires java.management;
+
+	exports xlong.util;
+
+	uses xlong.util.TraceSink;
+
+	provides xlong.util.TraceSink with xlong.util.FlightRecorderSink;
+}
@@ -0,0 +1,223 @@
+package xlong.file;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import xlong.file.operator.Operator;
+import xlong.file.operator.OperatorRegistry;
+
+/**
+ * Client forwards operations to a {@link Daemon}.
+ * <p>
+ * Usage: same as {@link Main}. The port of the daemon is read from
+ * the system property "lxfile.port", default {@link Daemon#DEFAULT_PORT}.
+ * The token of the daemon is read from the file given by the system
+ * property "lxfile.token", default the token file in the manager
+ * directory, see {@link Daemon#getTokenPath()}.
+ * In batch mode lines are sent without waiting for the answers.
+ * <p>
+ * Relative paths in arguments are resolved against the working
+ * directory of the client before sending, see
+ * {@link Operator#isPath(int)}. The output of operations is written
+ * to the standard output.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Client implements Closeable {
+
+	/** the maximum number of operations sent before reading answers. */
+	public static final int PIPELINE = 1024;
+
+	/** the socket. */
+	private final Socket socket;
+
+	/** the reader of answers. */
+	private final BufferedReader in;
+
+	/** the writer of requests. */
+	private final Writer out;
+
+	/** where the output of operations is written. */
+	private Appendable output = System.out;
+
+	/**
+	 * Connect to a daemon on local machine, with the token in the
+	 * token file of the manager directory.
+	 * @param port the port of the daemon
+	 * @throws IOException if an I/O error occurs
+	 */
+	public Client(final int port) throws IOException {
+		this(port, Daemon.readToken(Daemon.getTokenPath()));
+	}
+
+	/**
+	 * Connect to a daemon on local machine.
+	 * @param port the port of the daemon
+	 * @param token the token of the daemon
+	 * @throws IOException if an I/O error occurs, or the token is refused
+	 */
+	public Client(final int port, final String token) throws IOException {
+		socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		in = new BufferedReader(
+				new InputStreamReader(socket.getInputStream(), Daemon.CHARSET));
+		out = new BufferedWriter(
+				new OutputStreamWriter(socket.getOutputStream(), Daemon.CHARSET));
+		out.write(token);
+		out.write('\n');
+		out.flush();
+		if (!receive()) {
+			socket.close();
+			throw new IOException("Token refused by daemon");
+		}
+	}
+
+	/**
+	 * @param newOutput where the output of operations is written
+	 */
+	public void setOutput(final Appendable newOutput) {
+		output = newOutput;
+	}
+
+	/**
+	 * Do an operation on the daemon.
+	 * @param args arguments
+	 * @return success or not
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean operate(final String[] args) throws IOException {
+		send(args);
+		out.flush();
+		return receive();
+	}
+
+	/**
+	 * Do operations on the daemon. Up to {@link #PIPELINE} operations
+	 * are sent before reading their answers.
+	 * @param operations the operations
+	 * @return success of each operation
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean[] operate(final List<String[]> operations)
+			throws IOException {
+		boolean[] results = new boolean[operations.size()];
+		for (int start = 0; start < results.length; start += PIPELINE) {
+			int end = Math.min(start + PIPELINE, results.length);
+			for (int i = start; i < end; i++) {
+				send(operations.get(i));
+			}
+			out.flush();
+			for (int i = start; i < end; i++) {
+				results[i] = receive();
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Send an operation.
+	 * @param args arguments
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void send(final String[] args) throws IOException {
+		String[] resolved = resolvePaths(args);
+		for (int i = 0; i < resolved.length; i++) {
+			if (i > 0) {
+				out.write('\t');
+			}
+			out.write(resolved[i]);
+		}
+		out.write('\n');
+	}
+
+	/**
+	 * Resolve relative paths in arguments against the working directory.
+	 * @param args arguments
+	 * @return arguments with absolute paths
+	 */
+	static String[] resolvePaths(final String[] args) {
+		Operator o = OperatorRegistry.get(args[0]);
+		if (o == null) {
+			return args;
+		}
+		String[] resolved = args.clone();
+		for (int i = 1; i < resolved.length; i++) {
+			if (o.isPath(i)) {
+				resolved[i] = Paths.get(args[i]).toAbsolutePath().toString();
+			}
+		}
+		return resolved;
+	}
+
+	/**
+	 * Receive an answer, write the output before it.
+	 * @return success or not
+	 * @throws IOException if an I/O error occurs
+	 */
+	private boolean receive() throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.startsWith(Daemon.OUTPUT)) {
+				output.append(line, Daemon.OUTPUT.length(), line.length())
+					.append('\n');
+			} else {
+				return Daemon.OK.equals(line);
+			}
+		}
+		throw new IOException("Connection closed by daemon");
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	/**
+	 * main.
+	 * @param args arguments
+	 */
+	public static void main(final String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: Operator args... | -batch script");
+			System.exit(2);
+		}
+		int port = Integer.getInteger("lxfile.port", Daemon.DEFAULT_PORT);
+		String tokenFile = System.getProperty("lxfile.token");
+		boolean flag = true;
+		try (Client client = new Client(port, Daemon.readToken(
+				tokenFile == null ? Daemon.getTokenPath()
+						: Paths.get(tokenFile)))) {
+			if ("-batch".equals(args[0]) && args.length == 2) {
+				List<String[]> operations = new ArrayList<String[]>();
+				for (String line:Files.readAllLines(Paths.get(args[1]),
+						Charset.defaultCharset())) {
+					String[] op = ObjectManager.parseLine(line);
+					if (op != null) {
+						operations.add(op);
+					}
+				}
+				for (boolean result:client.operate(operations)) {
+					flag &= result;
+				}
+			} else {
+				flag = client.operate(args);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			flag = false;
+		}
+		System.out.flush();
+		System.exit(flag ? 0 : 1);
+	}
+}
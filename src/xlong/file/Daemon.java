@@ -0,0 +1,504 @@
+package xlong.file;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import xlong.util.Metrics;
+import xlong.util.Reporter;
+import xlong.util.SHA1Util;
+
+/**
+ * Long-lived process keeps the object manager loaded and
+ * accepts operations from local clients.
+ * <p>
+ * The daemon only listens on the loopback address. When it starts, it
+ * writes a random token to the file "daemonToken" in the manager
+ * directory, readable only by its owner. A connection is only served
+ * if its first line is the token, answered by "OK"; otherwise the
+ * daemon answers "FAIL" and closes it.
+ * <p>
+ * The protocol is line based, in UTF-8. A client sends one operation
+ * per line, arguments separated by tabs (see
+ * {@link ObjectManager#parseLine(String)}). For each line the daemon
+ * sends the output of the operator and its messages, each line
+ * prefixed by "&gt; ", then one line, "OK" or "FAIL". Answers are in
+ * the order of the requests. A client can send several lines before
+ * reading the answers. Each connection has its own session.
+ * <p>
+ * Two lines are handled by the daemon itself:
+ * "Save" saves the manager, "Shutdown" saves the manager and stops
+ * the daemon, closing all connections. The manager is also saved
+ * periodically when it may have changed, and when the daemon stops.
+ * <p>
+ * The metrics of the storage are registered to JMX,
+ * see {@link Metrics}.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Daemon {
+
+	/** the default port. */
+	public static final int DEFAULT_PORT = 7771;
+
+	/** the default interval to save the manager, in milliseconds. */
+	public static final long DEFAULT_SAVE_INTERVAL = 10000;
+
+	/** answer of a success operation. */
+	public static final String OK = "OK";
+
+	/** answer of a failed operation. */
+	public static final String FAIL = "FAIL";
+
+	/** command to save the manager. */
+	public static final String SAVE = "Save";
+
+	/** command to stop the daemon. */
+	public static final String SHUTDOWN = "Shutdown";
+
+	/** prefix of a line of output. */
+	public static final String OUTPUT = "> ";
+
+	/** name of the token file in the manager directory. */
+	public static final String TOKEN_NAME = "daemonToken";
+
+	/** number of random bytes of the token. */
+	private static final int TOKEN_BYTES = 20;
+
+	/** time to wait for the token of a connection, in milliseconds. */
+	private static final int AUTH_TIMEOUT = 10000;
+
+	/** the charset of the protocol. */
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	/** the port. */
+	private final int port;
+
+	/** the interval to save the manager. */
+	private final long saveInterval;
+
+	/** the server socket. */
+	private ServerSocket server;
+
+	/** threads serve connections. */
+	private ExecutorService workers;
+
+	/** thread saves the manager. */
+	private ScheduledExecutorService saver;
+
+	/** operations done since last save or not. */
+	private final AtomicBoolean changed = new AtomicBoolean(false);
+
+	/** stopped or not. */
+	private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+	/** the connections being served. */
+	private final Set<Socket> connections = Collections.newSetFromMap(
+			new ConcurrentHashMap<Socket, Boolean>());
+
+	/** the token clients must send. */
+	private byte[] token;
+
+	/**
+	 * Constructor.
+	 * @param inPort the port to listen, 0 for any free port
+	 * @param inSaveInterval the interval to save the manager,
+	 * in milliseconds
+	 */
+	public Daemon(final int inPort, final long inSaveInterval) {
+		port = inPort;
+		saveInterval = inSaveInterval;
+	}
+
+	/**
+	 * Load the manager and start to accept connections.
+	 * @return success or not
+	 */
+	public boolean start() {
+		if (!ObjectManager.loadManager()) {
+			return false;
+		}
+		try {
+			token = createToken();
+			server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		workers = Executors.newCachedThreadPool();
+		saver = Executors.newSingleThreadScheduledExecutor();
+		saver.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				saveIfChanged();
+			}
+		}, saveInterval, saveInterval, TimeUnit.MILLISECONDS);
+		workers.execute(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Create a random token and write it to the token file,
+	 * readable only by the owner if the system supports it.
+	 * @return the token
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static byte[] createToken() throws IOException {
+		byte[] random = new byte[TOKEN_BYTES];
+		new SecureRandom().nextBytes(random);
+		byte[] bytes = SHA1Util.toHexString(random).getBytes(CHARSET);
+		Path path = getTokenPath();
+		Files.createDirectories(path.getParent());
+		Files.deleteIfExists(path);
+		try {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(
+					PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			Files.createFile(path);
+		}
+		Files.write(path, bytes);
+		return bytes;
+	}
+
+	/**
+	 * @return the path of the token file
+	 */
+	public static Path getTokenPath() {
+		return Paths.get(Manager.getManagerDir(), TOKEN_NAME);
+	}
+
+	/**
+	 * Read the token of the running daemon.
+	 * @param path the token file
+	 * @return the token
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static String readToken(final Path path) throws IOException {
+		return new String(Files.readAllBytes(path), CHARSET).trim();
+	}
+
+	/**
+	 * @return the port listened
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Stop the daemon and save the manager.
+	 * @return saved or not
+	 */
+	public boolean stop() {
+		if (!stopped.compareAndSet(false, true)) {
+			return true;
+		}
+		try {
+			server.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		for (Socket socket:new ArrayList<Socket>(connections)) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		saver.shutdown();
+		workers.shutdown();
+		try {
+			Files.deleteIfExists(getTokenPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return ObjectManager.saveManager();
+	}
+
+	/**
+	 * Wait until the daemon stops.
+	 * @throws InterruptedException if interrupted
+	 */
+	public void await() throws InterruptedException {
+		while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+			continue;
+		}
+	}
+
+	/**
+	 * Save the manager if operations done since last save.
+	 */
+	private void saveIfChanged() {
+		if (changed.getAndSet(false)) {
+			if (!ObjectManager.saveManager()) {
+				changed.set(true);
+			}
+		}
+	}
+
+	/**
+	 * Accept connections until stopped.
+	 */
+	private void accept() {
+		while (!stopped.get()) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (SocketException e) {
+				return;
+			} catch (IOException e) {
+				e.printStackTrace();
+				continue;
+			}
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					serve(socket);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Serve a connection.
+	 * Answers are flushed when no more request is buffered.
+	 * @param socket the socket
+	 */
+	private void serve(final Socket socket) {
+		connections.add(socket);
+		if (stopped.get()) {
+			connections.remove(socket);
+			close(socket);
+			return;
+		}
+		Session session = new Session();
+		try {
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(socket.getInputStream(), CHARSET));
+			OutputStream out = new BufferedOutputStream(
+					socket.getOutputStream());
+			boolean authorized = authorize(socket, in);
+			answer(out, authorized);
+			out.flush();
+			if (!authorized) {
+				return;
+			}
+			ReplyStream reply = new ReplyStream(out);
+			PrintStream output = new PrintStream(reply, false, CHARSET.name());
+			session.setOut(output);
+			Reporter.Sink sink = new Reporter.StreamSink(output);
+			String line;
+			while ((line = in.readLine()) != null) {
+				boolean flag;
+				String command = line.trim();
+				boolean shutdown = SHUTDOWN.equals(command);
+				if (shutdown) {
+					connections.remove(socket);
+					flag = stop();
+				} else if (SAVE.equals(command)) {
+					changed.set(false);
+					flag = ObjectManager.saveManager();
+				} else {
+					String[] args = ObjectManager.parseLine(line);
+					Reporter.setThreadSink(sink);
+					try {
+						flag = args == null
+								|| ObjectManager.operate(session, args);
+					} finally {
+						Reporter.setThreadSink(null);
+					}
+					changed.set(true);
+				}
+				output.flush();
+				reply.endLine();
+				answer(out, flag);
+				if (shutdown) {
+					break;
+				}
+				if (!in.ready()) {
+					out.flush();
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			if (!stopped.get()) {
+				e.printStackTrace();
+			}
+		} finally {
+			connections.remove(socket);
+			close(socket);
+		}
+	}
+
+	/**
+	 * Read the token of a connection.
+	 * @param socket the socket
+	 * @param in the reader of the socket
+	 * @return the token is right or not
+	 */
+	private boolean authorize(final Socket socket, final BufferedReader in) {
+		String line;
+		try {
+			socket.setSoTimeout(AUTH_TIMEOUT);
+			line = in.readLine();
+			socket.setSoTimeout(0);
+		} catch (IOException e) {
+			return false;
+		}
+		return line != null
+				&& MessageDigest.isEqual(token, line.getBytes(CHARSET));
+	}
+
+	/**
+	 * Write the answer line of a request.
+	 * @param out the output of the socket
+	 * @param flag success or not
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void answer(final OutputStream out, final boolean flag)
+			throws IOException {
+		out.write((flag ? OK : FAIL).getBytes(CHARSET));
+		out.write('\n');
+	}
+
+	/**
+	 * Close a socket.
+	 * @param socket the socket
+	 */
+	private static void close(final Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Stream of the output of operations to a client, each line is
+	 * prefixed by {@link #OUTPUT}.
+	 */
+	private static final class ReplyStream extends OutputStream {
+
+		/** the prefix in bytes. */
+		private static final byte[] PREFIX = OUTPUT.getBytes(CHARSET);
+
+		/** the output of the socket. */
+		private final OutputStream out;
+
+		/** at the start of a line or not. */
+		private boolean lineStart = true;
+
+		/**
+		 * Constructor.
+		 * @param inOut the output of the socket
+		 */
+		ReplyStream(final OutputStream inOut) {
+			out = inOut;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			if (lineStart) {
+				out.write(PREFIX);
+				lineStart = false;
+			}
+			out.write(b);
+			if (b == '\n') {
+				lineStart = true;
+			}
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len)
+				throws IOException {
+			int start = off;
+			int end = off + len;
+			for (int i = off; i < end; i++) {
+				if (b[i] == '\n') {
+					if (lineStart) {
+						out.write(PREFIX);
+					}
+					out.write(b, start, i + 1 - start);
+					start = i + 1;
+					lineStart = true;
+				}
+			}
+			if (start < end) {
+				if (lineStart) {
+					out.write(PREFIX);
+					lineStart = false;
+				}
+				out.write(b, start, end - start);
+			}
+		}
+
+		/**
+		 * End the last line of output if it is not ended.
+		 * @throws IOException if an I/O error occurs
+		 */
+		void endLine() throws IOException {
+			if (!lineStart) {
+				out.write('\n');
+				lineStart = true;
+			}
+		}
+	}
+
+	/**
+	 * main.
+	 * Usage: [port [saveInterval]]
+	 * @param args arguments
+	 * @throws InterruptedException if interrupted
+	 */
+	public static void main(final String[] args) throws InterruptedException {
+		int port = DEFAULT_PORT;
+		long interval = DEFAULT_SAVE_INTERVAL;
+		if (args.length > 0) {
+			port = Integer.parseInt(args[0]);
+		}
+		if (args.length > 1) {
+			interval = Long.parseLong(args[1]);
+		}
+		final Daemon daemon = new Daemon(port, interval);
+		Metrics.register();
+		if (!daemon.start()) {
+			System.exit(1);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				daemon.stop();
+			}
+		});
+		System.out.println("Listening on " + daemon.getPort());
+		daemon.await();
+	}
+}
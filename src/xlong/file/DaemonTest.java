@@ -0,0 +1,164 @@
+package xlong.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import xlong.file.object.Object;
+
+/**
+ * test Daemon and Client.
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class DaemonTest {
+
+	/**
+	 * Create test directory and files before test.
+	 * Create a test directory data/test/
+	 * If the directory already exist, the test will fail.
+	 * Set objectDir of Object Class to data/test/object
+	 */
+	@BeforeClass
+	public static final void before() {
+		System.out.println("Preparing test file...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			fail("The test directory already exist."
+				+ "Please delete the directory \"data/test\" and retry.");
+		} else {
+			try {
+				Files.createDirectories(dir);
+			} catch (IOException e) {
+				fail("Can't create the test directory.");
+				e.printStackTrace();
+			}
+		}
+		Object.setObjectDir("data/test/object");
+		Manager.setManagerDir("data/test/manager");
+	}
+	
+	/**
+	 * Delete test directory and all files in it.
+	 */
+	@AfterClass
+	public static final void after() {
+		System.out.println("Deleting test files...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			if (!deleteFile(dir.toFile())) {
+				fail("Can't delete test files.");
+			}
+		} 
+		System.out.println("Finish.");
+	}
+	
+	/**
+	 * Delete a file or directory.
+	 * @param file the file to delete
+	 * @return success or not
+	 */
+	private static boolean deleteFile(final File file) {
+		if (file.exists()) {
+			if (file.isFile()) {
+				return file.delete();
+			} else if (file.isDirectory()) {
+				boolean flag = true;
+				File[] files = file.listFiles();
+				for (int i = 0; i < files.length; i++) {
+					flag &= deleteFile(files[i]);
+				}
+				flag &= file.delete();
+				return flag;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * test.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testDaemon() throws IOException {
+		Daemon daemon = new Daemon(0, Daemon.DEFAULT_SAVE_INTERVAL);
+		assertTrue(daemon.start());
+		Path tokenPath = Daemon.getTokenPath();
+		assertTrue(Files.exists(tokenPath));
+		if (Files.getFileStore(tokenPath).supportsFileAttributeView(
+				PosixFileAttributeView.class)) {
+			assertEquals(PosixFilePermissions.fromString("rw-------"),
+					Files.getPosixFilePermissions(tokenPath));
+		}
+		try {
+			new Client(daemon.getPort(), "wrong").close();
+			fail("A wrong token is accepted.");
+		} catch (IOException e) {
+			// expected
+		}
+		Client other = new Client(daemon.getPort());
+		try (Client client = new Client(daemon.getPort())) {
+			assertTrue(client.operate(new String[]{"Import", "src", "Daemon"}));
+			assertFalse(client.operate(new String[]{"NoSuchOperator"}));
+			List<String[]> operations = new ArrayList<String[]>();
+			operations.add(new String[]{"Import", "src", "Pipelined"});
+			operations.add(new String[]{"Import", "src", "Daemon"});
+			operations.add(new String[]{"Remove", "Pipelined"});
+			boolean[] results = client.operate(operations);
+			assertTrue(results[0]);
+			assertFalse(results[1]);
+			assertTrue(results[2]);
+
+			StringBuilder output = new StringBuilder();
+			client.setOutput(output);
+			assertTrue(client.operate(new String[]{"Find", "DaemonTest.java"}));
+			assertTrue(output.toString().contains("DaemonTest.java"));
+
+			assertTrue(client.operate(new String[]{Daemon.SHUTDOWN}));
+		}
+		try {
+			other.operate(new String[]{"Find", "DaemonTest.java"});
+			fail("A connection is open after shutdown.");
+		} catch (IOException e) {
+			// expected
+		} finally {
+			other.close();
+		}
+		assertFalse(Files.exists(tokenPath));
+		assertTrue(Files.exists(ObjectManager.getPath()));
+		assertTrue(ObjectManager.loadManager());
+		assertFalse(ObjectManager.checkRootName("Daemon"));
+		assertTrue(ObjectManager.checkRootName("Pipelined"));
+	}
+
+	/**
+	 * test relative paths are resolved by the client.
+	 */
+	@Test
+	public final void testResolvePaths() {
+		String[] args = Client.resolvePaths(
+				new String[]{"Import", "src", "Root"});
+		assertEquals(Paths.get("src").toAbsolutePath().toString(), args[1]);
+		assertEquals("Root", args[2]);
+		args = Client.resolvePaths(new String[]{"Restore", "Root", "out"});
+		assertEquals("Root", args[1]);
+		assertEquals(Paths.get("out").toAbsolutePath().toString(), args[2]);
+		args = Client.resolvePaths(new String[]{"Find", "src"});
+		assertEquals("src", args[1]);
+	}
+
+}
@@ -0,0 +1,187 @@
+package xlong.file;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import xlong.file.object.Container;
+import xlong.file.object.Leaf;
+import xlong.file.object.Object;
+import xlong.file.object.Tree;
+import xlong.util.AtomicWriter;
+
+/**
+ * Mark and sweep garbage collector of objects.
+ * <p>
+ * Mark phase marks all objects reachable from the roots of the
+ * object manager through Tree, Leaf and Blob links.
+ * A subtree already marked is not visited again, so shared
+ * subtrees are only loaded once.
+ * Containers are loaded shallowly, only their son checksums are read.
+ * <p>
+ * Sweep phase deletes all unmarked object files in the object directory,
+ * and temporary files left by a crash.
+ * Objects written after the collection started are kept, so imports
+ * running with the collection are not broken.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class GarbageCollector {
+
+	/** the checksums of marked objects. */
+	private Set<String> marked;
+
+	/** the roots already marked. */
+	private Set<String> markedRoots;
+
+	/** the time the collection started. */
+	private long startTime;
+
+	/** number of deleted objects. */
+	private long deletedCount;
+
+	/** number of deleted bytes. */
+	private long deletedBytes;
+
+	/**
+	 * Constructor.
+	 */
+	public GarbageCollector() {
+		marked = new HashSet<String>();
+		markedRoots = new HashSet<String>();
+		startTime = System.currentTimeMillis();
+		deletedCount = 0;
+		deletedBytes = 0;
+	}
+
+	/**
+	 * Run mark and sweep.
+	 * @return success or not
+	 */
+	public boolean collect() {
+		if (!mark()) {
+			return false;
+		}
+		return sweep();
+	}
+
+	/**
+	 * Mark all objects reachable from the current roots.
+	 * Can be called again to mark roots added after the last call.
+	 * @return success or not
+	 */
+	public boolean mark() {
+		List<String> roots =
+				new ArrayList<String>(ObjectManager.getRootMap().values());
+		for (String root:roots) {
+			if (markedRoots.add(root)) {
+				try {
+					markContainer(root);
+				} catch (IOException e) {
+					e.printStackTrace();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Mark a container and all objects reachable from it.
+	 * @param checksum the checksum of the container
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void markContainer(final String checksum) throws IOException {
+		if (!marked.add(checksum)) {
+			return;
+		}
+		Container con = Container.loadShallow(checksum);
+		if (con == null) {
+			throw new IOException("Can't load container " + checksum);
+		}
+		if (con instanceof Leaf) {
+			marked.add(((Leaf) con).getBlobChecksum());
+		} else {
+			Tree tree = (Tree) con;
+			for (String son:tree.getLeafChecksums().values()) {
+				markContainer(son);
+			}
+			for (String son:tree.getTreeChecksums().values()) {
+				markContainer(son);
+			}
+		}
+	}
+
+	/**
+	 * Delete all unmarked objects.
+	 * Roots added after mark are marked before deleting.
+	 * @return success or not
+	 */
+	public boolean sweep() {
+		if (!mark()) {
+			return false;
+		}
+		Path objectDir = Paths.get(Object.getObjectDir());
+		if (!Files.isDirectory(objectDir)) {
+			return true;
+		}
+		try {
+			// waiting objects are renamed, not taken for crash leftovers
+			AtomicWriter.flush();
+			Files.walkFileTree(objectDir, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(final Path file,
+						final BasicFileAttributes attrs) throws IOException {
+					String checksum = Object.pathToChecksum(file);
+					if (checksum != null && !marked.contains(checksum)
+							&& attrs.lastModifiedTime().toMillis()
+								< startTime) {
+						Files.delete(file);
+						ObjectManager.forgetObject(checksum);
+						deletedCount++;
+						deletedBytes += attrs.size();
+					} else if (checksum == null && AtomicWriter.isTemp(file)
+							&& attrs.lastModifiedTime().toMillis()
+								< startTime) {
+						// left by a crash
+						Files.delete(file);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of marked objects
+	 */
+	public long getMarkedCount() {
+		return marked.size();
+	}
+
+	/**
+	 * @return the number of deleted objects
+	 */
+	public long getDeletedCount() {
+		return deletedCount;
+	}
+
+	/**
+	 * @return the number of deleted bytes
+	 */
+	public long getDeletedBytes() {
+		return deletedBytes;
+	}
+}
@@ -0,0 +1,135 @@
+package xlong.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import xlong.file.object.Container;
+import xlong.file.object.Object;
+import xlong.util.SHA1Util;
+
+/**
+ * test GarbageCollector.
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class GarbageCollectorTest {
+
+	/** the time to wait for file modified time. */
+	private static final long WAIT = 1100;
+	
+	/**
+	 * Create test directory and files before test.
+	 * Create a test directory data/test/
+	 * If the directory already exist, the test will fail.
+	 * Create a test file gc/gc.test in test directory.
+	 * Set objectDir of Object Class to data/test/object
+	 */
+	@BeforeClass
+	public static final void before() {
+		System.out.println("Preparing test file...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			fail("The test directory already exist."
+				+ "Please delete the directory \"data/test\" and retry.");
+		} else {
+			try {
+				Files.createDirectories(dir.resolve("gc"));
+			} catch (IOException e) {
+				fail("Can't create the test directory.");
+				e.printStackTrace();
+			}
+		}
+		try {
+			BufferedWriter out =
+					new BufferedWriter(
+							new FileWriter("data/test/gc/gc.test"));
+			out.write("only referenced by the removed root\n");
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("Can't create the test file.");
+		}
+		Object.setObjectDir("data/test/object");
+		Manager.setManagerDir("data/test/manager");
+	}
+	
+	/**
+	 * Delete test directory and all files in it.
+	 */
+	@AfterClass
+	public static final void after() {
+		System.out.println("Deleting test files...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			if (!deleteFile(dir.toFile())) {
+				fail("Can't delete test files.");
+			}
+		} 
+		System.out.println("Finish.");
+	}
+	
+	/**
+	 * Delete a file or directory.
+	 * @param file the file to delete
+	 * @return success or not
+	 */
+	private static boolean deleteFile(final File file) {
+		if (file.exists()) {
+			if (file.isFile()) {
+				return file.delete();
+			} else if (file.isDirectory()) {
+				boolean flag = true;
+				File[] files = file.listFiles();
+				for (int i = 0; i < files.length; i++) {
+					flag &= deleteFile(files[i]);
+				}
+				flag &= file.delete();
+				return flag;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * test.
+	 * @throws Exception if fail
+	 */
+	@Test
+	public final void testCollect() throws Exception {
+		ObjectManager.loadManager();
+		if (!ObjectManager.operate(new String[]{"Import", "src", "Codes"})) {
+			fail();
+		}
+		if (!ObjectManager.operate(
+				new String[]{"Import", "data/test/gc", "Tmp"})) {
+			fail();
+		}
+		String codes = ObjectManager.getRootMap().get("Codes");
+		String blob = SHA1Util.sha1Checksum(Paths.get("data/test/gc/gc.test"));
+		assertTrue(Files.exists(Object.checksumToPath(blob)));
+		
+		Thread.sleep(WAIT);
+		if (!ObjectManager.operate(new String[]{"Remove", "Tmp"})) {
+			fail();
+		}
+		GarbageCollector gc = new GarbageCollector();
+		assertTrue(gc.collect());
+		assertEquals(3, gc.getDeletedCount());
+		assertTrue(!Files.exists(Object.checksumToPath(blob)));
+		assertNotNull(Container.load(codes));
+	}
+
+}
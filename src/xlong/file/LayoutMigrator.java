@@ -0,0 +1,233 @@
+package xlong.file;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import xlong.file.object.Object;
+import xlong.util.AtomicWriter;
+import xlong.util.Reporter;
+
+/**
+ * Move the objects of the object directory to a new layout,
+ * see {@link Object}.
+ * <p>
+ * The new layout is recorded first, with the old one as the previous
+ * layout, so objects not moved yet are still found in the old one.
+ * Only this switch runs alone, see {@link ObjectManager#exclusive}:
+ * operations write objects in the layout they see, and an object
+ * written in the old layout after link phase walked its directory
+ * would be lost. After the switch, other operations go on: they write
+ * new objects in the new layout, and find objects not moved yet in the
+ * old one, so they do not store them twice.
+ * <p>
+ * Link phase links each object file into the new layout, or copies it
+ * if links are not supported. Clean phase deletes the old files and
+ * the directories the new layout does not use. The previous layout is
+ * dropped only when both are done.
+ * <p>
+ * A stopped migration goes on when run again with the same layout,
+ * whether it was stopped in link or clean phase.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class LayoutMigrator {
+
+	/** the new layout. */
+	private final int[] target;
+
+	/** the progress of the migration. */
+	private final Reporter.Meter meter = new Reporter.Meter("Relayout");
+
+	/** number of objects linked into the new layout. */
+	private long movedCount;
+
+	/** number of old files deleted. */
+	private long removedCount;
+
+	/**
+	 * Constructor.
+	 * @param inTarget the new layout
+	 */
+	public LayoutMigrator(final int[] inTarget) {
+		target = inTarget.clone();
+	}
+
+	/**
+	 * Switch to the new layout, then run link and clean.
+	 * @return success or not
+	 */
+	public boolean migrate() {
+		int[] current = Object.getLayout();
+		int[] previous = Object.getPreviousLayout();
+		Path objectDir = Paths.get(Object.getObjectDir());
+		try {
+			if (previous == null) {
+				if (Arrays.equals(current, target)) {
+					return true;
+				}
+				if (!ObjectManager.exclusive(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws IOException {
+						return switchLayout();
+					}
+				})) {
+					return false;
+				}
+			} else if (!Arrays.equals(current, target)) {
+				Reporter.error("Moving to layout "
+						+ Object.formatLayout(current) + ", finish it first");
+				return false;
+			}
+			if (Files.isDirectory(objectDir)) {
+				link(objectDir);
+				AtomicWriter.flush();
+				clean(objectDir);
+			}
+			Object.setLayout(target, null);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		meter.finish();
+		return true;
+	}
+
+	/**
+	 * Record the new layout, with the current one as the previous
+	 * layout. Run alone.
+	 * @return switched or not, false if another migration started
+	 * @throws IOException if an I/O error occurs
+	 */
+	private boolean switchLayout() throws IOException {
+		int[] current = Object.getLayout();
+		if (Object.getPreviousLayout() != null) {
+			Reporter.error("Moving to layout "
+					+ Object.formatLayout(current) + ", finish it first");
+			return false;
+		}
+		// objects waiting to be renamed land in the current layout
+		AtomicWriter.flush();
+		Object.setLayout(target, current);
+		return true;
+	}
+
+	/**
+	 * Link each object file not in the new layout into it.
+	 * @param objectDir the object directory
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void link(final Path objectDir) throws IOException {
+		Files.walkFileTree(objectDir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file,
+					final BasicFileAttributes attrs) throws IOException {
+				String checksum = Object.pathToChecksum(file);
+				if (checksum == null) {
+					return FileVisitResult.CONTINUE;
+				}
+				Path to = Object.checksumToPath(checksum);
+				if (!to.equals(file)) {
+					Files.createDirectories(to.getParent());
+					try {
+						Files.createLink(to, file);
+						movedCount++;
+					} catch (FileAlreadyExistsException e) {
+						// written again, or linked by a stopped migration
+					} catch (UnsupportedOperationException | IOException e) {
+						if (AtomicWriter.copy(file, to)) {
+							movedCount++;
+						}
+					}
+					meter.add(1, attrs.size());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Delete old files already in the new layout and the empty
+	 * directories the new layout does not use.
+	 * @param objectDir the object directory
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void clean(final Path objectDir) throws IOException {
+		Files.walkFileTree(objectDir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file,
+					final BasicFileAttributes attrs) throws IOException {
+				String checksum = Object.pathToChecksum(file);
+				if (checksum != null) {
+					Path to = Object.checksumToPath(checksum);
+					if (!to.equals(file) && Files.exists(to)) {
+						Files.delete(file);
+						removedCount++;
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(final Path dir,
+					final IOException e) throws IOException {
+				if (e != null) {
+					throw e;
+				}
+				if (!isUsed(objectDir.relativize(dir))) {
+					try {
+						Files.delete(dir);
+					} catch (DirectoryNotEmptyException
+							| NoSuchFileException ex) {
+						// still in use
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Whether the new layout uses a directory.
+	 * @param relative the directory, relative to the object directory
+	 * @return used or not
+	 */
+	private boolean isUsed(final Path relative) {
+		if (relative.toString().isEmpty()) {
+			return true;
+		}
+		int depth = relative.getNameCount();
+		if (depth > target.length) {
+			return false;
+		}
+		for (int i = 0; i < depth; i++) {
+			if (relative.getName(i).toString().length() != target[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of objects linked into the new layout
+	 */
+	public long getMovedCount() {
+		return movedCount;
+	}
+
+	/**
+	 * @return the number of old files deleted
+	 */
+	public long getRemovedCount() {
+		return removedCount;
+	}
+}
@@ -0,0 +1,174 @@
+package xlong.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import xlong.file.object.Blob;
+import xlong.file.object.Container;
+import xlong.file.object.Object;
+import xlong.util.SHA1Util;
+
+/**
+ * test LayoutMigrator.
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class LayoutMigratorTest {
+
+	/** the charset of test files. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Create test directory and files before test.
+	 * Create a test directory data/test/
+	 * If the directory already exist, the test will fail.
+	 * Create test files in layout/ in test directory.
+	 * Set objectDir of Object Class to data/test/object
+	 */
+	@BeforeClass
+	public static final void before() {
+		System.out.println("Preparing test file...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			fail("The test directory already exist."
+				+ "Please delete the directory \"data/test\" and retry.");
+		}
+		try {
+			Path src = dir.resolve("layout");
+			Files.createDirectories(src.resolve("sub"));
+			Files.write(src.resolve("a.txt"), "file a\n".getBytes(UTF8));
+			Files.write(src.resolve("sub/b.txt"), "file b\n".getBytes(UTF8));
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("Can't create the test files.");
+		}
+		Object.setObjectDir("data/test/object");
+		Manager.setManagerDir("data/test/manager");
+	}
+
+	/**
+	 * Delete test directory and all files in it.
+	 */
+	@AfterClass
+	public static final void after() {
+		System.out.println("Deleting test files...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			if (!deleteFile(dir.toFile())) {
+				fail("Can't delete test files.");
+			}
+		}
+		System.out.println("Finish.");
+	}
+
+	/**
+	 * Delete a file or directory.
+	 * @param file the file to delete
+	 * @return success or not
+	 */
+	private static boolean deleteFile(final File file) {
+		if (file.exists()) {
+			if (file.isFile()) {
+				return file.delete();
+			} else if (file.isDirectory()) {
+				boolean flag = true;
+				File[] files = file.listFiles();
+				for (int i = 0; i < files.length; i++) {
+					flag &= deleteFile(files[i]);
+				}
+				flag &= file.delete();
+				return flag;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Test parsing layouts.
+	 */
+	@Test
+	public final void testParse() {
+		assertEquals("2/2", Object.formatLayout(Object.parseLayout(" 2/2")));
+		assertEquals("3/3", Object.formatLayout(Object.parseLayout("3/3")));
+		assertNull(Object.parseLayout("2/x"));
+		assertNull(Object.parseLayout("0"));
+		assertNull(Object.parseLayout("20/20"));
+	}
+
+	/**
+	 * test.
+	 * @throws Exception if fail
+	 */
+	@Test
+	public final void testMigrate() throws Exception {
+		ObjectManager.loadManager();
+		if (!ObjectManager.operate(
+				new String[]{"Import", "data/test/layout", "Layout"})) {
+			fail();
+		}
+		String root = ObjectManager.getRootMap().get("Layout");
+		String a = SHA1Util.sha1Checksum(Paths.get("data/test/layout/a.txt"));
+		Path old = Paths.get("data/test/object", a.substring(0, 2),
+				a.substring(2));
+		assertTrue(Files.exists(old));
+
+		assertTrue(ObjectManager.operate(new String[]{"Relayout", "2/2"}));
+		Path moved = Paths.get("data/test/object", a.substring(0, 2),
+				a.substring(2, 4), a.substring(4));
+		assertTrue(Files.exists(moved));
+		assertFalse(Files.exists(old));
+		assertNotNull(Container.load(root));
+
+		// the layout is read again from the object directory
+		Object.setObjectDir("data/test/object");
+		assertEquals("2/2", Object.formatLayout(Object.getLayout()));
+		assertNull(Object.getPreviousLayout());
+		assertEquals(moved, Object.checksumToPath(a));
+
+		// a migration stopped in clean phase goes on
+		Files.createLink(old, moved);
+		Object.setLayout(new int[] {2, 2}, new int[] {2});
+		assertTrue(ObjectManager.operate(new String[]{"Relayout", "2/2"}));
+		assertFalse(Files.exists(old));
+		assertTrue(Files.exists(moved));
+		assertNull(Object.getPreviousLayout());
+
+		// objects not moved yet are found in the previous layout
+		Object.setLayout(new int[] {3}, new int[] {2, 2});
+		assertEquals(moved, Object.findPath(a));
+		// and are not stored again
+		Blob.create(Paths.get("data/test/layout/a.txt"), true);
+		assertFalse(Files.exists(Object.checksumToPath(a)));
+		assertNotNull(Container.load(root));
+		LayoutMigrator migrator = new LayoutMigrator(new int[] {3});
+		assertTrue(migrator.migrate());
+		assertEquals(6, migrator.getMovedCount());
+		assertEquals(6, migrator.getRemovedCount());
+		assertFalse(Files.exists(moved));
+		assertFalse(Files.exists(moved.getParent()));
+		assertEquals(Paths.get("data/test/object", a.substring(0, 3),
+				a.substring(3)), Object.findPath(a));
+		assertNotNull(Container.load(root));
+
+		Verifier verifier = new Verifier(2, false);
+		assertTrue(verifier.verify());
+		assertTrue(verifier.isClean());
+		assertTrue(ObjectManager.operate(new String[]{"Relayout", "2"}));
+		assertTrue(Files.exists(old));
+	}
+
+}
@@ -0,0 +1,98 @@
+package xlong.file;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import xlong.util.AtomicWriter;
+import xlong.util.FileExecutors;
+import xlong.util.Reporter;
+
+/**
+ * Command line entry.
+ * <p>
+ * Usage:
+ * <ul>
+ * <li>Operator args... : do one operation.</li>
+ * <li>-batch script : do all operations in the script,
+ * "-" reads the script from standard input.</li>
+ * </ul>
+ * The manager is loaded once before and saved once after the operations.
+ * <p>
+ * Messages are reported by {@link Reporter}, set the system property
+ * "lxfile.level" to DEBUG to see one message per object.
+ * On Java 21 or later, set "lxfile.virtual" to import and restore
+ * with one virtual thread per file, see {@link FileExecutors}.
+ * Set "lxfile.sync" to choose when objects are forced to the disk,
+ * see {@link AtomicWriter}. Set "lxfile.pool" to the number of loaded
+ * objects kept in memory, see {@link ObjectManager}.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Main {
+
+	/**
+	 * Private constructor to make sure no instance of this class will be
+	 * created.
+	 */
+	private Main() {
+		// will not be called
+	}
+
+	/**
+	 * main.
+	 * @param args arguments
+	 */
+	public static void main(final String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: Operator args... | -batch script");
+			System.exit(2);
+		}
+		if (!ObjectManager.loadManager()) {
+			System.exit(1);
+		}
+		boolean flag;
+		if ("-batch".equals(args[0])) {
+			if (args.length != 2) {
+				System.err.println("Usage: -batch script");
+				System.exit(2);
+			}
+			flag = runScript(args[1]);
+		} else {
+			flag = ObjectManager.operate(args);
+		}
+		if (!ObjectManager.saveManager()) {
+			flag = false;
+		}
+		Reporter.flush();
+		System.exit(flag ? 0 : 1);
+	}
+
+	/**
+	 * run a script.
+	 * @param script the path of the script, "-" for standard input
+	 * @return success or not
+	 */
+	private static boolean runScript(final String script) {
+		try {
+			BufferedReader in;
+			if ("-".equals(script)) {
+				in = new BufferedReader(new InputStreamReader(System.in));
+			} else {
+				in = Files.newBufferedReader(Paths.get(script),
+						Charset.defaultCharset());
+			}
+			try {
+				return ObjectManager.operateScript(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+}
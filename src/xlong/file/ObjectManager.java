@@ -1,29 +1,60 @@
 package xlong.file;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.PrintStream;
 import java.io.Serializable;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Stack;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import xlong.file.object.Leaf;
 import xlong.file.object.Container;
+import xlong.file.object.Object;
+import xlong.file.object.SizeCache;
 import xlong.file.object.Tree;
 import xlong.file.operator.Operator;
+import xlong.file.operator.OperatorRegistry;
+import xlong.util.AtomicWriter;
+import xlong.util.BloomFilter;
 import xlong.util.CompressionUtil;
+import xlong.util.LruCache;
+import xlong.util.Metrics;
 
 /** 
  * Manager to manage objects.
  * Can only have one instance.
+ * <p>
+ * The manager keeps the shared storage: roots, relations and
+ * loaded containers. All of them are safe to use from several threads.
+ * Navigation state is kept in sessions, each thread has its own
+ * session unless another session is given to operate.
+ * <p>
+ * The storage stays one per process, reached by static methods: the
+ * object directory, the index, the filter and the sizes of blobs are
+ * also kept per process, so two managers could not share a process
+ * safely anyway. Concurrent operations share the manager and use
+ * separate sessions instead.
+ * <p>
+ * At most "lxfile.pool" ({@value #DEFAULT_POOL}) loaded containers are
+ * kept, the ones used least recently are dropped first.
  */
 public final class ObjectManager extends Manager implements Serializable {
 
@@ -31,40 +62,74 @@ public final class ObjectManager extends Manager implements Serializable {
 	private static final long serialVersionUID = -6743983541821444460L;
 	
 	/** current objectManager. */
-	private static ObjectManager manager = null;
+	private static volatile ObjectManager manager = null;
 	
 	/** name of the objectManager. */
 	private static final String NAME = "objectManager";
 	
-	/** map to record fathers and correspond roots of a object.*/
-	private TreeMap<String, TreeMap<String, Set<String>>> fatherMap;
+	/** name of the filter of objects. */
+	private static final String FILTER_NAME = "objectFilter";
 	
-	/** map to record rootName and rootChecksum. */
-	private TreeMap<String, String> rootMap;
+	/** name of the sizes of blobs. */
+	private static final String SIZES_NAME = "blobSizes.log";
+	
+	/** initial capacity of the filter of objects. */
+	private static final long FILTER_CAPACITY = 1 << 20;
 	
-	/** the current position. */
-	private static Container curPos;
+	/** false positive probability of the filter of objects. */
+	private static final double FILTER_FPP = 0.01;
 	
-	/** the current root. */
-	private static Container curRoot;
+	/** number of locks to guard relations. */
+	private static final int STRIPES = 64;
 	
-	/** the stack to record history positions. */
-	private static Stack<Container> posStack;
+	/** default maximum number of loaded containers kept. */
+	public static final int DEFAULT_POOL = 1 << 16;
 	
-	/** the stack to record history roots. */
-	private static Stack<Container> rootStack;
+	/** maximum number of loaded containers kept. */
+	private static final int POOL_CAPACITY =
+			Integer.getInteger("lxfile.pool", DEFAULT_POOL);
+
+	/** the session of current thread. */
+	private static final ThreadLocal<Session> SESSION =
+			new ThreadLocal<Session>() {
+				@Override
+				protected Session initialValue() {
+					return new Session();
+				}
+			};
+
+	/**
+	 * lock between operations. Operations hold the read lock,
+	 * exclusive operations hold the write lock.
+	 */
+	private static final ReentrantReadWriteLock OPERATION_LOCK =
+			new ReentrantReadWriteLock();
+
+	/** locks to guard relations, chosen by son. */
+	private static final java.lang.Object[] RELATION_LOCKS =
+			new java.lang.Object[STRIPES];
+	static {
+		for (int i = 0; i < STRIPES; i++) {
+			RELATION_LOCKS[i] = new java.lang.Object();
+		}
+	}
+
+	/** map to record fathers and correspond roots of a object.*/
+	private ConcurrentSkipListMap<String,
+			ConcurrentSkipListMap<String, Set<String>>> fatherMap;
 	
-	/** the stack to record history operations. */
-	private static Stack<String[]> operationStack;
+	/** map to record rootName and rootChecksum. */
+	private ConcurrentSkipListMap<String, String> rootMap;
 	
 	/** the pool of loaded container. */
-	private static TreeMap<String, Container> containerPool;
+	private transient LruCache<String, Container> containerPool;
 	
 	/** private constructor.
 	 */
 	private ObjectManager() {
-		fatherMap = new TreeMap<String, TreeMap<String, Set<String>>>();
-		rootMap = new TreeMap<String, String>();
+		fatherMap = new ConcurrentSkipListMap<String,
+				ConcurrentSkipListMap<String, Set<String>>>();
+		rootMap = new ConcurrentSkipListMap<String, String>();
 		recover();
 	}
 	
@@ -72,12 +137,39 @@ public final class ObjectManager extends Manager implements Serializable {
 	 * recover when load.
 	 */
 	private void recover() {
-		setCurPos(null);
-		setCurRoot(null);
-		posStack = new Stack<Container>();
-		rootStack = new Stack<Container>();
-		operationStack = new Stack<String[]>();
-		containerPool = new TreeMap<String, Container>();
+		containerPool = new LruCache<String, Container>(POOL_CAPACITY, STRIPES);
+	}
+
+	/**
+	 * Read the maps into concurrent maps.
+	 * Managers saved with plain sorted maps can also be read.
+	 * @param in the input stream
+	 * @throws IOException if an I/O error occurs
+	 * @throws ClassNotFoundException if a class cannot be found
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(final ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		Map<String, ? extends Map<String, ? extends Set<String>>> fars =
+				(Map<String, ? extends Map<String, ? extends Set<String>>>)
+				fields.get("fatherMap", null);
+		Map<String, String> roots =
+				(Map<String, String>) fields.get("rootMap", null);
+		fatherMap = new ConcurrentSkipListMap<String,
+				ConcurrentSkipListMap<String, Set<String>>>();
+		for (Entry<String, ? extends Map<String, ? extends Set<String>>> en
+				:fars.entrySet()) {
+			ConcurrentSkipListMap<String, Set<String>> fathers =
+					new ConcurrentSkipListMap<String, Set<String>>();
+			for (Entry<String, ? extends Set<String>> father
+					:en.getValue().entrySet()) {
+				fathers.put(father.getKey(),
+						new ConcurrentSkipListSet<String>(father.getValue()));
+			}
+			fatherMap.put(en.getKey(), fathers);
+		}
+		rootMap = new ConcurrentSkipListMap<String, String>(roots);
 	}
 	
 	/**
@@ -89,12 +181,20 @@ public final class ObjectManager extends Manager implements Serializable {
 		return path;
 	}
 	
+	/**
+	 * Get the current manager.
+	 * @return the manager, null if not loaded
+	 */
+	public static ObjectManager getManager() {
+		return manager;
+	}
+
 	/**
 	 * load a manager to current manager from file.
 	 * if the manager doen't exist, create a new manager.
 	 * @return success of not
 	 */
-	public static boolean loadManager() {
+	public static synchronized boolean loadManager() {
 		Path filePath = getPath();
 		if (Files.exists(filePath)) {
 			byte[] bytesArray;
@@ -119,10 +219,68 @@ public final class ObjectManager extends Manager implements Serializable {
 		} else {
 			manager = new ObjectManager();
 		}
-        return true;
+		SESSION.remove();
+        return PathIndex.loadIndex() && loadFilter() && loadSizes();
+	}
+	
+	/**
+	 * load the sizes of blobs.
+	 * @return success or not
+	 */
+	private static boolean loadSizes() {
+		try {
+			SizeCache.load(Paths.get(getManagerDir(), SIZES_NAME));
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * load the filter of objects in the object directory.
+	 * if the filter doesn't exist, scan the object directory.
+	 * @return success or not
+	 */
+	private static boolean loadFilter() {
+		Path filePath = Paths.get(getManagerDir(), FILTER_NAME);
+		if (Files.exists(filePath)) {
+			try {
+				Object.setFilter(BloomFilter.load(filePath));
+				return true;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		final BloomFilter filter = new BloomFilter(FILTER_CAPACITY, FILTER_FPP);
+		Path objectDir = Paths.get(Object.getObjectDir());
+		if (Files.isDirectory(objectDir)) {
+			try {
+				Files.walkFileTree(objectDir, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(final Path file,
+							final BasicFileAttributes attrs) {
+						String checksum = Object.pathToChecksum(file);
+						if (checksum != null) {
+							filter.add(checksum);
+						}
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (IOException e) {
+				e.printStackTrace();
+				return false;
+			}
+		}
+		Object.setFilter(filter);
+		return true;
 	}
 	
 	/** save the current manager.
+	 * Objects written before are forced to the disk first, then the
+	 * manager replaces the old one atomically. The sizes of blobs
+	 * changed since the last save are appended to their log after,
+	 * out of the exclusive lock.
 	 * 
 	 * @return success or not
 	 */
@@ -130,18 +288,34 @@ public final class ObjectManager extends Manager implements Serializable {
 		if (manager == null) {
 			return false;
 		}
-		ByteArrayOutputStream bs = new ByteArrayOutputStream();
-        ObjectOutputStream os;
+		Lock lock = OPERATION_LOCK.writeLock();
+		lock.lock();
 		try {
+			ByteArrayOutputStream bs = new ByteArrayOutputStream();
+	        ObjectOutputStream os;
 			os = new ObjectOutputStream(bs);
 			os.writeObject(manager);
 	        byte[] bytesArray = bs.toByteArray();
 			Path outFilePath = getPath();
-			if (Files.exists(outFilePath)) {
-				Files.delete(outFilePath);
-			}
         	Files.createDirectories(outFilePath.getParent());
-			CompressionUtil.compressByteArray(bytesArray, outFilePath);
+			AtomicWriter.flush();
+			CompressionUtil.compressByteArray(bytesArray, outFilePath, true);
+			if (!PathIndex.saveIndex()) {
+				return false;
+			}
+			BloomFilter filter = Object.getFilter();
+			if (filter != null) {
+				filter.save(Paths.get(getManagerDir(), FILTER_NAME));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			lock.unlock();
+		}
+		try {
+			// only a cache, appended while operations go on
+			SizeCache.save(Paths.get(getManagerDir(), SIZES_NAME));
 		} catch (IOException e) {
 			e.printStackTrace();
 			return false;
@@ -152,23 +326,38 @@ public final class ObjectManager extends Manager implements Serializable {
 	
 	/** 
 	 * get the container with given checksum.
+	 * The loaded container is added into the container pool.
 	 * if not exist return null.
 	 * @param checksum the checksum
 	 * @return the object
 	 */
 	public static Container getContainer(final String checksum) {
-		if (getContainerPool().containsKey(checksum)) {
-			return getContainerPool().get(checksum);
-		} else {
-			Container con;
-			try {
-				con = Container.load(checksum);
-			} catch (IOException e) {
-				e.printStackTrace();
-				return null;
-			}
+		Container con = getContainerPool().get(checksum);
+		if (con != null) {
+			Metrics.POOL_HITS.increment();
 			return con;
 		}
+		Metrics.POOL_MISSES.increment();
+		try {
+			con = Container.load(checksum);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		if (con == null) {
+			return null;
+		}
+		Container old = getContainerPool().putIfAbsent(checksum, con);
+		return old == null ? con : old;
+	}
+
+	/**
+	 * Get the lock to guard relations of a son.
+	 * @param son the son
+	 * @return the lock
+	 */
+	private static java.lang.Object relationLock(final String son) {
+		return RELATION_LOCKS[(son.hashCode() & Integer.MAX_VALUE) % STRIPES];
 	}
 	
 	/**
@@ -178,15 +367,21 @@ public final class ObjectManager extends Manager implements Serializable {
 	 * @param root the relation
 	 */
 	public static void putRelation(final String son, final String father, final String root) {
-		TreeMap<String, TreeMap<String, Set<String>>> farMap = getFatherMap();
-		if (!farMap.containsKey(son)) {
-			farMap.put(son, new TreeMap<String, Set<String>>());
-		}
-		TreeMap<String, Set<String>> fars = farMap.get(son);
-		if (!fars.containsKey(father)) {
-			fars.put(father, new TreeSet<String>());
+		ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, Set<String>>> farMap =
+				getFatherMap();
+		synchronized (relationLock(son)) {
+			ConcurrentSkipListMap<String, Set<String>> fars = farMap.get(son);
+			if (fars == null) {
+				fars = new ConcurrentSkipListMap<String, Set<String>>();
+				farMap.put(son, fars);
+			}
+			Set<String> roots = fars.get(father);
+			if (roots == null) {
+				roots = new ConcurrentSkipListSet<String>();
+				fars.put(father, roots);
+			}
+			roots.add(root);
 		}
-		fars.get(father).add(root);
 	}
 	
 	/**
@@ -240,12 +435,91 @@ public final class ObjectManager extends Manager implements Serializable {
 	}
 	
 	/**
-	 * put a new root. Please check root name first.
+	 * put a new root.
+	 * Fail if the root name is already used.
 	 * @param root the root
 	 * @param rootName the name of the root
+	 * @return success or not
+	 */
+	public static boolean putRoot(final Container root, final String rootName) {
+		if (getRootMap().putIfAbsent(rootName, root.getChecksum()) != null) {
+			return false;
+		}
+		rootsChanged();
+		return true;
+	}
+	
+	/**
+	 * remove a root. The objects only reachable from the root
+	 * stay in the file system until the garbage collector runs.
+	 * @param rootName the name of the root
+	 * @return success or not
+	 */
+	public static boolean removeRoot(final String rootName) {
+		String checksum = getRootMap().remove(rootName);
+		if (checksum == null) {
+			return false;
+		}
+		rootsChanged();
+		if (!getRootMap().containsValue(checksum)) {
+			removeRelation(checksum);
+		}
+		if (getCurRoot() != null
+				&& checksum.equals(getCurRoot().getChecksum())) {
+			setCurPos(null);
+			setCurRoot(null);
+		}
+		return true;
+	}
+	
+	/**
+	 * tell the path index the roots changed.
+	 */
+	private static void rootsChanged() {
+		PathIndex index = PathIndex.getIndex();
+		if (index != null) {
+			index.rootsChanged();
+		}
+	}
+	
+	/**
+	 * remove all son-father relations of a root.
+	 * @param root the root
+	 */
+	private static void removeRelation(final String root) {
+		for (Entry<String, ConcurrentSkipListMap<String, Set<String>>> son
+				:getFatherMap().entrySet()) {
+			synchronized (relationLock(son.getKey())) {
+				ConcurrentSkipListMap<String, Set<String>> fars = son.getValue();
+				Iterator<Set<String>> roots = fars.values().iterator();
+				while (roots.hasNext()) {
+					Set<String> rootSet = roots.next();
+					rootSet.remove(root);
+					if (rootSet.isEmpty()) {
+						roots.remove();
+					}
+				}
+				if (fars.isEmpty()) {
+					getFatherMap().remove(son.getKey(), fars);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * forget a deleted object.
+	 * @param checksum the checksum of the object
 	 */
-	public static void putRoot(final Container root, final String rootName) {
-		getRootMap().put(rootName, root.getChecksum());
+	public static void forgetObject(final String checksum) {
+		getContainerPool().remove(checksum);
+		SizeCache.remove(checksum);
+		synchronized (relationLock(checksum)) {
+			getFatherMap().remove(checksum);
+		}
+		PathIndex index = PathIndex.getIndex();
+		if (index != null) {
+			index.forget(checksum);
+		}
 	}
 	
 	/**
@@ -253,10 +527,7 @@ public final class ObjectManager extends Manager implements Serializable {
 	 * @param root the new root
 	 */
 	public static void changeRoot(final Container root) {
-		setCurPos(root);
-		setCurRoot(root);
-		getPosStack().push(root);
-		getRootStack().push(root);
+		getSession().changeRoot(root);
 	}
 	
 	/**
@@ -264,8 +535,7 @@ public final class ObjectManager extends Manager implements Serializable {
 	 * @param root the new position
 	 */
 	public static void changePos(final Container root) {
-		setCurPos(root);
-		getPosStack().push(root);
+		getSession().changePos(root);
 	}
 	
 	/**
@@ -273,31 +543,60 @@ public final class ObjectManager extends Manager implements Serializable {
 	 * @return the root list string.
 	 */
 	public static String listRoot() {
-		String s = "";
+		StringBuilder s = new StringBuilder();
+		try {
+			listRoot(s);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return s.toString();
+	}
+	
+	/**
+	 * write all root.
+	 * @param out the output
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void listRoot(final Appendable out) throws IOException {
 		for (Entry<String, String> en:getRootMap().entrySet()) {
-			s = s + en.getKey() + " : " + en.getValue() + "\n";
+			out.append(en.getKey()).append(" : ")
+				.append(en.getValue()).append('\n');
 		}
-		return s;
 	}
+	
 	/**
 	 * list all son father relations.
 	 * @return the relation string.
 	 */
 	public static String listFather() {
-		String s = "";
+		StringBuilder s = new StringBuilder();
+		try {
+			listFather(s);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return s.toString();
+	}
+	
+	/**
+	 * write all son father relations.
+	 * @param out the output
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void listFather(final Appendable out) throws IOException {
 		String i1 = "    ";
-		for (Entry<String, TreeMap<String, Set<String>>> en:getFatherMap().entrySet()) {
-			s = s + en.getKey() + ":\n";
-			TreeMap<String, Set<String>> fathers = en.getValue();
+		for (Entry<String, ConcurrentSkipListMap<String, Set<String>>> en
+				:getFatherMap().entrySet()) {
+			out.append(en.getKey()).append(":\n");
+			ConcurrentSkipListMap<String, Set<String>> fathers = en.getValue();
 			for (Entry<String, Set<String>> father:fathers.entrySet()) {
-				s = s + i1 + father.getKey() + " ( ";
+				out.append(i1).append(father.getKey()).append(" ( ");
 				for (String root:father.getValue()) {
-					s = s + root + " ";
+					out.append(root).append(' ');
 				}
-				s = s + ")\n";
+				out.append(")\n");
 			}
 		}
-		return s;
 	}
 	
 	/** 
@@ -331,7 +630,7 @@ public final class ObjectManager extends Manager implements Serializable {
 	}
 	
 	/**
-	 * do operate on current manager.
+	 * do operate on current manager with the session of current thread.
 	 * @param args arguments
 	 * @return success or not.
 	 */
@@ -343,10 +642,30 @@ public final class ObjectManager extends Manager implements Serializable {
 		if (n < 1) {
 			return false;
 		}
+		Operator o = OperatorRegistry.get(args[0]);
+		if (o == null) {
+			System.err.println("Unknown operator " + args[0]);
+			return false;
+		}
 		try {
-			Operator o = (Operator) Class.forName("xlong.file.operator." + args[0]).newInstance();
-			if (!o.operate(manager, args)) {
-				return false;
+			Lock lock;
+			if (o.isExclusive()) {
+				lock = OPERATION_LOCK.writeLock();
+			} else {
+				lock = OPERATION_LOCK.readLock();
+			}
+			lock.lock();
+			try {
+				if (!o.operate(manager, args)) {
+					return false;
+				}
+			} finally {
+				try {
+					// no file waits to be renamed between operations
+					AtomicWriter.endBatch();
+				} finally {
+					lock.unlock();
+				}
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -355,52 +674,158 @@ public final class ObjectManager extends Manager implements Serializable {
 		return true;
 	}
 
+	/**
+	 * Run a step of an operation alone, as an exclusive operation runs.
+	 * The operation lets its read lock go while it waits for the write
+	 * lock, so other exclusive operations may run before the step, and
+	 * holds the read lock again after.
+	 * @param <T> the type of the result
+	 * @param step the step
+	 * @return the result of the step
+	 * @throws IOException if the step fails
+	 */
+	public static <T> T exclusive(final Callable<T> step)
+			throws IOException {
+		int held = OPERATION_LOCK.getReadHoldCount();
+		for (int i = 0; i < held; i++) {
+			OPERATION_LOCK.readLock().unlock();
+		}
+		OPERATION_LOCK.writeLock().lock();
+		try {
+			return step.call();
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		} finally {
+			for (int i = 0; i < held; i++) {
+				OPERATION_LOCK.readLock().lock();
+			}
+			OPERATION_LOCK.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * do operations in a script on current manager.
+	 * Each line of the script is an operation.
+	 * Arguments are separated by tabs if the line contains a tab,
+	 * else by white spaces.
+	 * Empty lines and lines start with # are ignored.
+	 * A failed operation does not stop the script.
+	 * @param script the script
+	 * @return all operations success or not
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static boolean operateScript(final BufferedReader script)
+			throws IOException {
+		boolean flag = true;
+		String line;
+		while ((line = script.readLine()) != null) {
+			String[] args = parseLine(line);
+			if (args == null) {
+				continue;
+			}
+			if (!operate(args)) {
+				System.err.println("Fail: " + line);
+				flag = false;
+			}
+		}
+		return flag;
+	}
+	
+	/**
+	 * parse a line of script to arguments.
+	 * @param line the line
+	 * @return the arguments, null if the line is not an operation
+	 */
+	public static String[] parseLine(final String line) {
+		String trimmed = line.trim();
+		if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+			return null;
+		}
+		if (trimmed.indexOf('\t') >= 0) {
+			return trimmed.split("\t");
+		}
+		return trimmed.split("\\s+");
+	}
+	
+	/**
+	 * do operate on current manager with given session.
+	 * @param session the session
+	 * @param args arguments
+	 * @return success or not.
+	 */
+	public static boolean operate(final Session session, final String[] args) {
+		Session old = SESSION.get();
+		SESSION.set(session);
+		try {
+			return operate(args);
+		} finally {
+			SESSION.set(old);
+		}
+	}
+
+	/**
+	 * @return the session of current thread
+	 */
+	public static Session getSession() {
+		return SESSION.get();
+	}
+
+	/**
+	 * @return the output of operators of the session of current thread
+	 */
+	public static PrintStream getOut() {
+		return getSession().getOut();
+	}
+
 	/**
 	 * @return the curPos
 	 */
 	public static Container getCurPos() {
-		return curPos;
+		return getSession().getCurPos();
 	}
 
 	/**
 	 * @param newCurPos the curPos to set
 	 */
 	public static void setCurPos(final Container newCurPos) {
-		curPos = newCurPos;
+		getSession().setCurPos(newCurPos);
 	}
 
 	/**
 	 * @return the curRoot
 	 */
 	public static Container getCurRoot() {
-		return curRoot;
+		return getSession().getCurRoot();
 	}
 
 	/**
 	 * @param newCurRoot the curRoot to set
 	 */
 	public static void setCurRoot(final Container newCurRoot) {
-		curRoot = newCurRoot;
+		getSession().setCurRoot(newCurRoot);
 	}
 
 	/**
 	 * @return the posStack
 	 */
 	public static Stack<Container> getPosStack() {
-		return posStack;
+		return getSession().getPosStack();
 	}
 
 	/**
 	 * @return the rootStack
 	 */
 	public static Stack<Container> getRootStack() {
-		return rootStack;
+		return getSession().getRootStack();
 	}
 
 	/**
 	 * @return the fatherMap
 	 */
-	public static TreeMap<String, TreeMap<String, Set<String>>> getFatherMap() {
+	public static ConcurrentSkipListMap<String,
+			ConcurrentSkipListMap<String, Set<String>>> getFatherMap() {
 		return manager.fatherMap;
 	}
 
@@ -408,20 +833,20 @@ public final class ObjectManager extends Manager implements Serializable {
 	 * @return the operationStack
 	 */
 	public static Stack<String[]> getOperationStack() {
-		return operationStack;
+		return getSession().getOperationStack();
 	}
 
 	/**
 	 * @return the containerPool
 	 */
-	public static TreeMap<String, Container> getContainerPool() {
-		return containerPool;
+	public static LruCache<String, Container> getContainerPool() {
+		return manager.containerPool;
 	}
 
 	/**
 	 * @return the rootMap
 	 */
-	public static TreeMap<String, String> getRootMap() {
+	public static ConcurrentSkipListMap<String, String> getRootMap() {
 		return manager.rootMap;
 	}
 }
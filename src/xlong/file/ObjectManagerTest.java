@@ -2,8 +2,10 @@ package xlong.file;
 
 import static org.junit.Assert.*;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -96,5 +98,55 @@ public class ObjectManagerTest {
 		System.out.print(ObjectManager.listRoot());
 		System.out.print(ObjectManager.listFather());
 	}
+	
+	/**
+	 * test imports from several threads with their own sessions.
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	public final void testConcurrentImport() throws InterruptedException {
+		ObjectManager.loadManager();
+		final int n = 4;
+		final boolean[] results = new boolean[n];
+		final Session[] sessions = new Session[n];
+		Thread[] threads = new Thread[n];
+		for (int i = 0; i < n; i++) {
+			final int id = i;
+			sessions[id] = new Session();
+			threads[id] = new Thread() {
+				@Override
+				public void run() {
+					results[id] = ObjectManager.operate(sessions[id],
+							new String[]{"Import", "src", "Concurrent" + id});
+				}
+			};
+			threads[id].start();
+		}
+		for (int i = 0; i < n; i++) {
+			threads[i].join();
+			assertTrue(results[i]);
+			assertEquals(ObjectManager.getRootMap().get("Concurrent" + i),
+					sessions[i].getCurRoot().getChecksum());
+		}
+		assertNull(ObjectManager.getCurRoot());
+	}
+	
+	/**
+	 * test script of operations.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testScript() throws IOException {
+		ObjectManager.loadManager();
+		String script = "# import and remove\n"
+				+ "Import\tsrc\tScript\n"
+				+ "\n"
+				+ "Remove Script\n";
+		assertTrue(ObjectManager.operateScript(
+				new BufferedReader(new StringReader(script))));
+		assertTrue(ObjectManager.checkRootName("Script"));
+		assertFalse(ObjectManager.operateScript(
+				new BufferedReader(new StringReader("NoSuchOperator\n"))));
+	}
 
 }
@@ -0,0 +1,1003 @@
+package xlong.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import xlong.file.object.Container;
+import xlong.file.object.Object;
+import xlong.file.object.Tree;
+import xlong.util.AtomicWriter;
+import xlong.util.CompressionUtil;
+
+/**
+ * Index of object names to find files by name or glob across all roots.
+ * <p>
+ * The index keeps one link per son of each indexed tree:
+ * the tree checksum, the nickname, the son checksum and its type.
+ * Trees are indexed by content, so a subtree shared by many roots
+ * is indexed once, and an import only indexes trees not seen before.
+ * Nicknames are kept in a sorted term dictionary for exact and prefix
+ * queries, and reversed in another one for suffix queries.
+ * <p>
+ * The roots and paths of a link are found by following the links
+ * up to the trees which are current roots, so removed roots are not
+ * found. The roots and paths of trees are kept for later queries
+ * until the links or the roots change.
+ * Links of deleted trees are dropped by {@link #forget(String)}.
+ * <p>
+ * The index is saved whole now and then, with a log of the links added
+ * and the trees forgotten since. A save appends only the changes to the
+ * log, the index is saved whole again when most of the log is out of
+ * date. A log line cut short by a crash is ignored.
+ * <p>
+ * Patterns are globs: "*" matches any characters in a name,
+ * "**" matches across "/", "?" matches one character, "[...]" and
+ * "{a,b}" as usual. A pattern without "/" is matched against names,
+ * a pattern with "/" against whole paths in roots.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class PathIndex implements Serializable {
+
+	/** for serialization. */
+	private static final long serialVersionUID = 4412037153265860934L;
+
+	/** name of the index. */
+	private static final String NAME = "pathIndex";
+
+	/** name of the log of changes since the index was saved whole. */
+	private static final String LOG_NAME = "pathIndex.log";
+
+	/** the log is rewritten if it has more lines than this many per link. */
+	private static final int REWRITE_RATIO = 2;
+
+	/** the log is never rewritten if it has fewer lines than this. */
+	private static final int REWRITE_MIN = 1 << 16;
+
+	/** the charset of the log. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** separator of paths. */
+	private static final String SEPARATOR = "/";
+
+	/** the largest character, to end prefix ranges. */
+	private static final char MAX_CHAR = Character.MAX_VALUE;
+
+	/** current index. */
+	private static volatile PathIndex index = null;
+
+	/** map of nicknames to links. */
+	private ConcurrentSkipListMap<String, Set<Link>> names;
+
+	/** map of reversed nicknames to links, same sets as names. */
+	private ConcurrentSkipListMap<String, Set<Link>> reversedNames;
+
+	/** map of tree checksums to links of their sons. */
+	private ConcurrentHashMap<String, Set<Link>> sons;
+
+	/** map of son checksums to links from their fathers. */
+	private ConcurrentHashMap<String, Set<Link>> fathers;
+
+	/** the number of times the index was saved whole, names its log. */
+	private long generation;
+
+	/** the log lines not saved yet. */
+	private transient ConcurrentLinkedQueue<String> changes;
+
+	/** the number of links. */
+	private transient AtomicLong linkCount;
+
+	/** the number of changes to the links and the roots. */
+	private transient AtomicLong version;
+
+	/** the roots and paths of trees found by earlier queries. */
+	private transient volatile Located located;
+
+	/** the number of lines in the log. Guarded by the class. */
+	private transient long logLines;
+
+	/** the log is out of date or damaged. Guarded by the class. */
+	private transient boolean damaged;
+
+	/**
+	 * A son of an indexed tree.
+	 */
+	private static final class Link implements Serializable {
+
+		/** for serialization. */
+		private static final long serialVersionUID = -2769386213914624155L;
+
+		/** the checksum of the tree, null for a leaf root. */
+		private final String father;
+
+		/** the nickname. */
+		private final String name;
+
+		/** the checksum of the son. */
+		private final String son;
+
+		/** the type of the son. */
+		private final int type;
+
+		/**
+		 * Constructor.
+		 * @param inFather the checksum of the tree
+		 * @param inName the nickname
+		 * @param inSon the checksum of the son
+		 * @param inType the type of the son
+		 */
+		Link(final String inFather, final String inName, final String inSon,
+				final int inType) {
+			father = inFather;
+			name = inName;
+			son = inSon;
+			type = inType;
+		}
+
+		@Override
+		public boolean equals(final java.lang.Object o) {
+			if (!(o instanceof Link)) {
+				return false;
+			}
+			Link l = (Link) o;
+			return type == l.type && name.equals(l.name) && son.equals(l.son)
+					&& (father == null ? l.father == null
+							: father.equals(l.father));
+		}
+
+		@Override
+		public int hashCode() {
+			int h = name.hashCode() * 31 + son.hashCode();
+			if (father != null) {
+				h = h * 31 + father.hashCode();
+			}
+			return h;
+		}
+	}
+
+	/**
+	 * A found object.
+	 */
+	public static final class Hit {
+
+		/** the name of the root. */
+		private final String root;
+
+		/** the path in the root. */
+		private final String path;
+
+		/** the checksum of the tree contains the object, null if root. */
+		private final String father;
+
+		/** the checksum of the object. */
+		private final String checksum;
+
+		/** the type of the object. */
+		private final int type;
+
+		/**
+		 * Constructor.
+		 * @param inRoot the name of the root
+		 * @param inPath the path in the root
+		 * @param inFather the checksum of the tree contains the object
+		 * @param inChecksum the checksum of the object
+		 * @param inType the type of the object
+		 */
+		Hit(final String inRoot, final String inPath, final String inFather,
+				final String inChecksum, final int inType) {
+			root = inRoot;
+			path = inPath;
+			father = inFather;
+			checksum = inChecksum;
+			type = inType;
+		}
+
+		/**
+		 * @return the name of the root
+		 */
+		public String getRoot() {
+			return root;
+		}
+
+		/**
+		 * @return the path in the root, separated by "/"
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * @return the checksum of the tree contains the object,
+		 * null if the object is a root
+		 */
+		public String getFather() {
+			return father;
+		}
+
+		/**
+		 * @return the checksum of the object
+		 */
+		public String getChecksum() {
+			return checksum;
+		}
+
+		/**
+		 * @return Object.LEAF or Object.TREE
+		 */
+		public int getType() {
+			return type;
+		}
+
+		@Override
+		public String toString() {
+			return root + ":" + path + " "
+					+ (type == Object.TREE ? "Tree " : "Leaf ") + checksum;
+		}
+	}
+
+	/**
+	 * Roots and paths of trees, found for a version of the index.
+	 */
+	private static final class Located {
+
+		/** the version of the index. */
+		private final long version;
+
+		/** the map of root checksums to root names. */
+		private final Map<String, List<String>> roots;
+
+		/** the roots and paths of trees found. */
+		private final ConcurrentHashMap<String, List<String[]>> trees =
+				new ConcurrentHashMap<String, List<String[]>>();
+
+		/**
+		 * Constructor.
+		 * @param inVersion the version of the index
+		 * @param inRoots the map of root checksums to root names
+		 */
+		Located(final long inVersion, final Map<String, List<String>> inRoots) {
+			version = inVersion;
+			roots = inRoots;
+		}
+	}
+
+	/**
+	 * private constructor.
+	 */
+	private PathIndex() {
+		names = new ConcurrentSkipListMap<String, Set<Link>>();
+		reversedNames = new ConcurrentSkipListMap<String, Set<Link>>();
+		sons = new ConcurrentHashMap<String, Set<Link>>();
+		fathers = new ConcurrentHashMap<String, Set<Link>>();
+		init();
+	}
+
+	/**
+	 * Read the index and count its links.
+	 * @param in the input stream
+	 * @throws IOException if an I/O error occurs
+	 * @throws ClassNotFoundException if a class cannot be found
+	 */
+	private void readObject(final ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+		for (Set<Link> set:names.values()) {
+			linkCount.addAndGet(set.size());
+		}
+	}
+
+	/**
+	 * Initialize the fields not saved.
+	 */
+	private void init() {
+		changes = new ConcurrentLinkedQueue<String>();
+		linkCount = new AtomicLong();
+		version = new AtomicLong();
+	}
+
+	/**
+	 * Get the index path.
+	 * @return the path
+	 */
+	public static Path getPath() {
+		return Paths.get(Manager.getManagerDir(), NAME);
+	}
+
+	/**
+	 * Get the log path.
+	 * @return the path
+	 */
+	private static Path getLogPath() {
+		return Paths.get(Manager.getManagerDir(), LOG_NAME);
+	}
+
+	/**
+	 * Get the current index.
+	 * @return the index, null if not loaded
+	 */
+	public static PathIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Load the index from file and replay its log. If the index doesn't
+	 * exist, create a new index of all current roots. The file names of
+	 * leaf roots are not known then, they are named by their root names.
+	 * @return success or not
+	 */
+	public static synchronized boolean loadIndex() {
+		Path filePath = getPath();
+		if (Files.exists(filePath)) {
+			try {
+				byte[] bytesArray = CompressionUtil.decompressToByteArray(filePath);
+				if (bytesArray == null) {
+					return false;
+				}
+				ObjectInputStream oi = new ObjectInputStream(
+						new ByteArrayInputStream(bytesArray));
+				PathIndex newIndex = (PathIndex) oi.readObject();
+				newIndex.replay(getLogPath());
+				index = newIndex;
+			} catch (ClassNotFoundException | IOException e) {
+				e.printStackTrace();
+				return false;
+			}
+			return true;
+		}
+		PathIndex newIndex = new PathIndex();
+		newIndex.damaged = true;
+		try {
+			// a log of a lost index must not be replayed on the new one
+			Files.deleteIfExists(getLogPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		for (Entry<String, String> en:ObjectManager.getRootMap().entrySet()) {
+			try {
+				Container con = Container.loadShallow(en.getValue());
+				if (con == null) {
+					return false;
+				}
+				newIndex.add(con, en.getKey());
+			} catch (IOException e) {
+				e.printStackTrace();
+				return false;
+			}
+		}
+		index = newIndex;
+		return true;
+	}
+
+	/**
+	 * Save the current index. The changes since the last save are
+	 * appended to the log, the index is saved whole if the log is
+	 * mostly out of date. Must not run with operations.
+	 * @return success or not
+	 */
+	public static synchronized boolean saveIndex() {
+		PathIndex current = index;
+		if (current == null) {
+			return false;
+		}
+		try {
+			current.save();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Append the changes to the log, or save the index whole.
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void save() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = changes.poll()) != null) {
+			lines.add(line);
+		}
+		boolean done = false;
+		try {
+			Path log = getLogPath();
+			Files.createDirectories(log.getParent());
+			if (damaged || !Files.exists(log) || logLines + lines.size()
+					> Math.max(REWRITE_MIN, linkCount.get() * REWRITE_RATIO)) {
+				rewrite(log);
+			} else if (!lines.isEmpty()) {
+				StringBuilder sb = new StringBuilder();
+				for (String change:lines) {
+					sb.append(change).append('\n');
+				}
+				try (OutputStream out = Files.newOutputStream(log,
+						StandardOpenOption.APPEND)) {
+					out.write(sb.toString().getBytes(UTF8));
+				}
+				logLines += lines.size();
+			}
+			done = true;
+		} finally {
+			if (!done) {
+				// the log may end with a part of the lines
+				damaged = true;
+			}
+		}
+	}
+
+	/**
+	 * Save the index whole and start a new log. The log of the last
+	 * generation is ignored if the new log is not written.
+	 * @param log the log
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void rewrite(final Path log) throws IOException {
+		damaged = true;
+		generation++;
+		ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		ObjectOutputStream os = new ObjectOutputStream(bs);
+		os.writeObject(this);
+		os.flush();
+		CompressionUtil.compressByteArray(bs.toByteArray(), getPath(), true);
+		AtomicWriter.write(log, ("G " + generation + "\n").getBytes(UTF8),
+				true);
+		logLines = 1;
+		damaged = false;
+	}
+
+	/**
+	 * Replay the log of the index. The log is ignored if it is of
+	 * another generation, the last line is ignored if it is cut short.
+	 * @param log the log
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void replay(final Path log) throws IOException {
+		if (!Files.exists(log)) {
+			damaged = true;
+			return;
+		}
+		String[] lines = new String(Files.readAllBytes(log), UTF8)
+				.split("\n", -1);
+		// the last piece is empty if the log ends with a new line
+		damaged = !lines[lines.length - 1].isEmpty();
+		if (lines.length < 2 || !lines[0].equals("G " + generation)) {
+			damaged = true;
+			return;
+		}
+		for (int i = 1; i < lines.length - 1; i++) {
+			read(lines[i]);
+		}
+		logLines = lines.length - 1;
+	}
+
+	/**
+	 * Read a line of the log: "L type father son name" for a link,
+	 * father "-" for a leaf root, or "F checksum" for a forgotten object.
+	 * @param line the line
+	 */
+	private void read(final String line) {
+		if (line.startsWith("F ")) {
+			drop(line.substring(2));
+			return;
+		}
+		String[] parts = line.split(" ", 5);
+		if (parts.length < 5 || !parts[0].equals("L")) {
+			return;
+		}
+		int type;
+		try {
+			type = Integer.parseInt(parts[1]);
+		} catch (NumberFormatException e) {
+			return;
+		}
+		String father = parts[2].equals("-") ? null : parts[2];
+		Link link = new Link(father, parts[4], parts[3], type);
+		if (father != null) {
+			Set<Link> links = sons.get(father);
+			if (links == null) {
+				Set<Link> newSet = newSet();
+				links = sons.putIfAbsent(father, newSet);
+				if (links == null) {
+					links = newSet;
+				}
+			}
+			links.add(link);
+		}
+		link(link);
+	}
+
+	/**
+	 * Link and record a new link in the log.
+	 * @param link the link
+	 */
+	private void record(final Link link) {
+		link(link);
+		changes.add("L " + link.type + " "
+				+ (link.father == null ? "-" : link.father) + " "
+				+ link.son + " " + link.name);
+	}
+
+	/**
+	 * Add a saved root to the index.
+	 * Trees already indexed are skipped.
+	 * @param root the tree or leaf
+	 * @param name the name of the leaf, used if the root is a leaf
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void add(final Container root, final String name)
+			throws IOException {
+		if (root instanceof Tree) {
+			add((Tree) root);
+		} else {
+			record(new Link(null, name, root.getChecksum(), Object.LEAF));
+		}
+	}
+
+	/**
+	 * Add a saved tree to the index.
+	 * Trees already indexed are skipped.
+	 * @param tree the tree, loaded or loaded shallowly
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void add(final Tree tree) throws IOException {
+		String checksum = tree.getChecksum();
+		Set<Link> links = newSet();
+		if (sons.putIfAbsent(checksum, links) != null) {
+			return;
+		}
+		for (Entry<String, String> en:tree.getLeafChecksums().entrySet()) {
+			Link link = new Link(checksum, en.getKey(), en.getValue(),
+					Object.LEAF);
+			links.add(link);
+			record(link);
+		}
+		for (Entry<String, String> en:tree.getTreeChecksums().entrySet()) {
+			Link link = new Link(checksum, en.getKey(), en.getValue(),
+					Object.TREE);
+			links.add(link);
+			record(link);
+			Tree subtree = tree.getTrees().get(en.getKey());
+			if (subtree == null) {
+				Container con = Container.loadShallow(en.getValue());
+				if (!(con instanceof Tree)) {
+					throw new IOException("Can't load tree " + en.getValue());
+				}
+				subtree = (Tree) con;
+			}
+			add(subtree);
+		}
+	}
+
+	/**
+	 * Put a link into the term dictionaries and the fathers map.
+	 * @param link the link
+	 */
+	private void link(final Link link) {
+		Set<Link> set = names.get(link.name);
+		if (set == null) {
+			Set<Link> newSet = newSet();
+			set = names.putIfAbsent(link.name, newSet);
+			if (set == null) {
+				set = newSet;
+				reversedNames.put(reverse(link.name), set);
+			}
+		}
+		if (set.add(link)) {
+			linkCount.incrementAndGet();
+		}
+		Set<Link> fars = fathers.get(link.son);
+		if (fars == null) {
+			Set<Link> newSet = newSet();
+			fars = fathers.putIfAbsent(link.son, newSet);
+			if (fars == null) {
+				fars = newSet;
+			}
+		}
+		fars.add(link);
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Drop the links of a deleted object.
+	 * @param checksum the checksum of the object
+	 */
+	public void forget(final String checksum) {
+		drop(checksum);
+		changes.add("F " + checksum);
+	}
+
+	/**
+	 * Drop the roots and paths found before, after the roots change.
+	 */
+	public void rootsChanged() {
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Drop the links of an object.
+	 * @param checksum the checksum of the object
+	 */
+	private void drop(final String checksum) {
+		Set<Link> links = sons.remove(checksum);
+		if (links != null) {
+			for (Link link:links) {
+				unlink(link);
+			}
+		}
+		Set<Link> fars = fathers.get(checksum);
+		if (fars != null) {
+			for (Link link:fars) {
+				if (link.father == null) {
+					unlink(link);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove a link from the term dictionaries and the fathers map.
+	 * @param link the link
+	 */
+	private void unlink(final Link link) {
+		Set<Link> set = names.get(link.name);
+		if (set != null) {
+			if (set.remove(link)) {
+				linkCount.decrementAndGet();
+			}
+			if (set.isEmpty()) {
+				names.remove(link.name, set);
+				reversedNames.remove(reverse(link.name), set);
+			}
+		}
+		Set<Link> fars = fathers.get(link.son);
+		if (fars != null) {
+			fars.remove(link);
+			if (fars.isEmpty()) {
+				fathers.remove(link.son, fars);
+			}
+		}
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Find objects by name or path pattern in all current roots.
+	 * @param pattern the glob pattern
+	 * @param limit the maximum number of hits, negative for all.
+	 * The search stops at the limit, so the hits are the first found,
+	 * not the first in order
+	 * @return the hits, sorted by root and path
+	 * @throws PatternSyntaxException if the pattern is not a valid glob
+	 */
+	public List<Hit> find(final String pattern, final int limit) {
+		boolean byPath = pattern.contains(SEPARATOR);
+		String namePattern = pattern.substring(
+				pattern.lastIndexOf(SEPARATOR) + 1);
+		Pattern nameRegex = Pattern.compile(toRegex(namePattern));
+		Pattern pathRegex = byPath ? Pattern.compile(toRegex(pattern)) : null;
+		if (namePattern.contains("**")) {
+			nameRegex = Pattern.compile(".*");
+		}
+		Located found = located();
+		List<Hit> hits = new ArrayList<Hit>();
+		search:
+		for (Entry<String, Set<Link>> en:candidates(namePattern).entrySet()) {
+			if (!nameRegex.matcher(en.getKey()).matches()) {
+				continue;
+			}
+			for (Link link:en.getValue()) {
+				if (limit >= 0 && hits.size() >= limit) {
+					break search;
+				}
+				for (String[] rp:locate(link, found)) {
+					if (pathRegex != null
+							&& !pathRegex.matcher(rp[1]).matches()) {
+						continue;
+					}
+					hits.add(new Hit(rp[0], rp[1], link.father, link.son,
+							link.type));
+				}
+			}
+		}
+		Collections.sort(hits, new Comparator<Hit>() {
+			@Override
+			public int compare(final Hit a, final Hit b) {
+				int c = a.root.compareTo(b.root);
+				return c != 0 ? c : a.path.compareTo(b.path);
+			}
+		});
+		if (limit >= 0 && hits.size() > limit) {
+			return new ArrayList<Hit>(hits.subList(0, limit));
+		}
+		return hits;
+	}
+
+	/**
+	 * Get the terms may match a name glob.
+	 * A literal prefix is looked up in the names,
+	 * otherwise a literal suffix in the reversed names.
+	 * @param glob the name glob
+	 * @return the terms and their links
+	 */
+	private Map<String, Set<Link>> candidates(final String glob) {
+		int first = firstWildcard(glob);
+		if (first < 0) {
+			Set<Link> set = names.get(glob);
+			if (set == null) {
+				return Collections.emptyMap();
+			}
+			return Collections.singletonMap(glob, set);
+		}
+		if (first > 0) {
+			String prefix = glob.substring(0, first);
+			return names.subMap(prefix, prefix + MAX_CHAR);
+		}
+		int last = lastWildcard(glob);
+		if (last < glob.length() - 1) {
+			String suffix = reverse(glob.substring(last + 1));
+			Map<String, Set<Link>> result = new HashMap<String, Set<Link>>();
+			for (Entry<String, Set<Link>> en:reversedNames.subMap(
+					suffix, suffix + MAX_CHAR).entrySet()) {
+				result.put(reverse(en.getKey()), en.getValue());
+			}
+			return result;
+		}
+		return names;
+	}
+
+	/**
+	 * Get the roots and paths found for the current version of the index.
+	 * @return the roots and paths found
+	 */
+	private Located located() {
+		long v = version.get();
+		Located found = located;
+		if (found == null || found.version != v) {
+			found = new Located(v, rootsByChecksum());
+			located = found;
+		}
+		return found;
+	}
+
+	/**
+	 * Find the roots and paths of a link.
+	 * @param link the link
+	 * @param found the roots and paths found
+	 * @return the roots and paths
+	 */
+	private List<String[]> locate(final Link link, final Located found) {
+		List<String[]> result = new ArrayList<String[]>();
+		if (link.father == null) {
+			List<String> names = found.roots.get(link.son);
+			if (names != null) {
+				for (String root:names) {
+					result.add(new String[] {root, link.name});
+				}
+			}
+			return result;
+		}
+		for (String[] rp:locate(link.father, found)) {
+			String path = rp[1].isEmpty() ? link.name
+					: rp[1] + SEPARATOR + link.name;
+			result.add(new String[] {rp[0], path});
+		}
+		return result;
+	}
+
+	/**
+	 * Find the roots and paths of a tree.
+	 * @param tree the checksum of the tree
+	 * @param found the roots and paths found
+	 * @return the roots and paths
+	 */
+	private List<String[]> locate(final String tree, final Located found) {
+		List<String[]> result = found.trees.get(tree);
+		if (result != null) {
+			return result;
+		}
+		result = new ArrayList<String[]>();
+		List<String> names = found.roots.get(tree);
+		if (names != null) {
+			for (String root:names) {
+				result.add(new String[] {root, ""});
+			}
+		}
+		Set<Link> fars = fathers.get(tree);
+		if (fars != null) {
+			for (Link link:fars) {
+				if (link.father != null) {
+					result.addAll(locate(link, found));
+				}
+			}
+		}
+		found.trees.put(tree, result);
+		return result;
+	}
+
+	/**
+	 * Get current roots by checksum.
+	 * @return the map of root checksums to root names
+	 */
+	private static Map<String, List<String>> rootsByChecksum() {
+		Map<String, List<String>> roots = new HashMap<String, List<String>>();
+		for (Entry<String, String> en:ObjectManager.getRootMap().entrySet()) {
+			List<String> names = roots.get(en.getValue());
+			if (names == null) {
+				names = new ArrayList<String>();
+				roots.put(en.getValue(), names);
+			}
+			names.add(en.getKey());
+		}
+		return roots;
+	}
+
+	/**
+	 * Get the number of distinct names.
+	 * @return the number of names
+	 */
+	public int getNameCount() {
+		return names.size();
+	}
+
+	/**
+	 * Convert a glob into a regular expression.
+	 * @param glob the glob
+	 * @return the regular expression
+	 */
+	static String toRegex(final String glob) {
+		StringBuilder sb = new StringBuilder();
+		boolean inGroup = false;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			switch (c) {
+			case '*':
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					sb.append(".*");
+					i++;
+				} else {
+					sb.append("[^/]*");
+				}
+				break;
+			case '?':
+				sb.append("[^/]");
+				break;
+			case '[':
+				int start = i + 1;
+				if (start < glob.length() && glob.charAt(start) == '!') {
+					start++;
+				}
+				// a "]" first in the set is a member
+				int end = glob.indexOf(']', start + 1);
+				if (end < 0) {
+					sb.append("\\[");
+				} else {
+					sb.append('[');
+					if (start > i + 1) {
+						sb.append('^');
+					}
+					appendSet(sb, glob.substring(start, end));
+					sb.append(']');
+					i = end;
+				}
+				break;
+			case '{':
+				inGroup = true;
+				sb.append("(?:");
+				break;
+			case '}':
+				if (inGroup) {
+					inGroup = false;
+					sb.append(')');
+				} else {
+					sb.append("\\}");
+				}
+				break;
+			case ',':
+				sb.append(inGroup ? "|" : ",");
+				break;
+			default:
+				sb.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Append the members of a glob set to a regular expression class.
+	 * Ranges are kept, other class metacharacters are escaped.
+	 * @param sb the regular expression
+	 * @param set the members, without the brackets and the leading "!"
+	 */
+	private static void appendSet(final StringBuilder sb, final String set) {
+		for (int i = 0; i < set.length(); i++) {
+			char c = set.charAt(i);
+			if (c == '-' && i > 0 && i < set.length() - 1) {
+				sb.append(c);
+			} else if (c < 128 && !Character.isLetterOrDigit(c)) {
+				sb.append('\\').append(c);
+			} else {
+				sb.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Get the index of the first wildcard of a glob.
+	 * @param glob the glob
+	 * @return the index, -1 if none
+	 */
+	private static int firstWildcard(final String glob) {
+		for (int i = 0; i < glob.length(); i++) {
+			if (isWildcard(glob.charAt(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the index of the last wildcard of a glob.
+	 * @param glob the glob
+	 * @return the index, -1 if none
+	 */
+	private static int lastWildcard(final String glob) {
+		for (int i = glob.length() - 1; i >= 0; i--) {
+			if (isWildcard(glob.charAt(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Whether a character is a wildcard or a part of one.
+	 * @param c the character
+	 * @return wildcard or not
+	 */
+	private static boolean isWildcard(final char c) {
+		return c == '*' || c == '?' || c == '[' || c == ']'
+				|| c == '{' || c == '}' || c == ',';
+	}
+
+	/**
+	 * Reverse a string.
+	 * @param s the string
+	 * @return the reversed string
+	 */
+	private static String reverse(final String s) {
+		return new StringBuilder(s).reverse().toString();
+	}
+
+	/**
+	 * Create a concurrent set.
+	 * @return the set
+	 */
+	private static Set<Link> newSet() {
+		return Collections.newSetFromMap(new ConcurrentHashMap<Link, Boolean>());
+	}
+}
@@ -0,0 +1,196 @@
+package xlong.file;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import xlong.file.object.Object;
+
+/**
+ * test PathIndex.
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class PathIndexTest {
+
+	/**
+	 * Create test directory and files before test.
+	 * Create a test directory data/test/
+	 * If the directory already exist, the test will fail.
+	 * Set objectDir of Object Class to data/test/object
+	 */
+	@BeforeClass
+	public static final void before() {
+		System.out.println("Preparing test file...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			fail("The test directory already exist."
+				+ "Please delete the directory \"data/test\" and retry.");
+		} else {
+			try {
+				Files.createDirectories(dir);
+			} catch (IOException e) {
+				fail("Can't create the test directory.");
+				e.printStackTrace();
+			}
+		}
+		Object.setObjectDir("data/test/object");
+		Manager.setManagerDir("data/test/manager");
+	}
+	
+	/**
+	 * Delete test directory and all files in it.
+	 */
+	@AfterClass
+	public static final void after() {
+		System.out.println("Deleting test files...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			if (!deleteFile(dir.toFile())) {
+				fail("Can't delete test files.");
+			}
+		} 
+		System.out.println("Finish.");
+	}
+	
+	/**
+	 * Delete a file or directory.
+	 * @param file the file to delete
+	 * @return success or not
+	 */
+	private static boolean deleteFile(final File file) {
+		if (file.exists()) {
+			if (file.isFile()) {
+				return file.delete();
+			} else if (file.isDirectory()) {
+				boolean flag = true;
+				File[] files = file.listFiles();
+				for (int i = 0; i < files.length; i++) {
+					flag &= deleteFile(files[i]);
+				}
+				flag &= file.delete();
+				return flag;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Find and get the hits as strings.
+	 * @param pattern the pattern
+	 * @return the roots and paths of hits
+	 */
+	private static List<String> find(final String pattern) {
+		List<String> result = new ArrayList<String>();
+		for (PathIndex.Hit hit:PathIndex.getIndex().find(pattern, -1)) {
+			result.add(hit.getRoot() + ":" + hit.getPath());
+		}
+		return result;
+	}
+	
+	/**
+	 * Test.
+	 */
+	@Test
+	public final void testFind() {
+		assertTrue(ObjectManager.loadManager());
+		assertTrue(ObjectManager.operate(
+				new String[] {"Import", "src/xlong", "a"}));
+		assertTrue(ObjectManager.operate(
+				new String[] {"Import", "src/xlong/util", "b"}));
+		assertTrue(ObjectManager.operate(
+				new String[] {"Import", "src/xlong/util/SHA1Util.java", "c"}));
+		
+		List<String> hits = find("SHA1Util.java");
+		assertEquals("[a:util/SHA1Util.java, b:SHA1Util.java, "
+				+ "c:SHA1Util.java]", hits.toString());
+		assertTrue(find("*Test.java").contains("a:file/object/TreeTest.java"));
+		assertFalse(find("*Test.java").contains("a:file/object/Tree.java"));
+		assertTrue(find("Tree*").contains("a:file/object/TreeDiff.java"));
+		assertTrue(find("{Blob,Leaf}.java").contains("a:file/object/Leaf.java"));
+		assertEquals("[a:file/object]", find("object").toString());
+		assertEquals("[a:file/object/Tree.java]", 
+				find("file/*/Tree.java").toString());
+		assertEquals("[a:util/SHA1Util.java]", 
+				find("**/SHA1U*.java").toString());
+		assertEquals(1, PathIndex.getIndex().find("*.java", 1).size());
+		
+		assertTrue(ObjectManager.operate(new String[] {"Remove", "b"}));
+		assertEquals("[a:util/SHA1Util.java, c:SHA1Util.java]", 
+				find("SHA1Util.java").toString());
+		
+		assertTrue(ObjectManager.saveManager());
+		assertTrue(ObjectManager.loadManager());
+		assertEquals("[a:util/SHA1Util.java, c:SHA1Util.java]", 
+				find("SHA1Util.java").toString());
+		
+		try {
+			Files.delete(PathIndex.getPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+		assertTrue(ObjectManager.loadManager());
+		assertEquals("[a:util/SHA1Util.java, c:c]", 
+				find("{SHA1Util.java,c}").toString());
+	}
+
+	/**
+	 * Test class metacharacters in a glob set are members.
+	 */
+	@Test
+	public final void testSet() {
+		assertTrue("x]".matches(PathIndex.toRegex("x[]]")));
+		assertTrue("[".matches(PathIndex.toRegex("[[a]")));
+		assertTrue("&".matches(PathIndex.toRegex("[a&&b]")));
+		assertTrue("^".matches(PathIndex.toRegex("[a^]")));
+		assertFalse("a".matches(PathIndex.toRegex("[!a]")));
+		assertTrue("b".matches(PathIndex.toRegex("[a-c]")));
+		assertTrue("x[]".matches(PathIndex.toRegex("x[]")));
+		assertTrue(ObjectManager.loadManager());
+		assertFalse(ObjectManager.operate(new String[] {"Find", "{a"}));
+	}
+
+	/**
+	 * Test a save appends the changes to the log, and a line cut short
+	 * is ignored.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testLog() throws IOException {
+		assertTrue(ObjectManager.loadManager());
+		Path first = Paths.get("data/test/logA");
+		Files.createDirectories(first);
+		Files.write(first.resolve("First.txt"), "first".getBytes("UTF-8"));
+		assertTrue(ObjectManager.operate(
+				new String[] {"Import", first.toString(), "logA"}));
+		assertTrue(ObjectManager.saveManager());
+		byte[] whole = Files.readAllBytes(PathIndex.getPath());
+		Path log = PathIndex.getPath().resolveSibling("pathIndex.log");
+		long logSize = Files.size(log);
+		Path dir = Paths.get("data/test/logB");
+		Files.createDirectories(dir);
+		Files.write(dir.resolve("Logged.java"), "logged".getBytes("UTF-8"));
+		assertTrue(ObjectManager.operate(
+				new String[] {"Import", dir.toString(), "logB"}));
+		assertTrue(ObjectManager.saveManager());
+		assertArrayEquals(whole, Files.readAllBytes(PathIndex.getPath()));
+		assertTrue(Files.size(log) > logSize);
+
+		Files.write(log, "L 1 - 0123 cut".getBytes("UTF-8"),
+				StandardOpenOption.APPEND);
+		assertTrue(ObjectManager.loadManager());
+		assertEquals("[logB:Logged.java]", find("Logged.java").toString());
+		assertTrue(find("cut").isEmpty());
+	}
+}
@@ -0,0 +1,136 @@
+package xlong.file;
+
+import java.io.PrintStream;
+import java.util.Stack;
+
+import xlong.file.object.Container;
+
+/**
+ * Navigation state of one client of the object manager.
+ * <p>
+ * The object manager keeps the shared storage: roots, relations
+ * and loaded containers. Each session keeps its own positions,
+ * roots and operation history, so several sessions can work on
+ * one object manager at the same time.
+ * Operators print their output to the output of the session.
+ * A session should only be used by one thread at a time.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Session {
+
+	/** the current position. */
+	private Container curPos;
+
+	/** the current root. */
+	private Container curRoot;
+
+	/** the stack to record history positions. */
+	private Stack<Container> posStack;
+
+	/** the stack to record history roots. */
+	private Stack<Container> rootStack;
+
+	/** the stack to record history operations. */
+	private Stack<String[]> operationStack;
+
+	/** the output of operators, null for the standard output. */
+	private PrintStream out;
+
+	/**
+	 * Create an empty session.
+	 */
+	public Session() {
+		curPos = null;
+		curRoot = null;
+		posStack = new Stack<Container>();
+		rootStack = new Stack<Container>();
+		operationStack = new Stack<String[]>();
+	}
+
+	/**
+	 * change to new root.
+	 * @param root the new root
+	 */
+	public void changeRoot(final Container root) {
+		curPos = root;
+		curRoot = root;
+		posStack.push(root);
+		rootStack.push(root);
+	}
+
+	/**
+	 * change to new position.
+	 * @param root the new position
+	 */
+	public void changePos(final Container root) {
+		curPos = root;
+		posStack.push(root);
+	}
+
+	/**
+	 * @return the curPos
+	 */
+	public Container getCurPos() {
+		return curPos;
+	}
+
+	/**
+	 * @param newCurPos the curPos to set
+	 */
+	public void setCurPos(final Container newCurPos) {
+		curPos = newCurPos;
+	}
+
+	/**
+	 * @return the curRoot
+	 */
+	public Container getCurRoot() {
+		return curRoot;
+	}
+
+	/**
+	 * @param newCurRoot the curRoot to set
+	 */
+	public void setCurRoot(final Container newCurRoot) {
+		curRoot = newCurRoot;
+	}
+
+	/**
+	 * @return the posStack
+	 */
+	public Stack<Container> getPosStack() {
+		return posStack;
+	}
+
+	/**
+	 * @return the rootStack
+	 */
+	public Stack<Container> getRootStack() {
+		return rootStack;
+	}
+
+	/**
+	 * @return the operationStack
+	 */
+	public Stack<String[]> getOperationStack() {
+		return operationStack;
+	}
+
+	/**
+	 * @return the output of operators
+	 */
+	public PrintStream getOut() {
+		if (out == null) {
+			return System.out;
+		}
+		return out;
+	}
+
+	/**
+	 * @param newOut the output of operators, null for the standard output
+	 */
+	public void setOut(final PrintStream newOut) {
+		out = newOut;
+	}
+}
@@ -0,0 +1,413 @@
+package xlong.file;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import xlong.file.object.Container;
+import xlong.file.object.Leaf;
+import xlong.file.object.Object;
+import xlong.file.object.Tree;
+import xlong.util.AtomicWriter;
+import xlong.util.CompressionUtil;
+import xlong.util.FileExecutors;
+import xlong.util.Reporter;
+import xlong.util.SHA1Util;
+
+/**
+ * Integrity check of the object directory.
+ * <p>
+ * Scan phase checks every object file matches its name: the content
+ * of a blob, or the serialized bytes of a leaf or tree, must have the
+ * SHA-1 checksum the file is named by. Compressed objects are
+ * decompressed while hashing, nothing is written. The directories
+ * of the first fan-out level are scanned in parallel.
+ * <p>
+ * Each directory scanned is recorded in a checkpoint file in the
+ * manager directory, with the corrupt objects found. A scan stopped
+ * halfway goes on from the checkpoint the next time. The checkpoint
+ * is deleted when the scan finishes.
+ * <p>
+ * Reference phase checks every object reachable from the roots of the
+ * object manager exists, is not corrupt and can be loaded.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Verifier {
+
+	/** the name of the checkpoint file in the manager directory. */
+	public static final String CHECKPOINT = "verifyCheckpoint";
+
+	/** the line of a scanned directory in the checkpoint. */
+	private static final String DONE = "done ";
+
+	/** the line of a corrupt object in the checkpoint. */
+	private static final String CORRUPT = "corrupt ";
+
+	/** the charset of the checkpoint. */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	/** the number of threads to scan. */
+	private final int threads;
+
+	/** go on from the checkpoint or not. */
+	private final boolean resume;
+
+	/** the checksums of corrupt objects. */
+	private final Set<String> corrupt = Collections.newSetFromMap(
+			new ConcurrentHashMap<String, Boolean>());
+
+	/** the checksums of missing objects. */
+	private final Set<String> missing = Collections.newSetFromMap(
+			new ConcurrentHashMap<String, Boolean>());
+
+	/** the progress of the scan. */
+	private final Reporter.Meter meter = new Reporter.Meter("Verify");
+
+	/** the number of directories skipped by the checkpoint. */
+	private int skippedDirs;
+
+	/** the checkpoint, null if not scanning. */
+	private Writer checkpoint;
+
+	/**
+	 * Constructor, two threads per processor, go on from the checkpoint.
+	 */
+	public Verifier() {
+		this(Runtime.getRuntime().availableProcessors() * 2, true);
+	}
+
+	/**
+	 * Constructor.
+	 * @param inThreads the number of threads to scan
+	 * @param inResume go on from the checkpoint or not
+	 */
+	public Verifier(final int inThreads, final boolean inResume) {
+		threads = Math.max(1, inThreads);
+		resume = inResume;
+	}
+
+	/**
+	 * Run scan and reference check.
+	 * @return finished or not, see {@link #isClean()} for the result
+	 */
+	public boolean verify() {
+		return scan() && checkReferences();
+	}
+
+	/**
+	 * Check all object files match their names.
+	 * @return finished or not
+	 */
+	public boolean scan() {
+		Path objectDir = Paths.get(Object.getObjectDir());
+		if (!Files.isDirectory(objectDir)) {
+			return true;
+		}
+		Path checkpointPath = Paths.get(Manager.getManagerDir(), CHECKPOINT);
+		ExecutorService pool = null;
+		try {
+			AtomicWriter.flush();
+			Set<String> done = readCheckpoint(checkpointPath);
+			List<Path> dirs = new ArrayList<Path>();
+			try (DirectoryStream<Path> stream =
+					Files.newDirectoryStream(objectDir)) {
+				for (Path dir:stream) {
+					if (!Files.isDirectory(dir)) {
+						continue;
+					}
+					if (done.contains(dir.getFileName().toString())) {
+						skippedDirs++;
+					} else {
+						dirs.add(dir);
+					}
+				}
+			}
+			Collections.sort(dirs);
+			Files.createDirectories(checkpointPath.getParent());
+			checkpoint = Files.newBufferedWriter(checkpointPath, CHARSET,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			pool = FileExecutors.newExecutor(threads);
+			final Reporter.Sink sink = Reporter.getThreadSink();
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (final Path dir:dirs) {
+				futures.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						Reporter.setThreadSink(sink);
+						try {
+							scanDirectory(dir);
+						} finally {
+							Reporter.setThreadSink(null);
+						}
+						return null;
+					}
+				}));
+			}
+			boolean success = true;
+			for (Future<Void> f:futures) {
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+					success = false;
+				}
+			}
+			checkpoint.close();
+			checkpoint = null;
+			if (success) {
+				Files.deleteIfExists(checkpointPath);
+			}
+			meter.finish();
+			return success;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			if (pool != null) {
+				pool.shutdownNow();
+			}
+			if (checkpoint != null) {
+				try {
+					checkpoint.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				checkpoint = null;
+			}
+		}
+	}
+
+	/**
+	 * Read the scanned directories and corrupt objects of the checkpoint.
+	 * The checkpoint is deleted if not resuming.
+	 * @param path the checkpoint
+	 * @return the names of the scanned directories
+	 * @throws IOException if an I/O error occurs
+	 */
+	private Set<String> readCheckpoint(final Path path) throws IOException {
+		Set<String> done = new HashSet<String>();
+		if (!resume) {
+			Files.deleteIfExists(path);
+			return done;
+		}
+		if (!Files.exists(path)) {
+			return done;
+		}
+		try (BufferedReader in = Files.newBufferedReader(path, CHARSET)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.startsWith(DONE)) {
+					done.add(line.substring(DONE.length()));
+				} else if (line.startsWith(CORRUPT)) {
+					corrupt.add(line.substring(CORRUPT.length()));
+				}
+			}
+		}
+		return done;
+	}
+
+	/**
+	 * Check all object files in a directory, then record it in the
+	 * checkpoint.
+	 * @param dir the directory
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void scanDirectory(final Path dir) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file,
+					final BasicFileAttributes attrs) throws IOException {
+				String checksum = Object.pathToChecksum(file);
+				if (checksum != null) {
+					checkFile(file, checksum);
+					meter.add(1, attrs.size());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		record(DONE + dir.getFileName());
+	}
+
+	/**
+	 * Check an object file matches its name.
+	 * Blobs may be stored without compression.
+	 * @param file the file
+	 * @param checksum the checksum in the name
+	 * @throws IOException if the checkpoint can not be written
+	 */
+	private void checkFile(final Path file, final String checksum)
+			throws IOException {
+		String actual;
+		try {
+			actual = CompressionUtil.decompressChecksum(file);
+			if (!checksum.equals(actual)) {
+				actual = SHA1Util.sha1Checksum(file);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			actual = null;
+		}
+		if (!checksum.equals(actual)) {
+			Reporter.warn("Corrupt object " + checksum);
+			corrupt.add(checksum);
+			record(CORRUPT + checksum);
+		}
+	}
+
+	/**
+	 * Write a line to the checkpoint.
+	 * @param line the line
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void record(final String line) throws IOException {
+		synchronized (checkpoint) {
+			checkpoint.write(line);
+			checkpoint.write('\n');
+			checkpoint.flush();
+		}
+	}
+
+	/**
+	 * Check all objects reachable from the roots exist, are not
+	 * corrupt and can be loaded.
+	 * @return finished or not
+	 */
+	public boolean checkReferences() {
+		Set<String> visited = new HashSet<String>();
+		List<Entry<String, String>> roots =
+				new ArrayList<Entry<String, String>>(
+						ObjectManager.getRootMap().entrySet());
+		for (Entry<String, String> root:roots) {
+			checkContainer(root.getValue(), root.getKey(), visited);
+		}
+		return true;
+	}
+
+	/**
+	 * Check a container and all objects reachable from it.
+	 * @param checksum the checksum of the container
+	 * @param rootName the name of the root it is reached from
+	 * @param visited the checksums of containers already checked
+	 */
+	private void checkContainer(final String checksum, final String rootName,
+			final Set<String> visited) {
+		if (!visited.add(checksum) || !checkExists(checksum, rootName)) {
+			return;
+		}
+		Container con;
+		try {
+			con = Container.loadShallow(checksum);
+		} catch (IOException e) {
+			e.printStackTrace();
+			con = null;
+		}
+		if (con == null) {
+			if (corrupt.add(checksum)) {
+				Reporter.warn("Can't load object " + checksum
+						+ " of root " + rootName);
+			}
+			return;
+		}
+		if (con instanceof Leaf) {
+			checkExists(((Leaf) con).getBlobChecksum(), rootName);
+		} else {
+			Tree tree = (Tree) con;
+			for (String son:tree.getLeafChecksums().values()) {
+				checkContainer(son, rootName, visited);
+			}
+			for (String son:tree.getTreeChecksums().values()) {
+				checkContainer(son, rootName, visited);
+			}
+		}
+	}
+
+	/**
+	 * Check a referenced object exists and is not corrupt.
+	 * @param checksum the checksum
+	 * @param rootName the name of the root it is reached from
+	 * @return usable or not
+	 */
+	private boolean checkExists(final String checksum, final String rootName) {
+		if (corrupt.contains(checksum)) {
+			return false;
+		}
+		if (!Files.exists(Object.findPath(checksum))) {
+			if (missing.add(checksum)) {
+				Reporter.warn("Missing object " + checksum
+						+ " of root " + rootName);
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return no corrupt or missing object found
+	 */
+	public boolean isClean() {
+		return corrupt.isEmpty() && missing.isEmpty();
+	}
+
+	/**
+	 * @return the checksums of corrupt objects, sorted
+	 */
+	public List<String> getCorrupt() {
+		List<String> list = new ArrayList<String>(corrupt);
+		Collections.sort(list);
+		return list;
+	}
+
+	/**
+	 * @return the checksums of missing objects, sorted
+	 */
+	public List<String> getMissing() {
+		List<String> list = new ArrayList<String>(missing);
+		Collections.sort(list);
+		return list;
+	}
+
+	/**
+	 * @return the number of objects scanned in this run
+	 */
+	public long getScannedCount() {
+		return meter.getFiles();
+	}
+
+	/**
+	 * @return the number of bytes scanned in this run
+	 */
+	public long getScannedBytes() {
+		return meter.getBytes();
+	}
+
+	/**
+	 * @return the number of directories skipped by the checkpoint
+	 */
+	public int getSkippedDirs() {
+		return skippedDirs;
+	}
+}
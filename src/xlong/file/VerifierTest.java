@@ -0,0 +1,144 @@
+package xlong.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import xlong.file.object.Object;
+import xlong.util.SHA1Util;
+
+/**
+ * test Verifier.
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class VerifierTest {
+
+	/** the charset of test files. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Create test directory and files before test.
+	 * Create a test directory data/test/
+	 * If the directory already exist, the test will fail.
+	 * Create test files in verify/ in test directory.
+	 * Set objectDir of Object Class to data/test/object
+	 */
+	@BeforeClass
+	public static final void before() {
+		System.out.println("Preparing test file...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			fail("The test directory already exist."
+				+ "Please delete the directory \"data/test\" and retry.");
+		}
+		try {
+			Path src = dir.resolve("verify");
+			Files.createDirectories(src.resolve("sub"));
+			Files.write(src.resolve("a.txt"), "file a\n".getBytes(UTF8));
+			Files.write(src.resolve("b.txt"), "file b\n".getBytes(UTF8));
+			Files.write(src.resolve("sub/c.txt"), "file c\n".getBytes(UTF8));
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("Can't create the test files.");
+		}
+		Object.setObjectDir("data/test/object");
+		Manager.setManagerDir("data/test/manager");
+	}
+
+	/**
+	 * Delete test directory and all files in it.
+	 */
+	@AfterClass
+	public static final void after() {
+		System.out.println("Deleting test files...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			if (!deleteFile(dir.toFile())) {
+				fail("Can't delete test files.");
+			}
+		}
+		System.out.println("Finish.");
+	}
+
+	/**
+	 * Delete a file or directory.
+	 * @param file the file to delete
+	 * @return success or not
+	 */
+	private static boolean deleteFile(final File file) {
+		if (file.exists()) {
+			if (file.isFile()) {
+				return file.delete();
+			} else if (file.isDirectory()) {
+				boolean flag = true;
+				File[] files = file.listFiles();
+				for (int i = 0; i < files.length; i++) {
+					flag &= deleteFile(files[i]);
+				}
+				flag &= file.delete();
+				return flag;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * test.
+	 * @throws Exception if fail
+	 */
+	@Test
+	public final void testVerify() throws Exception {
+		ObjectManager.loadManager();
+		if (!ObjectManager.operate(
+				new String[]{"Import", "data/test/verify", "Verify"})) {
+			fail();
+		}
+		// a blob stored without compression
+		byte[] raw = "raw blob\n".getBytes(UTF8);
+		Path rawPath = Object.checksumToPath(SHA1Util.sha1Checksum(raw));
+		Files.createDirectories(rawPath.getParent());
+		Files.write(rawPath, raw);
+
+		Verifier verifier = new Verifier(2, false);
+		assertTrue(verifier.verify());
+		assertTrue(verifier.isClean());
+		assertEquals(9, verifier.getScannedCount());
+
+		String a = SHA1Util.sha1Checksum(Paths.get("data/test/verify/a.txt"));
+		String c = SHA1Util.sha1Checksum(
+				Paths.get("data/test/verify/sub/c.txt"));
+		Files.write(Object.checksumToPath(a), "broken".getBytes(UTF8));
+		Files.delete(Object.checksumToPath(c));
+		verifier = new Verifier(2, false);
+		assertTrue(verifier.verify());
+		assertFalse(verifier.isClean());
+		assertEquals(Arrays.asList(a), verifier.getCorrupt());
+		assertEquals(Arrays.asList(c), verifier.getMissing());
+		assertFalse(ObjectManager.operate(new String[]{"Verify"}));
+
+		// go on from a checkpoint
+		Path checkpoint = Paths.get(Manager.getManagerDir(),
+				Verifier.CHECKPOINT);
+		Files.write(checkpoint, ("done " + a.substring(0, 2) + "\n")
+				.getBytes(UTF8));
+		verifier = new Verifier(2, true);
+		assertTrue(verifier.scan());
+		assertEquals(1, verifier.getSkippedDirs());
+		assertTrue(verifier.getCorrupt().isEmpty());
+		assertFalse(Files.exists(checkpoint));
+	}
+
+}
@@ -5,7 +5,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 
+import xlong.util.AtomicWriter;
 import xlong.util.CompressionUtil;
+import xlong.util.Metrics;
+import xlong.util.Reporter;
 import xlong.util.SHA1Util;
 
 /**
@@ -58,42 +61,114 @@ public final class Blob extends Object {
 	public static Blob create(
 			final Path filePath, final boolean compress) 
 					throws IOException {
-		System.out.println("Create Blob for " + filePath);
+		if (Reporter.isDebug()) {
+			Reporter.debug("Create Blob for " + filePath);
+		}
+		long start = System.nanoTime();
 		String checksum = SHA1Util.sha1Checksum(filePath);
 		Blob blob = new Blob(checksum);
 		
 		Path outFilePath = blob.getPath();
 
+		synchronized (writeLock(checksum)) {
+			store(filePath, compress, checksum, outFilePath);
+		}
+		Metrics.BLOB_CREATE.record(System.nanoTime() - start);
+		return blob;
+	}
+	
+	/**
+	 * Store the content of a file to the blob file.
+	 * Hold the write lock of the checksum when call this method.
+	 * 
+	 * @param filePath the file to save.
+	 * @param compress compress the file or not.
+	 * @param checksum the checksum of the file.
+	 * @param outFilePath the path of the blob.
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void store(final Path filePath, final boolean compress,
+			final String checksum, final Path outFilePath) 
+					throws IOException {
 		Files.createDirectories(outFilePath.getParent());
 		
+		if (!mayExist(checksum)) {
+			// not in the filter, write without checking
+			if (compress) {
+				if (Reporter.isDebug()) {
+					Reporter.debug("Compress " + filePath + " to " + outFilePath);
+				}
+				if (CompressionUtil.compressFile(filePath, outFilePath)) {
+					Metrics.WRITTEN.increment();
+					known(checksum);
+					return;
+				}
+			} else {
+				if (Reporter.isDebug()) {
+					Reporter.debug("Copy " + filePath + " to " + outFilePath);
+				}
+				if (AtomicWriter.copy(filePath, outFilePath)) {
+					Metrics.WRITTEN.increment();
+					known(checksum);
+					return;
+				}
+				// the filter is out of date, check as usual
+			}
+		}
+		
+		if (AtomicWriter.isPending(outFilePath)) {
+			// written by another thread, not renamed yet
+			Metrics.DEDUPLICATED.increment();
+			known(checksum);
+			return;
+		}
+		// stored in the layout, or not moved yet from the previous one
+		Path stored = findPath(checksum);
 		if (compress) {
 			// compress file
-			if (Files.exists(outFilePath)) {
-				String oriChecksum = SHA1Util.sha1Checksum(outFilePath);
-				if (checksum != oriChecksum) {
-					return blob;
+			if (Files.exists(stored)) {
+				String oriChecksum = SHA1Util.sha1Checksum(stored);
+				if (!checksum.equals(oriChecksum)) {
+					Metrics.DEDUPLICATED.increment();
+					known(checksum);
+					return;
 				} else {
-					Files.delete(outFilePath);
+					Files.delete(stored);
 				}
 			}
-			System.out.println(
-					"Compress " + filePath + " to " + outFilePath);
+			if (Reporter.isDebug()) {
+				Reporter.debug("Compress " + filePath + " to " + outFilePath);
+			}
 			CompressionUtil.compressFile(filePath, outFilePath); 
 		} else {
 			// copy file
-			if (Files.exists(outFilePath)) {
-				String oriChecksum = SHA1Util.sha1Checksum(outFilePath);
-				if (checksum == oriChecksum) {
-					return blob;
+			if (Files.exists(stored)) {
+				String oriChecksum = SHA1Util.sha1Checksum(stored);
+				if (checksum.equals(oriChecksum)) {
+					Metrics.DEDUPLICATED.increment();
+					known(checksum);
+					return;
 				} else {
-					Files.delete(outFilePath);
+					Files.delete(stored);
 				}
 			}			
-			System.out.println(
-					"Copy " + filePath + " to " + outFilePath);
-			Files.copy(filePath, outFilePath);
+			if (Reporter.isDebug()) {
+				Reporter.debug("Copy " + filePath + " to " + outFilePath);
+			}
+			AtomicWriter.copy(filePath, outFilePath);
 		}
-		return blob;
+		Metrics.WRITTEN.increment();
+		known(checksum);
+	}
+	
+	/**
+	 * Get a blob with given checksum, without checking the file system.
+	 * Only for blobs just stored.
+	 * @param checksum the checksum
+	 * @return the blob
+	 */
+	static Blob of(final String checksum) {
+		return new Blob(checksum);
 	}
 	
 	/**
@@ -105,7 +180,7 @@ public final class Blob extends Object {
 	public static Blob get(final String checksum) {
 		Blob blob = new Blob(checksum);
 		
-		Path outFilePath = blob.getPath();
+		Path outFilePath = findPath(checksum);
 		if (Files.exists(outFilePath)) {
 			return blob;
 		} else {
@@ -129,23 +204,30 @@ public final class Blob extends Object {
 	public boolean restore(
 			final Path outFilePath, final boolean compressed) 
 			throws IOException {
-		Path inFilePath = getPath();
-		System.out.println("Restore Blob to " + outFilePath);
+		Path inFilePath = findPath(getChecksum());
+		if (Reporter.isDebug()) {
+			Reporter.debug("Restore Blob to " + outFilePath);
+		}
 		
+		long start = System.nanoTime();
 		Files.createDirectories(outFilePath.getParent());
 
 		if (compressed) {
-			System.out.println(
-					"Decompress " + inFilePath + " to " + outFilePath);
+			if (Reporter.isDebug()) {
+				Reporter.debug("Decompress " + inFilePath + " to " + outFilePath);
+			}
+			Files.deleteIfExists(outFilePath);
 			if (!CompressionUtil.decompressToFile(inFilePath, outFilePath)) {
 				return false;
 			}
 		} else {
-			System.out.println(
-					"Copy " + inFilePath + " to " + outFilePath);
+			if (Reporter.isDebug()) {
+				Reporter.debug("Copy " + inFilePath + " to " + outFilePath);
+			}
 			Files.copy(inFilePath, outFilePath,
 					StandardCopyOption.REPLACE_EXISTING);
 		}
+		Metrics.BLOB_RESTORE.record(System.nanoTime() - start);
 		return true;
 	}
 	
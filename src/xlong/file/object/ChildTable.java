@@ -0,0 +1,393 @@
+package xlong.file.object;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The sons of one kind in a tree.
+ * <p>
+ * Nicknames, checksums and objects are kept in parallel arrays
+ * sorted by nickname. Lookups use binary search and iteration
+ * is in nickname order.
+ * The checksum of a son is unknown (null) after it is put,
+ * until the tree is saved. The object of a son is unknown (null)
+ * when the tree is loaded shallowly.
+ * <p>
+ * As a map, this table maps nicknames to objects.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ *
+ * @param <V> the type of sons
+ */
+final class ChildTable<V extends Container> extends AbstractMap<String, V> {
+
+	/** empty arrays. */
+	private static final String[] NONE = new String[0];
+
+	/** the initial capacity when the first son is put. */
+	private static final int INITIAL = 4;
+
+	/** the nicknames, sorted. */
+	private String[] names;
+
+	/** the checksums. */
+	private String[] checksums;
+
+	/** the objects. */
+	private Container[] objects;
+
+	/** the number of sons. */
+	private int size;
+
+	/**
+	 * Constructor of an empty table.
+	 */
+	ChildTable() {
+		names = NONE;
+		checksums = NONE;
+		objects = new Container[0];
+	}
+
+	/**
+	 * Copy constructor. The sons are shared.
+	 * @param table the table to copy
+	 */
+	ChildTable(final ChildTable<V> table) {
+		size = table.size;
+		names = Arrays.copyOf(table.names, size);
+		checksums = Arrays.copyOf(table.checksums, size);
+		objects = Arrays.copyOf(table.objects, size);
+	}
+
+	/**
+	 * Create a table from a map of nicknames to checksums.
+	 * The objects are unknown.
+	 * @param <V> the type of sons
+	 * @param map the map sorted by nickname, can be null
+	 * @return the table
+	 */
+	static <V extends Container> ChildTable<V> ofChecksums(
+			final TreeMap<String, String> map) {
+		ChildTable<V> table = new ChildTable<V>();
+		if (map == null || map.isEmpty()) {
+			return table;
+		}
+		int n = map.size();
+		table.names = new String[n];
+		table.checksums = new String[n];
+		table.objects = new Container[n];
+		for (Map.Entry<String, String> en:map.entrySet()) {
+			table.names[table.size] = en.getKey().intern();
+			table.checksums[table.size] = en.getValue();
+			table.size++;
+		}
+		return table;
+	}
+
+	/**
+	 * Create a table from a map of nicknames to objects.
+	 * @param <V> the type of sons
+	 * @param map the map sorted by nickname
+	 * @return the table
+	 */
+	static <V extends Container> ChildTable<V> ofObjects(
+			final TreeMap<String, V> map) {
+		ChildTable<V> table = new ChildTable<V>();
+		if (map.isEmpty()) {
+			return table;
+		}
+		int n = map.size();
+		table.names = new String[n];
+		table.checksums = new String[n];
+		table.objects = new Container[n];
+		for (Map.Entry<String, V> en:map.entrySet()) {
+			table.names[table.size] = en.getKey();
+			table.objects[table.size] = en.getValue();
+			table.size++;
+		}
+		return table;
+	}
+
+	/**
+	 * Find a nickname.
+	 * @param key the nickname
+	 * @return the index, or (-(insertion point) - 1) if not found
+	 */
+	private int indexOf(final java.lang.Object key) {
+		if (!(key instanceof String)) {
+			return -1;
+		}
+		return Arrays.binarySearch(names, 0, size, (String) key);
+	}
+
+	/**
+	 * @param index the index of a son
+	 * @return the nickname
+	 */
+	String nameAt(final int index) {
+		return names[index];
+	}
+
+	/**
+	 * @param index the index of a son
+	 * @return the checksum, null if unknown
+	 */
+	String checksumAt(final int index) {
+		return checksums[index];
+	}
+
+	/**
+	 * @param index the index of a son
+	 * @return the object, null if unknown
+	 */
+	@SuppressWarnings("unchecked")
+	V objectAt(final int index) {
+		return (V) objects[index];
+	}
+
+	/**
+	 * @param index the index of a son
+	 * @param checksum the checksum to set
+	 */
+	void setChecksumAt(final int index, final String checksum) {
+		checksums[index] = checksum;
+	}
+
+	/**
+	 * @param index the index of a son
+	 * @param object the object to set
+	 */
+	void setObjectAt(final int index, final V object) {
+		objects[index] = object;
+	}
+
+	/**
+	 * Get the map of nicknames to checksums.
+	 * @return the map sorted by nickname
+	 */
+	TreeMap<String, String> toChecksums() {
+		TreeMap<String, String> map = new TreeMap<>();
+		for (int i = 0; i < size; i++) {
+			map.put(names[i], checksums[i]);
+		}
+		return map;
+	}
+
+	/**
+	 * Get a read only view of nicknames to checksums.
+	 * @return the view, in nickname order
+	 */
+	Map<String, String> checksumView() {
+		return new AbstractMap<String, String>() {
+			@Override
+			public String get(final java.lang.Object key) {
+				int i = indexOf(key);
+				if (i < 0) {
+					return null;
+				}
+				return checksums[i];
+			}
+
+			@Override
+			public boolean containsKey(final java.lang.Object key) {
+				return indexOf(key) >= 0;
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Set<Entry<String, String>> entrySet() {
+				return new AbstractSet<Entry<String, String>>() {
+					@Override
+					public Iterator<Entry<String, String>> iterator() {
+						return new Iter<Entry<String, String>>(false) {
+							@Override
+							Entry<String, String> at(final int i) {
+								return new SimpleImmutableEntry<String, String>(
+										names[i], checksums[i]);
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+				};
+			}
+		};
+	}
+
+	@Override
+	public V get(final java.lang.Object key) {
+		int i = indexOf(key);
+		if (i < 0) {
+			return null;
+		}
+		return objectAt(i);
+	}
+
+	@Override
+	public boolean containsKey(final java.lang.Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * Put a son. The checksum of the son is unknown until save.
+	 * @param key the nickname
+	 * @param value the object
+	 * @return the old object, null if none
+	 */
+	@Override
+	public V put(final String key, final V value) {
+		int i = indexOf(key);
+		if (i >= 0) {
+			V old = objectAt(i);
+			objects[i] = value;
+			checksums[i] = null;
+			return old;
+		}
+		i = -i - 1;
+		if (size == names.length) {
+			int capacity = Math.max(INITIAL, size + (size >> 1));
+			names = Arrays.copyOf(names, capacity);
+			checksums = Arrays.copyOf(checksums, capacity);
+			objects = Arrays.copyOf(objects, capacity);
+		}
+		System.arraycopy(names, i, names, i + 1, size - i);
+		System.arraycopy(checksums, i, checksums, i + 1, size - i);
+		System.arraycopy(objects, i, objects, i + 1, size - i);
+		names[i] = key;
+		checksums[i] = null;
+		objects[i] = value;
+		size++;
+		return null;
+	}
+
+	@Override
+	public V remove(final java.lang.Object key) {
+		int i = indexOf(key);
+		if (i < 0) {
+			return null;
+		}
+		V old = objectAt(i);
+		removeAt(i);
+		return old;
+	}
+
+	/**
+	 * Remove a son.
+	 * @param index the index of the son
+	 */
+	private void removeAt(final int index) {
+		int moved = size - index - 1;
+		System.arraycopy(names, index + 1, names, index, moved);
+		System.arraycopy(checksums, index + 1, checksums, index, moved);
+		System.arraycopy(objects, index + 1, objects, index, moved);
+		size--;
+		names[size] = null;
+		checksums[size] = null;
+		objects[size] = null;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(names, 0, size, null);
+		Arrays.fill(checksums, 0, size, null);
+		Arrays.fill(objects, 0, size, null);
+		size = 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Set<Entry<String, V>> entrySet() {
+		return new AbstractSet<Entry<String, V>>() {
+			@Override
+			public Iterator<Entry<String, V>> iterator() {
+				return new Iter<Entry<String, V>>(true) {
+					@Override
+					Entry<String, V> at(final int i) {
+						return new SimpleImmutableEntry<String, V>(
+								names[i], objectAt(i));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Iterator in nickname order.
+	 * @param <E> the type of elements
+	 */
+	private abstract class Iter<E> implements Iterator<E> {
+
+		/** the index of the next son. */
+		private int next;
+
+		/** the index of the last returned son, -1 if none. */
+		private int last = -1;
+
+		/** support remove or not. */
+		private final boolean removable;
+
+		/**
+		 * Constructor.
+		 * @param inRemovable support remove or not
+		 */
+		Iter(final boolean inRemovable) {
+			removable = inRemovable;
+		}
+
+		/**
+		 * Get the element at an index.
+		 * @param i the index
+		 * @return the element
+		 */
+		abstract E at(int i);
+
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@Override
+		public E next() {
+			if (next >= size) {
+				throw new NoSuchElementException();
+			}
+			last = next++;
+			return at(last);
+		}
+
+		@Override
+		public void remove() {
+			if (!removable) {
+				throw new UnsupportedOperationException();
+			}
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			removeAt(last);
+			next = last;
+			last = -1;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package xlong.file.object;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * JUnit test class for ChildTable class.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class ChildTableTest {
+
+	/**
+	 * Test.
+	 */
+	@Test
+	public final void testChildTable() {
+		ChildTable<Tree> table = new ChildTable<>();
+		Tree a = Tree.empty();
+		Tree b = Tree.empty();
+		Tree c = Tree.empty();
+		table.put("c", c);
+		table.put("a", a);
+		table.put("b", b);
+		table.put("d", b);
+		assertEquals(4, table.size());
+		assertEquals(a, table.get("a"));
+		assertEquals(null, table.get("e"));
+		assertEquals(b, table.remove("d"));
+		assertEquals(null, table.remove("d"));
+
+		List<String> names = new ArrayList<>();
+		for (Entry<String, Tree> en:table.entrySet()) {
+			names.add(en.getKey());
+		}
+		assertEquals("[a, b, c]", names.toString());
+
+		Iterator<Entry<String, Tree>> it = table.entrySet().iterator();
+		it.next();
+		it.remove();
+		assertEquals("b", it.next().getKey());
+		assertEquals(2, table.size());
+
+		ChildTable<Tree> copy = new ChildTable<>(table);
+		copy.put("a", a);
+		assertEquals(2, table.size());
+		assertEquals(3, copy.size());
+	}
+
+	/**
+	 * Test checksums.
+	 */
+	@Test
+	public final void testChecksums() {
+		TreeMap<String, String> map = new TreeMap<>();
+		map.put("y", "2");
+		map.put("x", "1");
+		ChildTable<Leaf> table = ChildTable.ofChecksums(map);
+		assertEquals(map, table.checksumView());
+		assertEquals(map, table.toChecksums());
+		assertEquals(null, table.get("x"));
+		assertEquals(true, table.containsKey("x"));
+		table.put("x", null);
+		assertEquals(null, table.checksumView().get("x"));
+		assertEquals("2", table.checksumView().get("y"));
+	}
+}
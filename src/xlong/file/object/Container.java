@@ -8,9 +8,14 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 
 import xlong.util.CompressionUtil;
+import xlong.util.Metrics;
+import xlong.util.Reporter;
 import xlong.util.SHA1Util;
+import xlong.util.Tracer;
 
 /**
  * The abstract class of all kinds of container.
@@ -23,6 +28,12 @@ public abstract class Container extends Object implements  Serializable {
 	/** for serialization. */
 	private static final long serialVersionUID = -8577017595565223283L;
 	
+	/** 
+	 * changed since saved or loaded or not.
+	 * Not initialized when load, so loaded containers are not dirty.
+	 */
+	private transient boolean dirty = true;
+	
 	/**
 	 * Use serialization change the object into byte array.
 	 * 
@@ -41,28 +52,102 @@ public abstract class Container extends Object implements  Serializable {
         return bytesArray;
 	}
 	
+	/**
+	 * Use serialization change the object into byte array,
+	 * and set the SHA1-checksum of the byte array.
+	 * The bytes are hashed while they are written.
+	 * 
+	 * @return the byte array
+	 */
+	private byte[] encode() {
+		ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		MessageDigest sha1 = SHA1Util.newDigest();
+		try {
+			ObjectOutputStream os = new ObjectOutputStream(
+					new DigestOutputStream(bs, sha1));
+			os.writeObject(this);
+			os.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		setChecksum(SHA1Util.toHexString(sha1.digest()));
+		Metrics.HASHED.add(bs.size());
+		return bs.toByteArray();
+	}
+	
 	/**
 	 * Save this object to file system. Use serialization change the object
-	 * into byte array.Then calculate, set and return the SHA1-checksum.
-	 * Finally save the compress the string to a file.
+	 * into byte array, calculate and set the SHA1-checksum at the same time.
+	 * Finally save the compress the byte array to a file.
 	 * If the directory not exist, this method will create the directory.
+	 * <p>
+	 * A container not changed since it was saved or loaded is not
+	 * saved again. A container already exists in the file system
+	 * is not written again.
 	 * 
 	 * @return SHA-1 checksum of this object
 	 * @throws IOException if an I/O error occurs
 	 */
 	public final String save() throws IOException {
+		if (!dirty && getChecksum() != null) {
+			return getChecksum();
+		}
+		long start = Tracer.start();
 		backup();
-		calChecksum();
-		System.out.println("Save container " + getChecksum());
+		byte[] bytesArray = encode();
+		release();
+		if (Reporter.isDebug()) {
+			Reporter.debug("Save container " + getChecksum());
+		}
 		
-        byte[] bytesArray = toByteArray();
 		Path outFilePath = getPath();
-		Files.createDirectories(outFilePath.getParent());
-        CompressionUtil.compressByteArray(bytesArray, outFilePath);
+		synchronized (writeLock(getChecksum())) {
+			long writeStart = Tracer.start();
+			if ((!mayExist(getChecksum()) || !isStored(getChecksum()))
+					&& write(bytesArray, outFilePath)) {
+				Tracer.end(writeStart, Tracer.WRITE, getChecksum(),
+						bytesArray.length);
+				Metrics.WRITTEN.increment();
+			} else {
+				Metrics.DEDUPLICATED.increment();
+			}
+			known(getChecksum());
+		}
+		dirty = false;
+		Tracer.end(start, Tracer.SAVE, getChecksum(), bytesArray.length);
         
         return getChecksum();
 	}
 	
+	/**
+	 * Write the compressed bytes to the file if it does not exist.
+	 * @param bytesArray the bytes
+	 * @param outFilePath the file
+	 * @return written or not
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static boolean write(final byte[] bytesArray,
+			final Path outFilePath) throws IOException {
+		Files.createDirectories(outFilePath.getParent());
+		return CompressionUtil.compressByteArray(bytesArray, outFilePath);
+	}
+	
+	/**
+	 * Whether this container changed since it was saved or loaded.
+	 * New containers are always dirty.
+	 * @return dirty or not
+	 */
+	public final boolean isDirty() {
+		return dirty;
+	}
+	
+	/**
+	 * Mark this container changed, it will be saved again.
+	 */
+	protected final void markDirty() {
+		dirty = true;
+	}
+	
 	/**
 	 * Load the backup object.
 	 * If fail return null.
@@ -73,10 +158,44 @@ public abstract class Container extends Object implements  Serializable {
 	 */
 	public static final Container load(final String checksum)
 			throws IOException {
-		System.out.println("Load container " + checksum);
-		
-		Path filePath = Object.checksumToPath(checksum);
+		if (Reporter.isDebug()) {
+			Reporter.debug("Load container " + checksum);
+		}
+		long start = System.nanoTime();
+		try {
+			Container con = loadShallow(checksum);
+			if (con == null) {
+				return null;
+			}
+			if (con.recover()) {
+				return con;
+			} else {
+				return null;
+			}
+		} finally {
+			Metrics.LOAD.record(System.nanoTime() - start);
+			if (Tracer.isEnabled()) {
+				Tracer.end(start, Tracer.LOAD, checksum, -1);
+			}
+		}
+	}
+	
+	/**
+	 * Load the backup object without recovering its transient properties.
+	 * Only the checksums of its sons are available in the returned object.
+	 * If fail return null.
+	 * 
+	 * @param checksum the checksum
+	 * @return the backup object
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static final Container loadShallow(final String checksum)
+			throws IOException {
+		Path filePath = Object.findPath(checksum);
 		byte[] bytesArray = CompressionUtil.decompressToByteArray(filePath);	
+		if (bytesArray == null) {
+			return null;
+		}
 		
 		ByteArrayInputStream bi = new ByteArrayInputStream(bytesArray);
         ObjectInputStream oi = new ObjectInputStream(bi);   
@@ -88,11 +207,8 @@ public abstract class Container extends Object implements  Serializable {
 			e.printStackTrace();
 			return null;
 		}
-        if (con.recover()) {
-        	return con;
-        } else {
-        	return null;
-        }
+        con.setChecksum(checksum);
+        return con;
 	}
 	
 	/**
@@ -101,9 +217,7 @@ public abstract class Container extends Object implements  Serializable {
 	 * The checksum of Blob can not modify.
 	 */
 	protected final void calChecksum() {
-		byte[] byteArray = toByteArray();
-		String newChecksum = SHA1Util.sha1Checksum(byteArray);
-		setChecksum(newChecksum);		
+		encode();
 	}
 	
 	/**
@@ -125,6 +239,13 @@ public abstract class Container extends Object implements  Serializable {
 	 */
 	public abstract void backup() throws IOException;
 	
+	/**
+	 * Release properties only needed to serialize, after save.
+	 */
+	protected void release() {
+		// nothing to release by default
+	}
+	
 	/**
 	 * Recover transient properties when load.
 	 * @return success or not
@@ -1,9 +1,12 @@
 package xlong.file.object;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import xlong.util.Reporter;
+
 /**
  * A leaf just contains a blob a blob checksum
  * and a boolean identify compressed or not.
@@ -17,7 +20,7 @@ public final class Leaf extends Container {
 	private static final long serialVersionUID = -1719117201849838735L;
 	
 	/** the limit of compressing file. */
-	private static final int COMPRESSLIM = 100000000;
+	static final int COMPRESSLIM = 100000000;
 	
 	/** the checksum of the blob. */
 	private String blobChecksum;
@@ -25,6 +28,13 @@ public final class Leaf extends Container {
 	/** the blob compressed or not. */
 	private boolean compressed;
 	
+	/**
+	 * the size of the file, negative if unknown.
+	 * Not serialized, so the checksum does not depend on it,
+	 * see {@link SizeCache}.
+	 */
+	private transient long size;
+	
 	/** the blob. */
 	private transient Blob blob;
 	
@@ -36,9 +46,24 @@ public final class Leaf extends Container {
 	 * @param inCompressed the blob compressed or not.
 	 */
 	private Leaf(final Blob inBlob, final boolean inCompressed) {
+		this(inBlob, inCompressed, -1);
+	}
+	
+	/**
+	 * Constructor just available in this class.
+	 * Set the blob of the leaf.
+	 * Set the type and checksum of the leaf. 
+	 * @param inBlob the blob to contain.
+	 * @param inCompressed the blob compressed or not.
+	 * @param inSize the size of the file, negative if unknown.
+	 */
+	private Leaf(final Blob inBlob, final boolean inCompressed,
+			final long inSize) {
 		blob = inBlob;
 		compressed = inCompressed;
+		size = inSize;
 		blobChecksum = blob.getChecksum();
+		SizeCache.put(blobChecksum, inSize);
 		setType(Object.LEAF);
 	}
 	
@@ -55,6 +80,18 @@ public final class Leaf extends Container {
 		return leaf;
 	}
 	
+	/**
+	 * Create a leaf of a stored blob.
+	 * @param inBlob the blob to contain.
+	 * @param inCompressed the blob compressed or not.
+	 * @param inSize the size of the file, negative if unknown.
+	 * @return the leaf
+	 */
+	static Leaf of(final Blob inBlob, final boolean inCompressed,
+			final long inSize) {
+		return new Leaf(inBlob, inCompressed, inSize);
+	}
+	
 	/**
 	 * Create a leaf contains given file.
 	 * 
@@ -63,20 +100,24 @@ public final class Leaf extends Container {
 	 * @throws IOException if an I/O error occurs
 	 */
 	public static Leaf create(final Path filePath) throws IOException {
-		if (Files.size(filePath) < COMPRESSLIM) {
+		long fileSize = Files.size(filePath);
+		Reporter.progress(1, fileSize);
+		if (fileSize < COMPRESSLIM) {
 			Blob blob = Blob.create(filePath, true);
-			Leaf leaf = new Leaf(blob, true);
+			Leaf leaf = new Leaf(blob, true, fileSize);
 			return leaf;			
 		} else {
 			Blob blob = Blob.create(filePath, false);
-			Leaf leaf = new Leaf(blob, false);
+			Leaf leaf = new Leaf(blob, false, fileSize);
 			return leaf;
 		}
 	}
 
 	@Override
 	public boolean restore(final Path outFilePath) throws IOException {
-		System.out.println("Restore Leaf to " + outFilePath);
+		if (Reporter.isDebug()) {
+			Reporter.debug("Restore Leaf to " + outFilePath);
+		}
 		return blob.restore(outFilePath, compressed);
 	}
 
@@ -95,6 +136,20 @@ public final class Leaf extends Container {
 	public void backup() {
 	}
 
+	/**
+	 * Set the type after deserialization,
+	 * the constructor is not called when load.
+	 * @param in the input stream
+	 * @throws IOException if an I/O error occurs
+	 * @throws ClassNotFoundException if a class cannot be found
+	 */
+	private void readObject(final ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		size = -1;
+		setType(Object.LEAF);
+	}
+
 	/**
 	 * @return the blobChecksum
 	 */
@@ -102,4 +157,30 @@ public final class Leaf extends Container {
 		return blobChecksum;
 	}
 
+	/**
+	 * Get the size of the file.
+	 * A loaded leaf gets its size from the {@link SizeCache}.
+	 * @return the size, negative if unknown
+	 */
+	public long getSize() {
+		if (size < 0) {
+			size = SizeCache.get(blobChecksum, compressed);
+		}
+		return size;
+	}
+
+	/**
+	 * @return the blob
+	 */
+	public Blob getBlob() {
+		return blob;
+	}
+
+	/**
+	 * @return the blob compressed or not
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
 }
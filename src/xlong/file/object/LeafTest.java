@@ -149,4 +149,24 @@ public class LeafTest {
 		}
 		assertEquals(checksumOri, checksumNew);
 	}
+	
+	/**
+	 * Test the size is not part of the checksum of a leaf,
+	 * and a loaded leaf gets its size from the cache.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testLeafSize() throws IOException {
+		Path oriPath = Paths.get("data/test/f.test");
+		Leaf direct = Leaf.create(oriPath);
+		Leaf fromBlob = Leaf.create(Blob.create(oriPath, true), true);
+		String checksum = direct.save();
+		assertEquals(checksum, fromBlob.save());
+		SizeCache.clear();
+		Leaf loaded = (Leaf) Leaf.load(checksum);
+		assertEquals(-1, loaded.getSize());
+		SizeCache.put(loaded.getBlobChecksum(), Files.size(oriPath));
+		loaded = (Leaf) Leaf.load(checksum);
+		assertEquals(Files.size(oriPath), loaded.getSize());
+	}
 }
@@ -1,10 +1,25 @@
 package xlong.file.object;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import xlong.util.AtomicWriter;
+import xlong.util.BloomFilter;
+
 /**
  * The abstract class of all kinds of file object classes.
+ * <p>
+ * Object files are stored in fan-out directories named by the first
+ * characters of their checksums. The layout gives the number of
+ * characters of each level, "2" stores an object "abcdef..." as
+ * "ab/cdef...", "2/2" as "ab/cd/ef...". The layout is recorded in the
+ * file {@value #LAYOUT_NAME} of the object directory, "2" if there is
+ * no such file. While objects move to a new layout, they are found in
+ * the previous layout too.
  * 
  * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
  *
@@ -18,15 +33,227 @@ public abstract class Object implements Comparable<Object> {
 	/** type constant. */
 	public static final int TREE = 3;
 	
+	/** length of a checksum. */
+	private static final int CHECKSUMLEN = 40;
+	/** base of a checksum. */
+	private static final int HEX = 16;
+	
+	/** the name of the layout file in the object directory. */
+	public static final String LAYOUT_NAME = "layout";
+	
+	/** the line of the layout in the layout file. */
+	private static final String LAYOUT = "layout ";
+	
+	/** the line of the previous layout in the layout file. */
+	private static final String PREVIOUS = "previous ";
+	
+	/** the layout if there is no layout file. */
+	private static final int[] DEFAULT_LAYOUT = {2};
+	
+	/** the charset of the layout file. */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	
+	/** number of locks to guard writing objects. */
+	private static final int STRIPES = 64;
+	
+	/** locks to guard writing objects, chosen by checksum. */
+	private static final java.lang.Object[] WRITE_LOCKS =
+			new java.lang.Object[STRIPES];
+	static {
+		for (int i = 0; i < STRIPES; i++) {
+			WRITE_LOCKS[i] = new java.lang.Object();
+		}
+	}
+	
 	/** the directory to store objects. */
 	private static String objectDir = "data/object";
 	
+	/** filter of objects known in the object directory, can be null. */
+	private static volatile BloomFilter filter = null;
+	
+	/** the layout of the object directory, null if not read. */
+	private static volatile int[] layout = null;
+	
+	/** the layout objects move from, null if not moving. */
+	private static volatile int[] previousLayout = null;
+	
 	/**
-	 * Sets the object directory.
+	 * Sets the object directory. The filter is removed.
+	 * The layout is read from the new directory when needed.
 	 * @param dir the object directory wants to set.
 	 */
 	public static final void setObjectDir(final String dir) {
 		objectDir = dir;
+		filter = null;
+		layout = null;
+		previousLayout = null;
+	}
+	
+	/**
+	 * Gets the layout of the object directory.
+	 * @return the number of characters of each level
+	 */
+	public static final int[] getLayout() {
+		return layout().clone();
+	}
+	
+	/**
+	 * Gets the layout objects move from.
+	 * @return the number of characters of each level, null if not moving
+	 */
+	public static final int[] getPreviousLayout() {
+		layout();
+		int[] l = previousLayout;
+		return l == null ? null : l.clone();
+	}
+	
+	/**
+	 * Sets the layout of the object directory and records it in the
+	 * layout file. Objects are not moved.
+	 * @param newLayout the layout
+	 * @param previous the layout objects move from, null if not moving
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static final synchronized void setLayout(final int[] newLayout,
+			final int[] previous) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(LAYOUT).append(formatLayout(newLayout)).append('\n');
+		if (previous != null) {
+			sb.append(PREVIOUS).append(formatLayout(previous)).append('\n');
+		}
+		Path file = Paths.get(objectDir, LAYOUT_NAME);
+		Files.createDirectories(file.getParent());
+		AtomicWriter.write(file, sb.toString().getBytes(CHARSET), true);
+		previousLayout = previous == null ? null : previous.clone();
+		layout = newLayout.clone();
+	}
+	
+	/**
+	 * Gets the layout, read the layout file if not read.
+	 * @return the layout
+	 */
+	private static int[] layout() {
+		int[] l = layout;
+		if (l == null) {
+			l = readLayout();
+		}
+		return l;
+	}
+	
+	/**
+	 * Read the layout file.
+	 * @return the layout
+	 */
+	private static synchronized int[] readLayout() {
+		if (layout != null) {
+			return layout;
+		}
+		int[] current = DEFAULT_LAYOUT;
+		int[] previous = null;
+		Path file = Paths.get(objectDir, LAYOUT_NAME);
+		if (Files.exists(file)) {
+			try (BufferedReader in = Files.newBufferedReader(file, CHARSET)) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.startsWith(LAYOUT)) {
+						current = parseLayout(line.substring(LAYOUT.length()));
+					} else if (line.startsWith(PREVIOUS)) {
+						previous = parseLayout(
+								line.substring(PREVIOUS.length()));
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (current == null) {
+				current = DEFAULT_LAYOUT;
+			}
+		}
+		previousLayout = previous;
+		layout = current;
+		return current;
+	}
+	
+	/**
+	 * Parse a layout such as "2/2".
+	 * @param text the text
+	 * @return the layout, null if not a layout
+	 */
+	public static final int[] parseLayout(final String text) {
+		String[] parts = text.trim().split("/");
+		int[] l = new int[parts.length];
+		int sum = 0;
+		for (int i = 0; i < parts.length; i++) {
+			try {
+				l[i] = Integer.parseInt(parts[i]);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (l[i] <= 0) {
+				return null;
+			}
+			sum += l[i];
+		}
+		if (sum >= CHECKSUMLEN) {
+			return null;
+		}
+		return l;
+	}
+	
+	/**
+	 * Format a layout such as "2/2".
+	 * @param l the layout
+	 * @return the text
+	 */
+	public static final String formatLayout(final int[] l) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < l.length; i++) {
+			if (i > 0) {
+				sb.append('/');
+			}
+			sb.append(l[i]);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Sets the filter of objects in the object directory.
+	 * Objects not in the filter are written without checking 
+	 * the file system first. Objects written are added to the filter.
+	 * @param newFilter the filter, null to always check
+	 */
+	public static final void setFilter(final BloomFilter newFilter) {
+		filter = newFilter;
+	}
+	
+	/**
+	 * Gets the filter of objects in the object directory.
+	 * @return the filter, null if none
+	 */
+	public static final BloomFilter getFilter() {
+		return filter;
+	}
+	
+	/**
+	 * Whether an object may exist in the object directory.
+	 * Always true if no filter.
+	 * @param checksum checksum
+	 * @return false if the object is not in the filter
+	 */
+	protected static final boolean mayExist(final String checksum) {
+		BloomFilter f = filter;
+		return f == null || f.mightContain(checksum);
+	}
+	
+	/**
+	 * Add an object known in the object directory to the filter.
+	 * @param checksum checksum
+	 */
+	protected static final void known(final String checksum) {
+		BloomFilter f = filter;
+		if (f != null) {
+			f.add(checksum);
+		}
 	}
 	
 	/**
@@ -107,13 +334,108 @@ public abstract class Object implements Comparable<Object> {
 		}
 	}
 	
+	/**
+	 * Gets the lock to guard writing the object with given checksum.
+	 * Objects with the same checksum are never written at the same time.
+	 * @param checksum checksum
+	 * @return the lock
+	 */
+	protected static final java.lang.Object writeLock(final String checksum) {
+		return WRITE_LOCKS[(checksum.hashCode() & Integer.MAX_VALUE) % STRIPES];
+	}
+	
 	/**
 	 * Converts checksum to path.
+	 * Objects are written to this path.
 	 * @param checksum checksum
 	 * @return the path
 	 */
 	public static final Path checksumToPath(final String checksum) {
-		return Paths.get(objectDir,
-				checksum.substring(0, 2), checksum.substring(2));
+		return checksumToPath(checksum, layout());
+	}
+	
+	/**
+	 * Converts checksum to path in the given layout.
+	 * @param checksum checksum
+	 * @param l the layout
+	 * @return the path
+	 */
+	public static final Path checksumToPath(final String checksum,
+			final int[] l) {
+		String[] names = new String[l.length + 1];
+		int from = 0;
+		for (int i = 0; i < l.length; i++) {
+			names[i] = checksum.substring(from, from + l[i]);
+			from += l[i];
+		}
+		names[l.length] = checksum.substring(from);
+		return Paths.get(objectDir, names);
+	}
+	
+	/**
+	 * Find the file of an object to read.
+	 * An object written but not renamed yet is renamed first, see
+	 * {@link AtomicWriter}.
+	 * While objects move to a new layout, an object not moved yet is
+	 * found in the previous layout.
+	 * @param checksum checksum
+	 * @return the path, the path in the layout if not found
+	 */
+	public static final Path findPath(final String checksum) {
+		Path path = checksumToPath(checksum);
+		if (AtomicWriter.isPending(path)) {
+			try {
+				AtomicWriter.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		int[] previous = previousLayout;
+		if (previous != null && !Files.exists(path)) {
+			Path old = checksumToPath(checksum, previous);
+			if (Files.exists(old)) {
+				return old;
+			}
+		}
+		return path;
+	}
+	
+	/**
+	 * Whether the object with given checksum is stored, or written and
+	 * waits to be renamed. While objects move to a new layout, an
+	 * object not moved yet is stored too.
+	 * @param checksum checksum
+	 * @return stored or not
+	 */
+	protected static final boolean isStored(final String checksum) {
+		if (AtomicWriter.exists(checksumToPath(checksum))) {
+			return true;
+		}
+		int[] previous = previousLayout;
+		return previous != null
+				&& Files.exists(checksumToPath(checksum, previous));
+	}
+	
+	/**
+	 * Converts path of an object file to checksum.
+	 * If the path is not an object file, return null.
+	 * @param path the path
+	 * @return the checksum
+	 */
+	public static final String pathToChecksum(final Path path) {
+		Path relative = Paths.get(objectDir).relativize(path);
+		StringBuilder sb = new StringBuilder(CHECKSUMLEN);
+		for (Path name:relative) {
+			sb.append(name.toString());
+		}
+		if (sb.length() != CHECKSUMLEN) {
+			return null;
+		}
+		for (int i = 0; i < CHECKSUMLEN; i++) {
+			if (Character.digit(sb.charAt(i), HEX) < 0) {
+				return null;
+			}
+		}
+		return sb.toString();
 	}
 }
@@ -0,0 +1,514 @@
+package xlong.file.object;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import xlong.util.CompressionUtil;
+import xlong.util.FileExecutors;
+import xlong.util.Metrics;
+import xlong.util.SHA1Util;
+
+/**
+ * Restore a tree with several threads.
+ * <p>
+ * All directories are created first. Then files are restored
+ * by a pool of workers. The number of files decompressing at the same
+ * time and the number of files writing at the same time are limited
+ * separately. A compressed file is decompressed straight into the
+ * file it restores to, a buffer at a time, so it holds a slot of both
+ * limits while it is restored.
+ * <p>
+ * If virtual threads are used (see {@link FileExecutors}), each file
+ * has its own thread instead of a worker, and the number of files in
+ * progress is limited by {@link FileExecutors#getVirtual()}.
+ * <p>
+ * By default existing files are rewritten.
+ * In sync modes existing files are compared with the tree first,
+ * only new or changed files are written. The size and modified time
+ * of each file written or found unchanged are kept in a
+ * {@link StatCache}, so the next sync to the directory compares them
+ * first and reads only files touched since.
+ * Files and directories not in the tree can be deleted on request.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class ParallelRestore {
+
+	/**
+	 * How to find files need to write.
+	 */
+	public enum Mode {
+		/** write all files. */
+		OVERWRITE,
+		/**
+		 * skip existing files with the size and modified time they had
+		 * when last restored or checked. Other files are written
+		 * without reading them.
+		 */
+		SIZE,
+		/**
+		 * as SIZE, but files with the same size and another modified
+		 * time are hashed, and skipped if their checksum is the same.
+		 */
+		CHECKSUM
+	}
+
+	/**
+	 * Listener of restore progress.
+	 * Called by worker threads, must be thread safe.
+	 */
+	public interface Progress {
+		/**
+		 * Called when a file is restored or skipped.
+		 * @param file the file restored
+		 * @param bytes the bytes written, 0 if skipped
+		 * @param doneFiles the number of files restored
+		 * @param totalFiles the number of files to restore
+		 */
+		void restored(Path file, long bytes, long doneFiles, long totalFiles);
+	}
+
+	/** the number of workers. */
+	private final int workers;
+
+	/** limit of decompressing. */
+	private final Semaphore inflaters;
+
+	/** limit of writing. */
+	private final Semaphore writers;
+
+	/** how to find files need to write. */
+	private Mode mode = Mode.OVERWRITE;
+
+	/** delete files not in the tree or not. */
+	private boolean deleteExtras = false;
+
+	/** the progress listener, can be null. */
+	private Progress progress;
+
+	/** the number of files restored. */
+	private final AtomicLong doneFiles = new AtomicLong();
+
+	/** the number of files skipped because not changed. */
+	private final AtomicLong skippedFiles = new AtomicLong();
+
+	/** the number of files deleted. */
+	private final AtomicLong deletedFiles = new AtomicLong();
+
+	/** the number of bytes restored. */
+	private final AtomicLong doneBytes = new AtomicLong();
+
+	/** the number of files hashed to compare them. */
+	private final AtomicLong hashedFiles = new AtomicLong();
+
+	/** the number of files to restore. */
+	private long totalFiles;
+
+	/** the files known before the restore. */
+	private StatCache known = new StatCache();
+
+	/** the files written or found unchanged by the restore. */
+	private final StatCache stats = new StatCache();
+
+	/** the directory restores to. */
+	private Path root;
+
+	/**
+	 * Constructor with two workers per processor.
+	 * At most one file per processor is decompressing.
+	 */
+	public ParallelRestore() {
+		this(Runtime.getRuntime().availableProcessors() * 2,
+				Runtime.getRuntime().availableProcessors(),
+				Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	/**
+	 * Constructor.
+	 * @param inWorkers the number of workers
+	 * @param inInflaters the maximum number of files decompressing
+	 * @param inWriters the maximum number of files writing
+	 */
+	public ParallelRestore(final int inWorkers, final int inInflaters,
+			final int inWriters) {
+		workers = inWorkers;
+		inflaters = new Semaphore(inInflaters);
+		writers = new Semaphore(inWriters);
+	}
+
+	/**
+	 * @param newMode how to find files need to write
+	 */
+	public void setMode(final Mode newMode) {
+		mode = newMode;
+	}
+
+	/**
+	 * @param delete delete files not in the tree or not
+	 */
+	public void setDeleteExtras(final boolean delete) {
+		deleteExtras = delete;
+	}
+
+	/**
+	 * @param listener the progress listener to set
+	 */
+	public void setProgress(final Progress listener) {
+		progress = listener;
+	}
+
+	/**
+	 * @param cache the files of the directory known before, saved from
+	 * {@link #getStatCache()} of the last restore to it
+	 */
+	public void setStatCache(final StatCache cache) {
+		known = cache;
+	}
+
+	/**
+	 * @return the files written or found unchanged by the restore,
+	 * to compare with in the next one
+	 */
+	public StatCache getStatCache() {
+		return stats;
+	}
+
+	/**
+	 * Restore the tree to the given directory.
+	 * @param tree the tree
+	 * @param outFileDir the directory restores to
+	 * @return totally success or not
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean restore(final Tree tree, final Path outFileDir)
+			throws IOException {
+		root = outFileDir;
+		List<Task> tasks = prepare(tree, outFileDir);
+		totalFiles = tasks.size();
+		ExecutorService pool = FileExecutors.newExecutor(workers);
+		try {
+			List<Future<Boolean>> futures = pool.invokeAll(tasks);
+			boolean flag = true;
+			for (Future<Boolean> f:futures) {
+				if (!f.get()) {
+					flag = false;
+				}
+			}
+			return flag;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Restore interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Create all directories, delete extra files
+	 * and collect files to restore.
+	 * @param tree the tree
+	 * @param outFileDir the directory restores to
+	 * @return the tasks to restore files
+	 * @throws IOException if an I/O error occurs
+	 */
+	private List<Task> prepare(final Tree tree, final Path outFileDir)
+			throws IOException {
+		List<Task> tasks = new ArrayList<Task>();
+		Deque<Tree> trees = new ArrayDeque<Tree>();
+		Deque<Path> dirs = new ArrayDeque<Path>();
+		trees.push(tree);
+		dirs.push(outFileDir);
+		while (!trees.isEmpty()) {
+			Tree t = trees.pop();
+			Path dir = dirs.pop();
+			prepareDirectory(t, dir);
+			for (Entry<String, Leaf> en:t.getLeafs().entrySet()) {
+				tasks.add(new Task(en.getValue(), dir.resolve(en.getKey())));
+			}
+			for (Entry<String, Tree> en:t.getTrees().entrySet()) {
+				trees.push(en.getValue());
+				dirs.push(dir.resolve(en.getKey()));
+			}
+		}
+		return tasks;
+	}
+
+	/**
+	 * Create a directory and delete extra files in it.
+	 * @param tree the tree restores to the directory
+	 * @param dir the directory
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void prepareDirectory(final Tree tree, final Path dir)
+			throws IOException {
+		if (deleteExtras && Files.exists(dir, LinkOption.NOFOLLOW_LINKS)
+				&& !Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+			delete(dir);
+		}
+		Files.createDirectories(dir);
+		if (!deleteExtras) {
+			return;
+		}
+		List<Path> extras = new ArrayList<Path>();
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(dir)) {
+			for (Path p:paths) {
+				String nick = p.getFileName().toString();
+				boolean isDir = Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS);
+				if (isDir && tree.getTrees().containsKey(nick)) {
+					continue;
+				}
+				if (!isDir && tree.getLeafs().containsKey(nick)) {
+					continue;
+				}
+				extras.add(p);
+			}
+		}
+		for (Path p:extras) {
+			delete(p);
+		}
+	}
+
+	/**
+	 * Delete a file or a directory and all files in it.
+	 * @param path the path to delete
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void delete(final Path path) throws IOException {
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file,
+					final BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				deletedFiles.incrementAndGet();
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(final Path d,
+					final IOException e) throws IOException {
+				if (e != null) {
+					throw e;
+				}
+				Files.delete(d);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Check whether an existing file is the same as the leaf.
+	 * The size and modified time are compared with the known files
+	 * first, the file is read only if they differ.
+	 * @param leaf the leaf
+	 * @param outFilePath the file
+	 * @return same or not
+	 * @throws IOException if an I/O error occurs
+	 */
+	private boolean unchanged(final Leaf leaf, final Path outFilePath)
+			throws IOException {
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(outFilePath,
+					BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		if (!attrs.isRegularFile()) {
+			return false;
+		}
+		if (leaf.getSize() >= 0 && attrs.size() != leaf.getSize()) {
+			return false;
+		}
+		String name = root.relativize(outFilePath).toString();
+		long modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+		String checksum = leaf.getBlobChecksum();
+		if (!known.matches(name, attrs.size(), modified, checksum)) {
+			if (mode == Mode.SIZE) {
+				return false;
+			}
+			hashedFiles.incrementAndGet();
+			if (!checksum.equals(SHA1Util.sha1Checksum(outFilePath))) {
+				return false;
+			}
+		}
+		stats.put(name, attrs.size(), modified, checksum);
+		return true;
+	}
+
+	/**
+	 * Record a file written.
+	 * @param leaf the leaf
+	 * @param outFilePath the file
+	 * @return the size of the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	private long written(final Leaf leaf, final Path outFilePath)
+			throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(outFilePath,
+				BasicFileAttributes.class);
+		stats.put(root.relativize(outFilePath).toString(), attrs.size(),
+				attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+				leaf.getBlobChecksum());
+		return attrs.size();
+	}
+
+	/**
+	 * Restore one file.
+	 * @param leaf the leaf
+	 * @param outFilePath the file restores to
+	 * @return success or not
+	 * @throws IOException if an I/O error occurs
+	 * @throws InterruptedException if interrupted
+	 */
+	private boolean restoreFile(final Leaf leaf, final Path outFilePath)
+			throws IOException, InterruptedException {
+		Blob blob = leaf.getBlob();
+		long bytes;
+		boolean skip = false;
+		if (mode != Mode.OVERWRITE) {
+			writers.acquire();
+			try {
+				skip = unchanged(leaf, outFilePath);
+			} finally {
+				writers.release();
+			}
+		}
+		if (skip) {
+			skippedFiles.incrementAndGet();
+			bytes = 0;
+		} else if (leaf.isCompressed()) {
+			long start = System.nanoTime();
+			boolean restored;
+			inflaters.acquire();
+			try {
+				writers.acquire();
+				try {
+					Files.deleteIfExists(outFilePath);
+					restored = CompressionUtil.decompressToFile(
+							Object.findPath(blob.getChecksum()), outFilePath);
+				} finally {
+					writers.release();
+				}
+			} finally {
+				inflaters.release();
+			}
+			if (!restored) {
+				return false;
+			}
+			bytes = written(leaf, outFilePath);
+			Metrics.BLOB_RESTORE.record(System.nanoTime() - start);
+		} else {
+			long start = System.nanoTime();
+			writers.acquire();
+			try {
+				Files.copy(Object.findPath(blob.getChecksum()), outFilePath,
+						StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				writers.release();
+			}
+			bytes = written(leaf, outFilePath);
+			Metrics.BLOB_RESTORE.record(System.nanoTime() - start);
+		}
+		long done = doneFiles.incrementAndGet();
+		doneBytes.addAndGet(bytes);
+		Progress p = progress;
+		if (p != null) {
+			p.restored(outFilePath, bytes, done, totalFiles);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of files restored, include skipped files
+	 */
+	public long getDoneFiles() {
+		return doneFiles.get();
+	}
+
+	/**
+	 * @return the number of files skipped because not changed
+	 */
+	public long getSkippedFiles() {
+		return skippedFiles.get();
+	}
+
+	/**
+	 * @return the number of files hashed to compare them
+	 */
+	public long getHashedFiles() {
+		return hashedFiles.get();
+	}
+
+	/**
+	 * @return the number of files deleted
+	 */
+	public long getDeletedFiles() {
+		return deletedFiles.get();
+	}
+
+	/**
+	 * @return the number of bytes written
+	 */
+	public long getDoneBytes() {
+		return doneBytes.get();
+	}
+
+	/**
+	 * @return the number of files to restore
+	 */
+	public long getTotalFiles() {
+		return totalFiles;
+	}
+
+	/**
+	 * Task to restore one file.
+	 */
+	private final class Task implements Callable<Boolean> {
+
+		/** the leaf. */
+		private final Leaf leaf;
+
+		/** the file restores to. */
+		private final Path outFilePath;
+
+		/**
+		 * Constructor.
+		 * @param inLeaf the leaf
+		 * @param inOutFilePath the file restores to
+		 */
+		Task(final Leaf inLeaf, final Path inOutFilePath) {
+			leaf = inLeaf;
+			outFilePath = inOutFilePath;
+		}
+
+		@Override
+		public Boolean call() throws IOException, InterruptedException {
+			return restoreFile(leaf, outFilePath);
+		}
+	}
+}
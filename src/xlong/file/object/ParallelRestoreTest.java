@@ -0,0 +1,184 @@
+package xlong.file.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import xlong.util.SHA1Util;
+
+/**
+ * JUnit test class for ParallelRestore class.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class ParallelRestoreTest {
+
+	/** time to move the modified time back. */
+	private static final long WAIT = 10000;
+
+	/**
+	 * Create test directory and files before test.
+	 * Create a test directory data/test/
+	 * If the directory already exist, the test will fail.
+	 * Set objectDir of Object Class to data/test/object
+	 */
+	@BeforeClass
+	public static final void before() {
+		System.out.println("Preparing test file...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			fail("The test directory already exist."
+				+ "Please delete the directory \"data/test\" and retry.");
+		} else {
+			try {
+				Files.createDirectories(dir);
+			} catch (IOException e) {
+				fail("Can't create the test directory.");
+				e.printStackTrace();
+			}
+		}
+		Object.setObjectDir("data/test/object");
+	}
+	
+	/**
+	 * Delete test directory and all files in it.
+	 */
+	@AfterClass
+	public static final void after() {
+		System.out.println("Deleting test files...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			if (!deleteFile(dir.toFile())) {
+				fail("Can't delete test files.");
+			}
+		} 
+		System.out.println("Finish.");
+	}
+	
+	/**
+	 * Delete a file or directory.
+	 * @param file the file to delete
+	 * @return success or not
+	 */
+	private static boolean deleteFile(final File file) {
+		if (file.exists()) {
+			if (file.isFile()) {
+				return file.delete();
+			} else if (file.isDirectory()) {
+				boolean flag = true;
+				File[] files = file.listFiles();
+				for (int i = 0; i < files.length; i++) {
+					flag &= deleteFile(files[i]);
+				}
+				flag &= file.delete();
+				return flag;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Test.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testRestore() throws IOException {
+		Path oriFile = Paths.get("src/xlong/file/object/TreeTest.java");
+		Path newFile = Paths.get("data/test/p/xlong/file/object/TreeTest.java");
+		Path oriPath = Paths.get("src");
+		Path newPath = Paths.get("data/test/p");
+		Tree tree = Tree.create(oriPath);
+		String treeChecksum = tree.save();
+		Tree newTree = (Tree) Tree.load(treeChecksum);
+		ParallelRestore restore = new ParallelRestore(4, 2, 3);
+		final AtomicLong reported = new AtomicLong();
+		restore.setProgress(new ParallelRestore.Progress() {
+			@Override
+			public void restored(final Path file, final long bytes,
+					final long doneFiles, final long totalFiles) {
+				reported.incrementAndGet();
+			}
+		});
+		assertTrue(restore.restore(newTree, newPath));
+		assertTrue(restore.getTotalFiles() > 0);
+		assertEquals(restore.getTotalFiles(), restore.getDoneFiles());
+		assertEquals(restore.getTotalFiles(), reported.get());
+		assertEquals(SHA1Util.sha1Checksum(oriFile),
+				SHA1Util.sha1Checksum(newFile));
+		// restore again over existing files
+		assertTrue(new ParallelRestore().restore(newTree, newPath));
+		assertEquals(SHA1Util.sha1Checksum(oriFile),
+				SHA1Util.sha1Checksum(newFile));
+	}
+	
+	/**
+	 * Test sync restore.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testSync() throws IOException {
+		Path oriFile = Paths.get("src/xlong/file/object/TreeTest.java");
+		Path newPath = Paths.get("data/test/s");
+		Path changed = newPath.resolve("xlong/file/object/TreeTest.java");
+		Path same = newPath.resolve("xlong/file/object/Tree.java");
+		Path extraFile = newPath.resolve("xlong/extra.txt");
+		Path extraDir = newPath.resolve("xlong/extra/dir");
+		Tree tree = Tree.create(Paths.get("src"));
+		Tree newTree = (Tree) Tree.load(tree.save());
+		ParallelRestore restore = new ParallelRestore();
+		assertTrue(restore.restore(newTree, newPath));
+		long total = restore.getTotalFiles();
+		
+		Files.write(changed, "changed".getBytes());
+		Files.write(extraFile, "extra".getBytes());
+		Files.createDirectories(extraDir);
+		Files.write(extraDir.resolve("f"), "extra".getBytes());
+		long time = Files.getLastModifiedTime(same).toMillis() - WAIT;
+		Files.setLastModifiedTime(same, FileTime.fromMillis(time));
+		
+		ParallelRestore sync = new ParallelRestore();
+		sync.setMode(ParallelRestore.Mode.CHECKSUM);
+		sync.setDeleteExtras(true);
+		sync.setStatCache(restore.getStatCache());
+		assertTrue(sync.restore(newTree, newPath));
+		assertEquals(total, sync.getDoneFiles());
+		assertEquals(total - 1, sync.getSkippedFiles());
+		assertEquals(2, sync.getDeletedFiles());
+		// only the file with another modified time is read
+		assertEquals(1, sync.getHashedFiles());
+		assertEquals(SHA1Util.sha1Checksum(oriFile),
+				SHA1Util.sha1Checksum(changed));
+		assertEquals(time, Files.getLastModifiedTime(same).toMillis());
+		assertTrue(!Files.exists(extraFile));
+		assertTrue(!Files.exists(newPath.resolve("xlong/extra")));
+		
+		// an edit of the same size is found by the modified time
+		byte[] bytes = Files.readAllBytes(same);
+		bytes[0] ^= 1;
+		Files.write(same, bytes);
+		Files.setLastModifiedTime(same, FileTime.fromMillis(time + WAIT));
+		Path statPath = Paths.get("data/test/stats");
+		sync.getStatCache().save(statPath);
+		ParallelRestore sizeSync = new ParallelRestore();
+		sizeSync.setMode(ParallelRestore.Mode.SIZE);
+		sizeSync.setStatCache(StatCache.load(statPath));
+		assertTrue(sizeSync.restore(newTree, newPath));
+		assertEquals(total - 1, sizeSync.getSkippedFiles());
+		assertEquals(0, sizeSync.getHashedFiles());
+		assertEquals(SHA1Util.sha1Checksum(Paths.get(
+				"src/xlong/file/object/Tree.java")),
+				SHA1Util.sha1Checksum(same));
+	}
+}
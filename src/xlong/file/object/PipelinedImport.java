@@ -0,0 +1,659 @@
+package xlong.file.object;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import xlong.util.AtomicWriter;
+import xlong.util.CompressionUtil;
+import xlong.util.FileExecutors;
+import xlong.util.Metrics;
+import xlong.util.Reporter;
+import xlong.util.SHA1Util;
+import xlong.util.Tracer;
+
+/**
+ * Create a tree of a directory in stages running at the same time.
+ * <p>
+ * Directories are listed at the same time, one task per directory on
+ * {@link FileExecutors} threads, while the calling thread hands out the
+ * directories found. Readers read files into memory, workers hash and
+ * compress them, writers write the blobs.
+ * The stages are connected by bounded queues, and the bytes read but
+ * not written yet are limited, so a slow stage holds back the stages
+ * before it. While writers wait for the disk, workers keep all
+ * processors busy.
+ * <p>
+ * If virtual threads are used (see {@link FileExecutors}), there is
+ * one reader per file in progress and one virtual thread per directory
+ * listed, so the waits to open and read many small files and to list
+ * and stat many directories overlap.
+ * <p>
+ * Files too large to compress are not read into memory,
+ * they are hashed and copied as files.
+ * The tree created is the same as the one created by
+ * {@link Tree#create(Path)}. Blobs already stored are not checked
+ * again, only the existence of their files.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class PipelinedImport {
+
+	/** the default limit of bytes read but not written. */
+	public static final long DEFAULT_MEMORY = 256L * 1024 * 1024;
+
+	/** bytes of a memory permit. */
+	private static final int PERMIT = 1024;
+
+	/** the marker of the end of a queue. */
+	private static final Task END = new Task(null);
+
+	/** the number of readers. */
+	private final int readers;
+
+	/** the number of hashing and compressing workers. */
+	private final int workers;
+
+	/** the number of writers. */
+	private final int writers;
+
+	/** the capacity of each queue. */
+	private final int capacity;
+
+	/** the number of memory permits. */
+	private final int permits;
+
+	/**
+	 * A file to store.
+	 */
+	private static final class Task {
+
+		/** the file. */
+		private final Path path;
+
+		/** the size of the file, set by the reader. */
+		private long size;
+
+		/** the content, null if not read. */
+		private byte[] data;
+
+		/** the memory permits held. */
+		private int held;
+
+		/** the checksum. */
+		private String checksum;
+
+		/** the leaf created, set when done. */
+		private Leaf leaf;
+
+		/**
+		 * Constructor.
+		 * @param inPath the file
+		 */
+		Task(final Path inPath) {
+			path = inPath;
+		}
+
+		/**
+		 * @return compress the file or not
+		 */
+		boolean isCompressed() {
+			return size < Leaf.COMPRESSLIM;
+		}
+	}
+
+	/**
+	 * A directory walked.
+	 */
+	private static final class Dir {
+
+		/** the files, by nickname. */
+		private final TreeMap<String, Task> files = new TreeMap<>();
+
+		/** the sub directories, by nickname. */
+		private final TreeMap<String, Dir> dirs = new TreeMap<>();
+	}
+
+	/**
+	 * The listing of one directory, run by a lister.
+	 */
+	private static final class Listing implements Runnable {
+
+		/** the directory. */
+		private final Path path;
+
+		/** where to record the directory. */
+		private final Dir dir;
+
+		/** the running stages. */
+		private final Run run;
+
+		/** where to put the listing when done. */
+		private final BlockingQueue<Listing> done;
+
+		/** the sub directories found. */
+		private final List<Listing> subs = new ArrayList<>();
+
+		/** the failure, null if none. */
+		private Throwable failure;
+
+		/**
+		 * Constructor.
+		 * @param inPath the directory
+		 * @param inDir where to record the directory
+		 * @param inRun the running stages
+		 * @param inDone where to put the listing when done
+		 */
+		Listing(final Path inPath, final Dir inDir, final Run inRun,
+				final BlockingQueue<Listing> inDone) {
+			path = inPath;
+			dir = inDir;
+			run = inRun;
+			done = inDone;
+		}
+
+		@Override
+		public void run() {
+			Reporter.setThreadSink(run.sink);
+			try {
+				list();
+			} catch (IOException | RuntimeException e) {
+				failure = e;
+			} catch (InterruptedException e) {
+				failure = e;
+				Thread.currentThread().interrupt();
+			} finally {
+				Reporter.setThreadSink(null);
+				done.add(this);
+			}
+		}
+
+		/**
+		 * List the directory, as {@link Tree#create(Path)} does.
+		 * Files go to the readers, sub directories are kept to be listed.
+		 * @throws IOException if an I/O error occurs
+		 * @throws InterruptedException if interrupted
+		 */
+		private void list() throws IOException, InterruptedException {
+			if (Reporter.isDebug()) {
+				Reporter.debug("Create Tree for " + path);
+			}
+			try (DirectoryStream<Path> paths = Files.newDirectoryStream(path)) {
+				for (Path p:paths) {
+					if (run.failure.get() != null) {
+						return;
+					}
+					String nick = Tree.name(p.getFileName().toString());
+					if (Files.isDirectory(p)) {
+						Dir sub = new Dir();
+						dir.dirs.put(nick, sub);
+						subs.add(new Listing(p, sub, run, done));
+					} else {
+						Task task = new Task(p);
+						dir.files.put(nick, task);
+						run.read.put(task);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructor with one reader and one writer per two processors,
+	 * and one worker per processor.
+	 * If virtual threads are used, one reader per file in progress.
+	 */
+	public PipelinedImport() {
+		this(FileExecutors.getVirtual() > 0 ? FileExecutors.getVirtual()
+				: Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+				Runtime.getRuntime().availableProcessors(),
+				Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+	}
+
+	/**
+	 * Constructor.
+	 * @param inReaders the number of readers
+	 * @param inWorkers the number of hashing and compressing workers
+	 * @param inWriters the number of writers
+	 */
+	public PipelinedImport(final int inReaders, final int inWorkers,
+			final int inWriters) {
+		this(inReaders, inWorkers, inWriters, DEFAULT_MEMORY);
+	}
+
+	/**
+	 * Constructor.
+	 * @param inReaders the number of readers
+	 * @param inWorkers the number of hashing and compressing workers
+	 * @param inWriters the number of writers
+	 * @param memory the limit of bytes read but not written
+	 */
+	public PipelinedImport(final int inReaders, final int inWorkers,
+			final int inWriters, final long memory) {
+		if (inReaders < 1 || inWorkers < 1 || inWriters < 1) {
+			throw new IllegalArgumentException("stages need threads");
+		}
+		readers = inReaders;
+		workers = inWorkers;
+		writers = inWriters;
+		capacity = 4 * Math.max(inReaders, Math.max(inWorkers, inWriters));
+		permits = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+				memory / PERMIT));
+	}
+
+	/**
+	 * Create a tree contains given directory.
+	 * @param dirPath the directory
+	 * @return the tree, null if not a directory
+	 * @throws IOException if an I/O error occurs in any stage
+	 */
+	public Tree create(final Path dirPath) throws IOException {
+		if (!Files.isDirectory(dirPath)) {
+			return null;
+		}
+		Run run = new Run(Reporter.current());
+		Dir root = new Dir();
+		run.start();
+		try {
+			walk(dirPath, root, run);
+		} catch (RuntimeException e) {
+			run.fail(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			run.fail(e);
+		} finally {
+			run.finish();
+		}
+		Throwable failure = run.failure.get();
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure != null) {
+			throw new IOException(failure);
+		}
+		return assemble(root);
+	}
+
+	/**
+	 * Walk a directory, as {@link Tree#create(Path)} does. Directories
+	 * are listed by listers, the calling thread hands out the directories
+	 * they find, so a lister never waits for another one.
+	 * @param dirPath the directory
+	 * @param dir where to record the directory
+	 * @param run the running stages
+	 * @throws InterruptedException if interrupted
+	 */
+	private void walk(final Path dirPath, final Dir dir, final Run run)
+			throws InterruptedException {
+		BlockingQueue<Listing> done = new LinkedBlockingQueue<>();
+		ExecutorService listers = FileExecutors.newExecutor(readers);
+		try {
+			listers.execute(new Listing(dirPath, dir, run, done));
+			int pending = 1;
+			while (pending > 0) {
+				Listing listing = done.take();
+				pending--;
+				if (listing.failure != null) {
+					run.fail(listing.failure);
+				}
+				if (run.failure.get() != null) {
+					continue;
+				}
+				for (Listing sub:listing.subs) {
+					listers.execute(sub);
+					pending++;
+				}
+			}
+		} finally {
+			listers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Create the tree of a walked directory.
+	 * @param dir the directory
+	 * @return the tree
+	 */
+	private static Tree assemble(final Dir dir) {
+		TreeMap<String, Leaf> newLeafs = new TreeMap<>();
+		for (Entry<String, Task> en:dir.files.entrySet()) {
+			newLeafs.put(en.getKey(), en.getValue().leaf);
+		}
+		TreeMap<String, Tree> newTrees = new TreeMap<>();
+		for (Entry<String, Dir> en:dir.dirs.entrySet()) {
+			newTrees.put(en.getKey(), assemble(en.getValue()));
+		}
+		return Tree.of(newLeafs, newTrees);
+	}
+
+	/**
+	 * The stages of one import.
+	 */
+	private final class Run {
+
+		/** files to read. */
+		private final BlockingQueue<Task> read =
+				new ArrayBlockingQueue<>(capacity);
+
+		/** files to hash and compress. */
+		private final BlockingQueue<Task> hash =
+				new ArrayBlockingQueue<>(capacity);
+
+		/** files to write. */
+		private final BlockingQueue<Task> write =
+				new ArrayBlockingQueue<>(capacity);
+
+		/** limit of bytes read but not written. */
+		private final Semaphore memory = new Semaphore(permits);
+
+		/** the first failure, null if none. */
+		private final AtomicReference<Throwable> failure =
+				new AtomicReference<>();
+
+		/** the meter, can be null. */
+		private final Reporter.Meter meter;
+
+		/** the sink of the importing thread, null if none. */
+		private final Reporter.Sink sink = Reporter.getThreadSink();
+
+		/** the threads. */
+		private final List<Thread> threads = new ArrayList<>();
+
+		/**
+		 * Constructor.
+		 * @param inMeter the meter, can be null
+		 */
+		Run(final Reporter.Meter inMeter) {
+			meter = inMeter;
+		}
+
+		/**
+		 * Start all stages.
+		 */
+		void start() {
+			AtomicInteger readersLeft = new AtomicInteger(readers);
+			AtomicInteger workersLeft = new AtomicInteger(workers);
+			AtomicInteger writersLeft = new AtomicInteger(writers);
+			for (int i = 0; i < readers; i++) {
+				Thread t = FileExecutors.newThread("Import-Reader-" + i,
+						new Stage(read, hash, readersLeft, workers) {
+					@Override
+					void process(final Task task) throws IOException,
+							InterruptedException {
+						readFile(task);
+					}
+				});
+				threads.add(t);
+				t.start();
+			}
+			for (int i = 0; i < workers; i++) {
+				thread("Hasher-" + i, new Stage(hash, write, workersLeft,
+						writers) {
+					@Override
+					void process(final Task task) throws IOException,
+							InterruptedException {
+						hashFile(task);
+					}
+				});
+			}
+			for (int i = 0; i < writers; i++) {
+				thread("Writer-" + i, new Stage(write, null, writersLeft,
+						0) {
+					@Override
+					void process(final Task task) throws IOException {
+						writeFile(task);
+					}
+				});
+			}
+		}
+
+		/**
+		 * Start a thread.
+		 * @param name the name
+		 * @param stage the stage to run
+		 */
+		private void thread(final String name, final Stage stage) {
+			Thread t = new Thread(stage, "Import-" + name);
+			t.setDaemon(true);
+			threads.add(t);
+			t.start();
+		}
+
+		/**
+		 * End the files to read and wait all stages.
+		 */
+		void finish() {
+			boolean interrupted = false;
+			for (int i = 0; i < readers; i++) {
+				while (true) {
+					try {
+						read.put(END);
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			for (Thread t:threads) {
+				while (t.isAlive()) {
+					try {
+						t.join();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Record a failure, the stages drop the remaining files.
+		 * @param e the failure
+		 */
+		void fail(final Throwable e) {
+			failure.compareAndSet(null, e);
+		}
+
+		/**
+		 * Get the size of a file,
+		 * and read it into memory if it will be compressed.
+		 * @param task the file
+		 * @throws IOException if an I/O error occurs
+		 * @throws InterruptedException if interrupted
+		 */
+		void readFile(final Task task) throws IOException,
+				InterruptedException {
+			task.size = Files.size(task.path);
+			if (!task.isCompressed()) {
+				return;
+			}
+			task.held = (int) Math.min(permits,
+					(task.size + PERMIT - 1) / PERMIT);
+			memory.acquire(task.held);
+			task.data = Files.readAllBytes(task.path);
+			task.size = task.data.length;
+		}
+
+		/**
+		 * Hash a file, and compress it if it is not stored.
+		 * @param task the file
+		 * @throws IOException if an I/O error occurs
+		 */
+		void hashFile(final Task task) throws IOException {
+			if (Reporter.isDebug()) {
+				Reporter.debug("Create Blob for " + task.path);
+			}
+			if (task.data == null) {
+				task.checksum = SHA1Util.sha1Checksum(task.path);
+			} else {
+				task.checksum = SHA1Util.sha1Checksum(task.data);
+			}
+			if (Object.mayExist(task.checksum)
+					&& Object.isStored(task.checksum)) {
+				Metrics.DEDUPLICATED.increment();
+				Object.known(task.checksum);
+				done(task);
+				return;
+			}
+			if (task.data != null) {
+				task.data = CompressionUtil.compress(task.data);
+			}
+		}
+
+		/**
+		 * Write a blob, unless another thread has written it.
+		 * @param task the file
+		 * @throws IOException if an I/O error occurs
+		 */
+		void writeFile(final Task task) throws IOException {
+			Path out = Object.checksumToPath(task.checksum);
+			long start = Tracer.start();
+			synchronized (Object.writeLock(task.checksum)) {
+				Files.createDirectories(out.getParent());
+				boolean written;
+				if (task.data == null) {
+					written = AtomicWriter.copy(task.path, out);
+				} else {
+					written = AtomicWriter.write(out, task.data, false);
+				}
+				if (written) {
+					Metrics.WRITTEN.increment();
+				} else {
+					Metrics.DEDUPLICATED.increment();
+				}
+				Object.known(task.checksum);
+			}
+			Tracer.end(start, Tracer.WRITE, task.checksum, task.size);
+			done(task);
+		}
+
+		/**
+		 * Create the leaf of a stored file and free its memory.
+		 * @param task the file
+		 */
+		void done(final Task task) {
+			task.leaf = Leaf.of(Blob.of(task.checksum), task.isCompressed(),
+					task.size);
+			release(task);
+			if (meter != null) {
+				meter.add(1, task.size);
+			}
+		}
+
+		/**
+		 * Free the memory of a file.
+		 * @param task the file
+		 */
+		void release(final Task task) {
+			task.data = null;
+			if (task.held > 0) {
+				memory.release(task.held);
+				task.held = 0;
+			}
+		}
+
+		/**
+		 * One thread of a stage.
+		 */
+		private abstract class Stage implements Runnable {
+
+			/** the queue to take. */
+			private final BlockingQueue<Task> in;
+
+			/** the queue to put, null for the last stage. */
+			private final BlockingQueue<Task> out;
+
+			/** the number of threads of this stage still running. */
+			private final AtomicInteger left;
+
+			/** the number of threads of the next stage. */
+			private final int next;
+
+			/**
+			 * Constructor.
+			 * @param inIn the queue to take
+			 * @param inOut the queue to put, null for the last stage
+			 * @param inLeft the threads of this stage still running
+			 * @param inNext the number of threads of the next stage
+			 */
+			Stage(final BlockingQueue<Task> inIn,
+					final BlockingQueue<Task> inOut,
+					final AtomicInteger inLeft, final int inNext) {
+				in = inIn;
+				out = inOut;
+				left = inLeft;
+				next = inNext;
+			}
+
+			/**
+			 * Process a file.
+			 * @param task the file
+			 * @throws IOException if an I/O error occurs
+			 * @throws InterruptedException if interrupted
+			 */
+			abstract void process(Task task) throws IOException,
+					InterruptedException;
+
+			@Override
+			public void run() {
+				Reporter.setThreadSink(sink);
+				try {
+					while (true) {
+						Task task = in.take();
+						if (task == END) {
+							break;
+						}
+						if (failure.get() == null) {
+							try {
+								process(task);
+							} catch (IOException | RuntimeException e) {
+								fail(e);
+							}
+						}
+						if (failure.get() != null) {
+							release(task);
+						} else if (out != null && task.leaf == null) {
+							out.put(task);
+						}
+					}
+				} catch (InterruptedException e) {
+					fail(e);
+				} finally {
+					if (left.decrementAndGet() == 0 && out != null) {
+						for (int i = 0; i < next; i++) {
+							putEnd();
+						}
+					}
+					Reporter.setThreadSink(null);
+				}
+			}
+
+			/**
+			 * Put the end marker to the next stage.
+			 */
+			private void putEnd() {
+				while (true) {
+					try {
+						out.put(END);
+						return;
+					} catch (InterruptedException e) {
+						fail(e);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package xlong.file.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import xlong.util.SHA1Util;
+
+/**
+ * JUnit test class for PipelinedImport class.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class PipelinedImportTest {
+
+	/**
+	 * Create test directory and files before test.
+	 * Create a test directory data/test/
+	 * If the directory already exist, the test will fail.
+	 * Set objectDir of Object Class to data/test/object
+	 */
+	@BeforeClass
+	public static final void before() {
+		System.out.println("Preparing test file...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			fail("The test directory already exist."
+				+ "Please delete the directory \"data/test\" and retry.");
+		} else {
+			try {
+				Files.createDirectories(dir);
+			} catch (IOException e) {
+				fail("Can't create the test directory.");
+				e.printStackTrace();
+			}
+		}
+		Object.setObjectDir("data/test/object");
+	}
+	
+	/**
+	 * Delete test directory and all files in it.
+	 */
+	@AfterClass
+	public static final void after() {
+		System.out.println("Deleting test files...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			if (!deleteFile(dir.toFile())) {
+				fail("Can't delete test files.");
+			}
+		} 
+		System.out.println("Finish.");
+	}
+	
+	/**
+	 * Delete a file or directory.
+	 * @param file the file to delete
+	 * @return success or not
+	 */
+	private static boolean deleteFile(final File file) {
+		if (file.exists()) {
+			if (file.isFile()) {
+				return file.delete();
+			} else if (file.isDirectory()) {
+				boolean flag = true;
+				File[] files = file.listFiles();
+				for (int i = 0; i < files.length; i++) {
+					flag &= deleteFile(files[i]);
+				}
+				flag &= file.delete();
+				return flag;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Test the tree is the same as the one created by Tree.create.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testImport() throws IOException {
+		Path oriFile = Paths.get("src/xlong/file/object/TreeTest.java");
+		Path newFile = Paths.get("data/test/i/xlong/file/object/TreeTest.java");
+		Path oriPath = Paths.get("src");
+		Tree tree = new PipelinedImport(2, 3, 2, 4096).create(oriPath);
+		String checksum = tree.save();
+		assertTrue(new ParallelRestore().restore(
+				(Tree) Tree.load(checksum), Paths.get("data/test/i")));
+		assertEquals(SHA1Util.sha1Checksum(oriFile),
+				SHA1Util.sha1Checksum(newFile));
+		assertEquals(checksum, Tree.create(oriPath).save());
+		// import again, all blobs exist
+		assertEquals(checksum, new PipelinedImport().create(oriPath).save());
+		assertNull(new PipelinedImport().create(oriFile));
+	}
+}
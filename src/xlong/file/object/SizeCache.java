@@ -0,0 +1,261 @@
+package xlong.file.object;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import xlong.util.AtomicWriter;
+
+/**
+ * Sizes of the files of blobs, kept beside the objects.
+ * <p>
+ * The size is not part of a leaf, so leafs of the same file have the
+ * same checksum whether its size is known or not. The size of a blob
+ * only depends on its checksum, so a size cached once is always right.
+ * Sizes of blobs stored without compression are read from the object
+ * file when not cached.
+ * <p>
+ * The sizes are saved as a log of lines "checksum size", a size of -1
+ * forgets a blob. A save appends only the lines of sizes changed since
+ * the last one. The log is rewritten when most of its lines are out of
+ * date, or when it ends with a line cut short by a crash, which is
+ * ignored.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class SizeCache {
+
+	/** the sizes by blob checksum. */
+	private static final ConcurrentHashMap<String, Long> SIZES =
+			new ConcurrentHashMap<String, Long>();
+
+	/** the lines not saved yet. */
+	private static final ConcurrentLinkedQueue<String> CHANGES =
+			new ConcurrentLinkedQueue<String>();
+
+	/** the log is rewritten if it has more lines than this many per size. */
+	private static final int REWRITE_RATIO = 2;
+
+	/** the log is never rewritten if it has fewer lines than this. */
+	private static final int REWRITE_MIN = 1 << 16;
+
+	/** the charset of the log. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** the number of lines in the log. Guarded by the class. */
+	private static long lines = 0;
+
+	/** the log ends with a line cut short. Guarded by the class. */
+	private static boolean damaged = false;
+
+	/**
+	 * Private constructor to make sure no instance of this class will be
+	 * created.
+	 */
+	private SizeCache() {
+		// will not be called
+	}
+
+	/**
+	 * Record the size of a blob.
+	 * @param blobChecksum the checksum of the blob
+	 * @param size the size of the file, ignored if negative
+	 */
+	public static void put(final String blobChecksum, final long size) {
+		if (size >= 0) {
+			Long old = SIZES.put(blobChecksum, size);
+			if (old == null || old != size) {
+				CHANGES.add(blobChecksum + " " + size);
+			}
+		}
+	}
+
+	/**
+	 * Get the size of a blob.
+	 * @param blobChecksum the checksum of the blob
+	 * @param compressed the blob compressed or not
+	 * @return the size of the file, -1 if unknown
+	 */
+	public static long get(final String blobChecksum,
+			final boolean compressed) {
+		Long size = SIZES.get(blobChecksum);
+		if (size != null) {
+			return size;
+		}
+		if (compressed) {
+			return -1;
+		}
+		try {
+			long s = Files.size(Object.findPath(blobChecksum));
+			put(blobChecksum, s);
+			return s;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Forget the size of a deleted blob.
+	 * @param blobChecksum the checksum of the blob
+	 */
+	public static void remove(final String blobChecksum) {
+		if (SIZES.remove(blobChecksum) != null) {
+			CHANGES.add(blobChecksum + " -1");
+		}
+	}
+
+	/**
+	 * Forget all sizes.
+	 */
+	public static void clear() {
+		SIZES.clear();
+		CHANGES.clear();
+	}
+
+	/**
+	 * @return the number of sizes cached
+	 */
+	public static int size() {
+		return SIZES.size();
+	}
+
+	/**
+	 * Save the sizes to a log. The sizes changed since the last save are
+	 * appended, the log is rewritten if most of it is out of date.
+	 * Runs along with operations that add sizes.
+	 * @param path the log
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static synchronized void save(final Path path)
+			throws IOException {
+		List<String> changes = new ArrayList<String>();
+		String line;
+		while ((line = CHANGES.poll()) != null) {
+			changes.add(line);
+		}
+		boolean done = false;
+		try {
+			Files.createDirectories(path.getParent());
+			if (damaged || !Files.exists(path) || lines + changes.size()
+					> Math.max(REWRITE_MIN, (long) SIZES.size() * REWRITE_RATIO)) {
+				rewrite(path);
+			} else if (!changes.isEmpty()) {
+				StringBuilder sb = new StringBuilder();
+				for (String change:changes) {
+					sb.append(change).append('\n');
+				}
+				try (OutputStream out = Files.newOutputStream(path,
+						StandardOpenOption.APPEND)) {
+					out.write(sb.toString().getBytes(UTF8));
+				}
+				lines += changes.size();
+			}
+			done = true;
+		} finally {
+			if (!done) {
+				// saved next time
+				CHANGES.addAll(changes);
+			}
+		}
+	}
+
+	/**
+	 * Rewrite the log with the sizes cached. The log is replaced
+	 * atomically.
+	 * @param path the log
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void rewrite(final Path path) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		long n = 0;
+		for (Entry<String, Long> en:SIZES.entrySet()) {
+			sb.append(en.getKey()).append(' ').append(en.getValue())
+				.append('\n');
+			n++;
+		}
+		AtomicWriter.write(path, sb.toString().getBytes(UTF8), true);
+		lines = n;
+		damaged = false;
+	}
+
+	/**
+	 * Load the sizes from a log, replace the sizes cached.
+	 * Nothing is cached if the log does not exist.
+	 * @param path the log
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static synchronized void load(final Path path)
+			throws IOException {
+		SIZES.clear();
+		CHANGES.clear();
+		lines = 0;
+		damaged = false;
+		if (!Files.exists(path)) {
+			return;
+		}
+		damaged = !endsWithNewLine(path);
+		try (BufferedReader in = Files.newBufferedReader(path, UTF8)) {
+			String line = in.readLine();
+			while (line != null) {
+				String next = in.readLine();
+				lines++;
+				if (next != null || !damaged) {
+					read(line);
+				}
+				line = next;
+			}
+		}
+	}
+
+	/**
+	 * Read a line of the log.
+	 * @param line the line
+	 */
+	private static void read(final String line) {
+		int space = line.indexOf(' ');
+		if (space <= 0) {
+			return;
+		}
+		long size;
+		try {
+			size = Long.parseLong(line.substring(space + 1));
+		} catch (NumberFormatException e) {
+			return;
+		}
+		String checksum = line.substring(0, space);
+		if (size < 0) {
+			SIZES.remove(checksum);
+		} else {
+			SIZES.put(checksum, size);
+		}
+	}
+
+	/**
+	 * Whether a file is empty or ends with a new line.
+	 * @param path the file
+	 * @return ends with a new line or not
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static boolean endsWithNewLine(final Path path)
+			throws IOException {
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (ch.size() == 0) {
+				return true;
+			}
+			ByteBuffer last = ByteBuffer.allocate(1);
+			ch.read(last, ch.size() - 1);
+			return last.get(0) == '\n';
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package xlong.file.object;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * JUnit test class for SizeCache class.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class SizeCacheTest {
+
+	/** the charset of the log. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Test only changed sizes are appended, and a line cut short is
+	 * ignored.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testLog() throws IOException {
+		Path dir = Files.createTempDirectory("sizes");
+		Path log = dir.resolve("sizes.log");
+		try {
+			SizeCache.load(log);
+			SizeCache.put("a", 1);
+			SizeCache.put("b", 2);
+			SizeCache.save(log);
+			assertEquals(2, lines(log));
+			SizeCache.put("a", 1);
+			SizeCache.put("c", 3);
+			SizeCache.remove("b");
+			SizeCache.save(log);
+			assertEquals(4, lines(log));
+			SizeCache.save(log);
+			assertEquals(4, lines(log));
+
+			Files.write(log, "d 4".getBytes(UTF8), StandardOpenOption.APPEND);
+			SizeCache.load(log);
+			assertEquals(2, SizeCache.size());
+			assertEquals(1, SizeCache.get("a", true));
+			assertEquals(-1, SizeCache.get("b", true));
+			assertEquals(-1, SizeCache.get("d", true));
+			// the damaged log is rewritten
+			SizeCache.save(log);
+			assertEquals(2, lines(log));
+		} finally {
+			SizeCache.clear();
+			Files.deleteIfExists(log);
+			Files.delete(dir);
+		}
+	}
+
+	/**
+	 * @param log the log
+	 * @return the number of lines
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static int lines(final Path log) throws IOException {
+		List<String> lines = Files.readAllLines(log, UTF8);
+		return lines.size();
+	}
+}
@@ -0,0 +1,149 @@
+package xlong.file.object;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import xlong.util.CompressionUtil;
+
+/**
+ * Size, modified time and checksum of the files of a directory
+ * restored to, so a file not touched since it was restored or checked
+ * is known without reading it.
+ * <p>
+ * Files are named by their path in the directory. The cache is saved
+ * as compressed lines "size modified checksum name".
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class StatCache {
+
+	/**
+	 * What is known of a file.
+	 */
+	private static final class Stat {
+
+		/** the size. */
+		private final long size;
+
+		/** the modified time in nanoseconds. */
+		private final long modified;
+
+		/** the checksum of the blob. */
+		private final String checksum;
+
+		/**
+		 * Constructor.
+		 * @param inSize the size
+		 * @param inModified the modified time in nanoseconds
+		 * @param inChecksum the checksum of the blob
+		 */
+		Stat(final long inSize, final long inModified,
+				final String inChecksum) {
+			size = inSize;
+			modified = inModified;
+			checksum = inChecksum;
+		}
+	}
+
+	/** the charset of the file. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** the files by name. */
+	private final ConcurrentHashMap<String, Stat> stats =
+			new ConcurrentHashMap<String, Stat>();
+
+	/**
+	 * Whether a file is known with the given size, modified time and
+	 * checksum.
+	 * @param name the path of the file in the directory
+	 * @param size the size
+	 * @param modified the modified time in nanoseconds
+	 * @param checksum the checksum of the blob
+	 * @return known or not
+	 */
+	public boolean matches(final String name, final long size,
+			final long modified, final String checksum) {
+		Stat s = stats.get(name);
+		return s != null && s.size == size && s.modified == modified
+				&& s.checksum.equals(checksum);
+	}
+
+	/**
+	 * Record a file.
+	 * @param name the path of the file in the directory
+	 * @param size the size
+	 * @param modified the modified time in nanoseconds
+	 * @param checksum the checksum of the blob
+	 */
+	public void put(final String name, final long size,
+			final long modified, final String checksum) {
+		stats.put(name, new Stat(size, modified, checksum));
+	}
+
+	/**
+	 * @return the number of files known
+	 */
+	public int size() {
+		return stats.size();
+	}
+
+	/**
+	 * Save the cache to a file. The file is replaced.
+	 * @param path the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void save(final Path path) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (Entry<String, Stat> en:stats.entrySet()) {
+			Stat s = en.getValue();
+			sb.append(s.size).append(' ').append(s.modified).append(' ')
+				.append(s.checksum).append(' ').append(en.getKey())
+				.append('\n');
+		}
+		Files.createDirectories(path.getParent());
+		CompressionUtil.compressByteArray(sb.toString().getBytes(UTF8),
+				path, true);
+	}
+
+	/**
+	 * Load a cache from a file.
+	 * The cache is empty if the file does not exist.
+	 * @param path the file
+	 * @return the cache
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static StatCache load(final Path path) throws IOException {
+		StatCache cache = new StatCache();
+		if (!Files.exists(path)) {
+			return cache;
+		}
+		byte[] bytesArray = CompressionUtil.decompressToByteArray(path);
+		if (bytesArray == null) {
+			throw new IOException("Can't decompress " + path);
+		}
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+				new ByteArrayInputStream(bytesArray), UTF8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] parts = line.split(" ", 4);
+				if (parts.length < 4) {
+					continue;
+				}
+				try {
+					cache.put(parts[3], Long.parseLong(parts[0]),
+							Long.parseLong(parts[1]), parts[2]);
+				} catch (NumberFormatException e) {
+					// skip a damaged line
+				}
+			}
+		}
+		return cache;
+	}
+}
@@ -1,12 +1,17 @@
 package xlong.file.object;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import xlong.util.Reporter;
+import xlong.util.Tracer;
 
 /**
  * A tree object contains a map of nicknames to tree checksum
@@ -32,44 +37,118 @@ public final class Tree extends Container {
 	/** for indent. */
 	private static final String INDENT = "    ";
 	
-	/** the map of leaf nicknames to leaf checksums. */
+	/** 
+	 * the map of leaf nicknames to leaf checksums.
+	 * Only set when save, kept in leafs otherwise.
+	 */
 	private TreeMap<String, String> leafChecksums;
 	
-	/** the map of tree nicknames to tree checksums. */
+	/** 
+	 * the map of tree nicknames to tree checksums.
+	 * Only set when save, kept in trees otherwise.
+	 */
 	private TreeMap<String, String> treeChecksums;
 	
-	/** the map of leaf nicknames to leaf objects. */
-	private transient TreeMap<Path, Leaf> leafs;
-	/** the map of tree nicknames to tree objects. */
-	private transient TreeMap<Path, Tree> trees;
+	/** the leaf nicknames, checksums and objects. */
+	private transient ChildTable<Leaf> leafs;
+	/** the tree nicknames, checksums and objects. */
+	private transient ChildTable<Tree> trees;
 	
 	/**
 	 * Default constructor. Initialize maps.
 	 */
 	private Tree() {
-		leafChecksums = new TreeMap<>();
-		treeChecksums = new TreeMap<>();
-		leafs = new TreeMap<>();
-		trees = new TreeMap<>();
+		leafs = new ChildTable<>();
+		trees = new ChildTable<>();
 		setType(Object.TREE);
 	}	
 	
 	/**
-	 * Get leafs map.
+	 * Copy constructor. Copy the maps of the given tree,
+	 * the sons are shared.
+	 * @param tree the tree to copy
+	 */
+	private Tree(final Tree tree) {
+		leafs = new ChildTable<>(tree.leafs);
+		trees = new ChildTable<>(tree.trees);
+		setType(Object.TREE);
+	}
+	
+	/**
+	 * Create an empty tree.
+	 * @return the tree
+	 */
+	public static Tree empty() {
+		return new Tree();
+	}
+	
+	/**
+	 * Get leafs map, sorted by nickname.
 	 * @return leafs map
 	 */
-	public TreeMap<Path, Leaf> getLeafs() {
+	public Map<String, Leaf> getLeafs() {
 		return leafs;
 	}
 	
 	/**
-	 * Get trees map.
+	 * Get trees map, sorted by nickname.
 	 * @return trees map
 	 */
-	public TreeMap<Path, Tree> getTrees() {
+	public Map<String, Tree> getTrees() {
 		return trees;
 	}
 	
+	/**
+	 * Get the map of leaf nicknames to leaf checksums, sorted by nickname.
+	 * Only available after save or load.
+	 * @return leaf checksums map, read only
+	 */
+	public Map<String, String> getLeafChecksums() {
+		return leafs.checksumView();
+	}
+	
+	/**
+	 * Get the map of tree nicknames to tree checksums, sorted by nickname.
+	 * Only available after save or load.
+	 * @return tree checksums map, read only
+	 */
+	public Map<String, String> getTreeChecksums() {
+		return trees.checksumView();
+	}
+	
+	/**
+	 * Split a nickname path into nicknames.
+	 * Empty names are skipped.
+	 * @param path the nickname path
+	 * @return the nicknames
+	 */
+	public static String[] names(final Path path) {
+		String separator = path.getFileSystem().getSeparator();
+		String[] parts = path.toString().split(Pattern.quote(separator));
+		int count = 0;
+		for (String part:parts) {
+			if (!part.isEmpty()) {
+				parts[count++] = part;
+			}
+		}
+		if (count == parts.length) {
+			return parts;
+		}
+		String[] names = new String[count];
+		System.arraycopy(parts, 0, names, 0, count);
+		return names;
+	}
+	
+	/**
+	 * Get the shared instance of a nickname.
+	 * The same nickname in different trees uses the same string.
+	 * @param nick the nickname
+	 * @return the shared instance
+	 */
+	static String name(final String nick) {
+		return nick.intern();
+	}
+	
 	/**
 	 * Get the object with give nickname path.
 	 * If exist both tree and leaf, return leaf.
@@ -78,21 +157,33 @@ public final class Tree extends Container {
 	 * @return the backup object
 	 */
 	public Container get(final Path path) {
-		if (path.getNameCount() == 1) {
-			if (leafs.containsKey(path)) {
-				return leafs.get(path);
-			}
-			if (trees.containsKey(path)) {
-				return trees.get(path);
+		return get(names(path));
+	}
+	
+	/**
+	 * Get the object with give nicknames.
+	 * If exist both tree and leaf, return leaf.
+	 * If not exist return null. If no nickname given, return this tree.
+	 * @param names the nicknames from this tree to the object.
+	 * @return the backup object
+	 */
+	public Container get(final String... names) {
+		if (names.length == 0) {
+			return this;
+		}
+		Tree tree = this;
+		int last = names.length - 1;
+		for (int i = 0; i < last; i++) {
+			tree = tree.trees.get(names[i]);
+			if (tree == null) {
+				return null;
 			}
-			return null;
 		}
-		Path first = path.getName(0);
-		if (trees.containsKey(first)) {
-			return trees.get(first).
-					get(first.relativize(path));
+		Leaf leaf = tree.leafs.get(names[last]);
+		if (leaf != null) {
+			return leaf;
 		}
-		return null;
+		return tree.trees.get(names[last]);
 	}
 	
 	/**
@@ -104,138 +195,220 @@ public final class Tree extends Container {
 	 */
 	public static Tree create(final Path dirPath) 
 			throws IOException {
-		System.out.println("Create Tree for " + dirPath);
+		if (Reporter.isDebug()) {
+			Reporter.debug("Create Tree for " + dirPath);
+		}
 		Tree tree = null;
 		if (Files.isDirectory(dirPath)) {
-			tree = new Tree();
+			TreeMap<String, Leaf> newLeafs = new TreeMap<>();
+			TreeMap<String, Tree> newTrees = new TreeMap<>();
 			DirectoryStream<Path> paths = Files.newDirectoryStream(dirPath);
 			for (Path p:paths) {
+				String nick = name(p.getFileName().toString());
 				if (Files.isDirectory(p)) {
 					Tree subtree = Tree.create(p);
-					tree.add(subtree, dirPath.relativize(p));
+					newTrees.put(nick, subtree);
 				} else {
 					Leaf leaf = Leaf.create(p);
-					tree.add(leaf, dirPath.relativize(p));
+					newLeafs.put(nick, leaf);
 				}
             }
+			tree = of(newLeafs, newTrees);
 		}
 		return tree;
 	}
 	
 	/**
-	 * Add a new leaf to this tree.
-	 * If the path already exist, fail.
-	 * 
-	 * @param leaf the leaf to add
-	 * @param path the nickname path of the leaf to add, can be a path.
-	 * @return totally success or not
+	 * Create a tree of given sons.
+	 * @param newLeafs the leafs, by nickname
+	 * @param newTrees the trees, by nickname
+	 * @return the tree
 	 */
-	private boolean add(final Leaf leaf, final Path path) {
-		boolean flag = true;
-		if (path.getNameCount() == 1) {
-			if (leafs.containsKey(path)) {
-				flag = false;
-			} else {
-				leafs.put(path, leaf);
-			}	
-		} else {
-			Path first = path.getName(0);
-			if (!trees.containsKey(first)) {
-				add(new Tree(), first);
-			}
-			if (!trees.get(first).add(leaf, first.relativize(path))) {
-				flag = false;
-			}
-		}
-		return flag;
+	static Tree of(final TreeMap<String, Leaf> newLeafs,
+			final TreeMap<String, Tree> newTrees) {
+		Tree tree = new Tree();
+		tree.leafs = ChildTable.ofObjects(newLeafs);
+		tree.trees = ChildTable.ofObjects(newTrees);
+		return tree;
 	}
 	
 	/**
-	 * Add a new tree to this tree.
-	 * If the path already exist, fail.
-	 * 
-	 * @param tree the tree to add
-	 * @param path the nickname path of the tree to add, can be a path.
+	 * Delete a leaf.
+	 * @param path the nickname path of the leaf to delete, can be a path.
 	 * @return success or not
 	 */
-	private boolean add(final Tree tree, final Path path) {
-		boolean flag = true;
-		if (path.getNameCount() == 1) {
-			if (trees.containsKey(path)) {
-				flag = false;
-			} else {
-				trees.put(path, tree);
-			}
-		} else {
-			Path first = path.getName(0);
-			if (!trees.containsKey(first)) {
-				add(new Tree(), first);
-			}
-			if (!trees.get(first).add(tree, first.relativize(path))) {
-				flag = false;
-			}	
-		}
-		return flag;
+	public boolean deleteLeaf(final Path path) {
+		return delete(names(path), 0, Object.LEAF);
 	}
 	
 	/**
-	 * Delete a leaf.
-	 * @param path the nickname path of the leaf to delete, can be a path.
+	 * Delete a tree.
+	 * @param path the nickname path of the tree to delete, can be a path.
 	 * @return success or not
 	 */
-	public boolean deleteLeaf(final Path path) {
-		if (path.getNameCount() == 1) {
-			if (leafs.containsKey(path)) {
-				leafs.remove(path);
+	public boolean deleteTree(final Path path) {
+		return delete(names(path), 0, Object.TREE);
+	}
+	
+	/**
+	 * Delete a leaf or a tree.
+	 * @param names the nicknames of the object to delete
+	 * @param from the index of the nickname in this tree
+	 * @param type Object.LEAF or Object.TREE
+	 * @return success or not
+	 */
+	private boolean delete(final String[] names, final int from, 
+			final int type) {
+		if (from >= names.length) {
+			return false;
+		}
+		String nick = names[from];
+		if (from == names.length - 1) {
+			ChildTable<?> map = type == Object.LEAF ? leafs : trees;
+			if (map.remove(nick) != null) {
+				markDirty();
 				return true;
 			}
 			return false;
 		}
-		Path first = path.getName(0);
-		if (trees.containsKey(first)) {
-			return trees.get(first).
-					deleteLeaf(first.relativize(path));
+		Tree tree = trees.get(nick);
+		if (tree != null && tree.delete(names, from + 1, type)) {
+			markDirty();
+			return true;
 		}
 		return false;
 	}
 	
 	/**
-	 * Delete a tree.
-	 * @param path the nickname path of the tree to delete, can be a path.
-	 * @return success or not
+	 * Get a new tree with the leaf at the given path.
+	 * An existing leaf at the path is replaced.
+	 * Missing trees on the path are created.
+	 * <p>
+	 * This tree is not changed. Only trees on the path are copied,
+	 * all other objects are shared with this tree, so saving the new tree
+	 * only saves the copied trees.
+	 * This tree must be loaded or created, not loaded shallowly.
+	 * 
+	 * @param path the nickname path of the leaf, can be a path.
+	 * @param leaf the leaf
+	 * @return the new tree
 	 */
-	public boolean deleteTree(final Path path) {
-		if (path.getNameCount() == 1) {
-			if (trees.containsKey(path)) {
-				trees.remove(path);
-				return true;
+	public Tree withLeaf(final Path path, final Leaf leaf) {
+		return with(names(path), 0, leaf);
+	}
+	
+	/**
+	 * Get a new tree with the tree at the given path.
+	 * An existing tree at the path is replaced.
+	 * Missing trees on the path are created.
+	 * <p>
+	 * This tree is not changed, see {@link #withLeaf(Path, Leaf)}.
+	 * 
+	 * @param path the nickname path of the tree, can be a path.
+	 * @param tree the tree
+	 * @return the new tree
+	 */
+	public Tree withTree(final Path path, final Tree tree) {
+		return with(names(path), 0, tree);
+	}
+	
+	/**
+	 * Get a new tree with the leaf or tree at the given nicknames.
+	 * @param names the nicknames of the object
+	 * @param from the index of the nickname in this tree
+	 * @param con the leaf or tree
+	 * @return the new tree
+	 */
+	private Tree with(final String[] names, final int from, 
+			final Container con) {
+		if (from >= names.length) {
+			throw new IllegalArgumentException("Empty path");
+		}
+		Tree copy = new Tree(this);
+		String nick = name(names[from]);
+		if (from < names.length - 1) {
+			Tree tree = trees.get(nick);
+			if (tree == null) {
+				tree = new Tree();
 			}
-			return false;
+			copy.trees.put(nick, tree.with(names, from + 1, con));
+		} else if (con instanceof Leaf) {
+			copy.leafs.put(nick, (Leaf) con);
+		} else {
+			copy.trees.put(nick, (Tree) con);
 		}
-		Path first = path.getName(0);
-		if (trees.containsKey(first)) {
-			return trees.get(first).
-					deleteTree(first.relativize(path));
+		return copy;
+	}
+	
+	/**
+	 * Get a new tree without the object at the given path.
+	 * If exist both tree and leaf, the leaf is removed.
+	 * If not exist, return this tree.
+	 * <p>
+	 * This tree is not changed, see {@link #withLeaf(Path, Leaf)}.
+	 * 
+	 * @param path the nickname path of the object, can be a path.
+	 * @return the new tree
+	 */
+	public Tree without(final Path path) {
+		return without(names(path), 0);
+	}
+	
+	/**
+	 * Get a new tree without the object at the given nicknames.
+	 * @param names the nicknames of the object
+	 * @param from the index of the nickname in this tree
+	 * @return the new tree, or this tree if not exist
+	 */
+	private Tree without(final String[] names, final int from) {
+		if (from >= names.length) {
+			return this;
 		}
-		return false;
+		String nick = names[from];
+		if (from == names.length - 1) {
+			if (leafs.containsKey(nick)) {
+				Tree copy = new Tree(this);
+				copy.leafs.remove(nick);
+				return copy;
+			}
+			if (trees.containsKey(nick)) {
+				Tree copy = new Tree(this);
+				copy.trees.remove(nick);
+				return copy;
+			}
+			return this;
+		}
+		Tree subtree = trees.get(nick);
+		if (subtree == null) {
+			return this;
+		}
+		Tree newSubtree = subtree.without(names, from + 1);
+		if (newSubtree == subtree) {
+			return this;
+		}
+		Tree copy = new Tree(this);
+		copy.trees.put(nick, newSubtree);
+		return copy;
 	}
 	
 	@Override
 	public boolean restore(final Path outFileDir) 
 			throws IOException {
-		System.out.println("Restore Tree to " + outFileDir);
+		if (Reporter.isDebug()) {
+			Reporter.debug("Restore Tree to " + outFileDir);
+		}
 		boolean flag = true;
 		Files.createDirectories(outFileDir);
-		for (Entry<Path, Leaf> en:leafs.entrySet()) {
+		for (Entry<String, Leaf> en:leafs.entrySet()) {
 			Leaf leaf = en.getValue();
-			Path nick = en.getKey();
+			String nick = en.getKey();
 			if (!leaf.restore(outFileDir.resolve(nick))) {
 				flag = false;
 			}
 		}
-		for (Entry<Path, Tree> en:trees.entrySet()) {
+		for (Entry<String, Tree> en:trees.entrySet()) {
 			Tree tree = en.getValue();
-			Path nick = en.getKey();
+			String nick = en.getKey();
 			if (!tree.restore(outFileDir.resolve(nick))) {
 				flag = false;
 			}
@@ -252,23 +425,201 @@ public final class Tree extends Container {
 		return "Tree " + getChecksum() + "\n";
 	}	
 	
+	/**
+	 * Visitor of objects in a tree.
+	 */
+	public interface Visitor {
+		/**
+		 * Called for each leaf and tree.
+		 * The leafs of a tree are visited before its trees,
+		 * both in nickname order.
+		 * @param path the nickname path from the walked tree,
+		 * separated by "/"
+		 * @param type Object.LEAF or Object.TREE
+		 * @param checksum the checksum, null if not saved
+		 * @param depth the depth, 1 for sons of the walked tree
+		 * @return for a tree, walk into it or not
+		 * @throws IOException if an I/O error occurs
+		 */
+		boolean visit(String path, int type, String checksum, int depth)
+				throws IOException;
+
+		/**
+		 * Called after all objects in a tree walked into are visited.
+		 * @param path the nickname path of the tree
+		 * @param checksum the checksum, null if not saved
+		 * @param depth the depth of the tree
+		 * @throws IOException if an I/O error occurs
+		 */
+		void leave(String path, String checksum, int depth)
+				throws IOException;
+	}
+	
+	/**
+	 * Walk all objects in this tree.
+	 * Subtrees not loaded are loaded shallowly when walked into,
+	 * and are not kept, so a tree loaded shallowly can be walked
+	 * with memory proportional to its depth.
+	 * @param visitor the visitor
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void walk(final Visitor visitor) throws IOException {
+		walk(visitor, "", 1);
+	}
+	
+	/**
+	 * Walk all objects in this tree.
+	 * @param visitor the visitor
+	 * @param path the nickname path of this tree
+	 * @param depth the depth of sons of this tree
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void walk(final Visitor visitor, final String path, 
+			final int depth) throws IOException {
+		for (int i = 0; i < leafs.size(); i++) {
+			visitor.visit(resolve(path, leafs.nameAt(i)), Object.LEAF, 
+					checksumAt(leafs, i), depth);
+		}
+		for (int i = 0; i < trees.size(); i++) {
+			String p = resolve(path, trees.nameAt(i));
+			String checksum = checksumAt(trees, i);
+			if (!visitor.visit(p, Object.TREE, checksum, depth)) {
+				continue;
+			}
+			Tree tree = trees.objectAt(i);
+			if (tree == null) {
+				Container con = Container.loadShallow(checksum);
+				if (!(con instanceof Tree)) {
+					throw new IOException("Can't load tree " + checksum);
+				}
+				tree = (Tree) con;
+			}
+			tree.walk(visitor, p, depth + 1);
+			visitor.leave(p, checksum, depth);
+		}
+	}
+	
+	/**
+	 * Get the checksum of a son, null if not saved.
+	 * @param table the sons
+	 * @param index the index of the son
+	 * @return the checksum
+	 */
+	private static String checksumAt(final ChildTable<?> table, 
+			final int index) {
+		String checksum = table.checksumAt(index);
+		if (checksum == null) {
+			Container con = table.objectAt(index);
+			if (con != null && !con.isDirty()) {
+				checksum = con.getChecksum();
+			}
+		}
+		return checksum;
+	}
+	
+	/**
+	 * Resolve a nickname against a nickname path.
+	 * @param path the path
+	 * @param nick the nickname
+	 * @return the resolved path
+	 */
+	private static String resolve(final String path, final String nick) {
+		if (path.isEmpty()) {
+			return nick;
+		}
+		return path + "/" + nick;
+	}
+	
+	/**
+	 * Visitor writes objects and their names, 
+	 * trees walked into are followed by their objects in braces.
+	 */
+	private static final class Lister implements Visitor {
+		
+		/** the output. */
+		private final Appendable out;
+		
+		/** the depth of the walked tree. */
+		private final int indent;
+		
+		/** the maximum depth to walk into, negative for all. */
+		private final int maxDepth;
+		
+		/**
+		 * Constructor.
+		 * @param inOut the output
+		 * @param inIndent the depth of the walked tree
+		 * @param inMaxDepth the maximum depth to walk into, 
+		 * negative for all
+		 */
+		Lister(final Appendable inOut, final int inIndent, 
+				final int inMaxDepth) {
+			out = inOut;
+			indent = inIndent;
+			maxDepth = inMaxDepth;
+		}
+		
+		/**
+		 * Write the indent.
+		 * @param depth the depth
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void indent(final int depth) throws IOException {
+			for (int i = 1; i < indent + depth; i++) {
+				out.append(INDENT);
+			}
+		}
+
+		@Override
+		public boolean visit(final String path, final int type, 
+				final String checksum, final int depth) throws IOException {
+			indent(depth);
+			out.append(path, path.lastIndexOf('/') + 1, path.length())
+				.append(type == Object.LEAF ? ": Leaf " : ": Tree ")
+				.append(checksum).append('\n');
+			if (type == Object.TREE && (maxDepth < 0 || depth < maxDepth)) {
+				indent(depth);
+				out.append("{\n");
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void leave(final String path, final String checksum, 
+				final int depth) throws IOException {
+			indent(depth);
+			out.append("}\n");
+		}
+	}
+	
+	/**
+	 * Get the indent of a depth.
+	 * @param depth the depth
+	 * @return the indent
+	 */
+	private static String indent(final int depth) {
+		StringBuilder dp = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			dp.append(INDENT);
+		}
+		return dp.toString();
+	}
+	
 	/**
 	 * Get the string representation of leafs and their names.
 	 * @param depth the depth of the leaf
 	 * @return the string contains leafs and their names
 	 */
 	public String listLeafs(final int depth) {
-		String s = "";
-		String dp = "";
-		for (int i = 0; i < depth; i++) {
-			dp += INDENT;
-		}
-		for (Entry<Path, Leaf> en:leafs.entrySet()) {
+		StringBuilder s = new StringBuilder();
+		String dp = indent(depth);
+		for (Entry<String, Leaf> en:leafs.entrySet()) {
 			Leaf leaf = en.getValue();
-			Path nick = en.getKey();
-			s += dp + nick + ": " + leaf.toString();
+			String nick = en.getKey();
+			s.append(dp).append(nick).append(": ").append(leaf.toString());
 		}
-		return s;
+		return s.toString();
 	}
 	
 	/**
@@ -285,17 +636,14 @@ public final class Tree extends Container {
 	 * @return the string contains trees and their names
 	 */
 	public String listTrees(final int depth) {
-		String s = "";
-		String dp = "";
-		for (int i = 0; i < depth; i++) {
-			dp += INDENT;
-		}
-		for (Entry<Path, Tree> en:trees.entrySet()) {
+		StringBuilder s = new StringBuilder();
+		String dp = indent(depth);
+		for (Entry<String, Tree> en:trees.entrySet()) {
 			Tree tree = en.getValue();
-			Path nick = en.getKey();
-			s += dp + nick + ": " + tree.toString();
+			String nick = en.getKey();
+			s.append(dp).append(nick).append(": ").append(tree.toString());
 		}
-		return s;
+		return s.toString();
 	}
 
 	/**
@@ -329,20 +677,13 @@ public final class Tree extends Container {
 	 * @return the String contains leafs and leafs in subtrees and their names
 	 */	
 	public String listAll(final int depth) {
-		String s = listLeafs(depth);
-		String dp = "";
-		for (int i = 0; i < depth; i++) {
-			dp += INDENT;
+		StringBuilder s = new StringBuilder();
+		try {
+			walk(new Lister(s, depth, -1));
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		for (Entry<Path, Tree> en:trees.entrySet()) {
-			Tree tree = en.getValue();
-			Path nick = en.getKey();
-			s += dp + nick + ": " + tree.toString();
-			s += dp + "{\n";
-			s += tree.listAll(depth + 1);
-			s += dp + "}\n";
-		}		
-		return s;
+		return s.toString();
 	}
 	
 	/**
@@ -350,40 +691,69 @@ public final class Tree extends Container {
 	 * @return the String contains leafs and leafs in subtrees and their names
 	 */	
 	public String listAll() {
-		String s = toString();
-		s += "{\n";
-		s += listAll(1);
-		s += "}\n";
-		return s;
+		StringBuilder s = new StringBuilder();
+		try {
+			listAll(s, -1);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return s.toString();
+	}
+	
+	/**
+	 * Write this tree, leafs and leafs in subtrees and their names.
+	 * Nothing is kept in memory, see {@link #walk(Visitor)}.
+	 * @param out the output
+	 * @param maxDepth the maximum depth of subtrees to write their objects,
+	 * 0 for only this tree, negative for all
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void listAll(final Appendable out, final int maxDepth) 
+			throws IOException {
+		out.append(toString());
+		if (maxDepth == 0) {
+			return;
+		}
+		out.append("{\n");
+		walk(new Lister(out, 1, maxDepth));
+		out.append("}\n");
 	}
 
 	@Override
 	public boolean recover() {
-		trees = new TreeMap<>();
-		for (Entry<String, String> en:treeChecksums.entrySet()) {
-			String checksum = en.getValue();
-			String nick = en.getKey();
+		long start = Tracer.start();
+		boolean flag = recoverSons();
+		Tracer.end(start, Tracer.RECOVER, getChecksum(),
+				leafs.size() + trees.size());
+		return flag;
+	}
+
+	/**
+	 * Load all sons.
+	 * @return success or not
+	 */
+	private boolean recoverSons() {
+		for (int i = 0; i < trees.size(); i++) {
+			String checksum = trees.checksumAt(i);
 			try {
 				Tree tree = (Tree) Tree.load(checksum);
 				if (tree == null) {
 					return false;
 				}
-				trees.put(Paths.get(nick), tree);
+				trees.setObjectAt(i, tree);
 			} catch (IOException e) {
 				e.printStackTrace();
 				return false;
 			}
 		}
-		leafs = new TreeMap<>();
-		for (Entry<String, String> en:leafChecksums.entrySet()) {
-			String checksum = en.getValue();
-			String nick = en.getKey();
+		for (int i = 0; i < leafs.size(); i++) {
+			String checksum = leafs.checksumAt(i);
 			try {
 				Leaf leaf = (Leaf) Leaf.load(checksum);
 				if (leaf == null) {
 					return false;
 				}
-				leafs.put(Paths.get(nick), leaf);
+				leafs.setObjectAt(i, leaf);
 			} catch (IOException e) {
 				e.printStackTrace();
 				return false;
@@ -392,21 +762,47 @@ public final class Tree extends Container {
 		return true;
 	}
 
+	/**
+	 * Set the type after deserialization,
+	 * the constructor is not called when load.
+	 * Move the checksums into the tables.
+	 * @param in the input stream
+	 * @throws IOException if an I/O error occurs
+	 * @throws ClassNotFoundException if a class cannot be found
+	 */
+	private void readObject(final ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		setType(Object.TREE);
+		leafs = ChildTable.ofChecksums(leafChecksums);
+		trees = ChildTable.ofChecksums(treeChecksums);
+		leafChecksums = null;
+		treeChecksums = null;
+	}
+
 	@Override
 	public void backup() throws IOException {
-		treeChecksums = new TreeMap<>();
-		for (Entry<Path, Tree> en:trees.entrySet()) {
-			Path path = en.getKey();
-			Tree tree = en.getValue();
-			tree.save();
-			treeChecksums.put(path.toString(), tree.getChecksum());
-		}	
-		leafChecksums  = new TreeMap<>();
-		for (Entry<Path, Leaf> en:leafs.entrySet()) {
-			Path path = en.getKey();
-			Leaf leaf = en.getValue();
-			leaf.save();
-			leafChecksums.put(path.toString(), leaf.getChecksum());
-		}	
+		for (int i = 0; i < trees.size(); i++) {
+			Tree tree = trees.objectAt(i);
+			if (tree != null) {
+				tree.save();
+				trees.setChecksumAt(i, tree.getChecksum());
+			}
+		}
+		treeChecksums = trees.toChecksums();
+		for (int i = 0; i < leafs.size(); i++) {
+			Leaf leaf = leafs.objectAt(i);
+			if (leaf != null) {
+				leaf.save();
+				leafs.setChecksumAt(i, leaf.getChecksum());
+			}
+		}
+		leafChecksums = leafs.toChecksums();
+	}
+	
+	@Override
+	protected void release() {
+		leafChecksums = null;
+		treeChecksums = null;
 	}
 }
@@ -0,0 +1,375 @@
+package xlong.file.object;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compare two trees.
+ * <p>
+ * Both trees are walked together by their sorted nickname maps.
+ * Subtrees with the same checksum are skipped, so the work is
+ * proportional to the changes, not the size of the trees.
+ * Subtrees are loaded shallowly only when their checksums differ,
+ * and different subtrees are compared in parallel.
+ * <p>
+ * Paths reported are relative to the compared trees,
+ * separated by "/".
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class TreeDiff {
+
+	/**
+	 * Listener of differences.
+	 * Called by several threads, must be thread safe.
+	 */
+	public interface Listener {
+		/**
+		 * Called when an object only exists in the new tree.
+		 * @param path the path of the object
+		 * @param type Object.LEAF or Object.TREE
+		 * @param checksum the checksum of the object
+		 */
+		void added(String path, int type, String checksum);
+
+		/**
+		 * Called when an object only exists in the old tree.
+		 * @param path the path of the object
+		 * @param type Object.LEAF or Object.TREE
+		 * @param checksum the checksum of the object
+		 */
+		void removed(String path, int type, String checksum);
+
+		/**
+		 * Called when a leaf exists in both trees with different checksums.
+		 * @param path the path of the leaf
+		 * @param oldChecksum the checksum in the old tree
+		 * @param newChecksum the checksum in the new tree
+		 */
+		void modified(String path, String oldChecksum, String newChecksum);
+	}
+
+	/** the separator of paths. */
+	private static final String SEPARATOR = "/";
+
+	/** the pool to compare subtrees. */
+	private final ForkJoinPool pool;
+
+	/** report objects in added and removed trees or not. */
+	private boolean expand = false;
+
+	/**
+	 * Constructor with one thread per processor.
+	 */
+	public TreeDiff() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor.
+	 * @param parallelism the number of threads
+	 */
+	public TreeDiff(final int parallelism) {
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Report objects in added and removed trees or not.
+	 * If not, only the added or removed tree is reported.
+	 * @param newExpand expand or not
+	 */
+	public void setExpand(final boolean newExpand) {
+		expand = newExpand;
+	}
+
+	/**
+	 * Compare two saved trees.
+	 * @param oldChecksum the checksum of the old tree
+	 * @param newChecksum the checksum of the new tree
+	 * @param listener the listener
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void diff(final String oldChecksum, final String newChecksum,
+			final Listener listener) throws IOException {
+		if (oldChecksum.equals(newChecksum)) {
+			return;
+		}
+		diff(loadTree(oldChecksum), loadTree(newChecksum), listener);
+	}
+
+	/**
+	 * Compare two saved or loaded trees.
+	 * @param oldTree the old tree
+	 * @param newTree the new tree
+	 * @param listener the listener
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void diff(final Tree oldTree, final Tree newTree,
+			final Listener listener) throws IOException {
+		try {
+			pool.invoke(new Task(oldTree, newTree, "", listener));
+		} catch (DiffException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Stop the threads of this diff.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Load a tree shallowly.
+	 * @param checksum the checksum of the tree
+	 * @return the tree
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static Tree loadTree(final String checksum) throws IOException {
+		Container con = Container.loadShallow(checksum);
+		if (!(con instanceof Tree)) {
+			throw new IOException("Can't load tree " + checksum);
+		}
+		return (Tree) con;
+	}
+
+	/**
+	 * Resolve a nickname against a path.
+	 * @param path the path
+	 * @param nick the nickname
+	 * @return the resolved path
+	 */
+	private static String resolve(final String path, final String nick) {
+		if (path.isEmpty()) {
+			return nick;
+		}
+		return path + SEPARATOR + nick;
+	}
+
+	/**
+	 * Report a tree and, if expand, all objects in it.
+	 * @param path the path of the tree
+	 * @param checksum the checksum of the tree
+	 * @param added added or removed
+	 * @param listener the listener
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void reportTree(final String path, final String checksum,
+			final boolean added, final Listener listener) throws IOException {
+		report(path, Object.TREE, checksum, added, listener);
+		if (!expand) {
+			return;
+		}
+		Tree tree = loadTree(checksum);
+		for (Entry<String, String> en:tree.getLeafChecksums().entrySet()) {
+			report(resolve(path, en.getKey()), Object.LEAF, en.getValue(),
+					added, listener);
+		}
+		for (Entry<String, String> en:tree.getTreeChecksums().entrySet()) {
+			reportTree(resolve(path, en.getKey()), en.getValue(),
+					added, listener);
+		}
+	}
+
+	/**
+	 * Report an added or removed object.
+	 * @param path the path of the object
+	 * @param type the type of the object
+	 * @param checksum the checksum of the object
+	 * @param added added or removed
+	 * @param listener the listener
+	 */
+	private static void report(final String path, final int type,
+			final String checksum, final boolean added,
+			final Listener listener) {
+		if (added) {
+			listener.added(path, type, checksum);
+		} else {
+			listener.removed(path, type, checksum);
+		}
+	}
+
+	/**
+	 * Exception to carry IOException out of tasks.
+	 */
+	private static final class DiffException extends RuntimeException {
+
+		/** for serialization. */
+		private static final long serialVersionUID = 2460151837429916406L;
+
+		/**
+		 * Constructor.
+		 * @param cause the IOException
+		 */
+		DiffException(final IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+
+	/**
+	 * Task to compare two trees.
+	 */
+	private final class Task extends RecursiveAction {
+
+		/** for serialization. */
+		private static final long serialVersionUID = -3169529871528012394L;
+
+		/** the old tree, null if only the checksum is known. */
+		private Tree oldTree;
+
+		/** the new tree, null if only the checksum is known. */
+		private Tree newTree;
+
+		/** the checksum of the old tree. */
+		private final String oldChecksum;
+
+		/** the checksum of the new tree. */
+		private final String newChecksum;
+
+		/** the path of the trees. */
+		private final String path;
+
+		/** the listener. */
+		private final Listener listener;
+
+		/**
+		 * Constructor with loaded trees.
+		 * @param inOld the old tree
+		 * @param inNew the new tree
+		 * @param inPath the path of the trees
+		 * @param inListener the listener
+		 */
+		Task(final Tree inOld, final Tree inNew, final String inPath,
+				final Listener inListener) {
+			oldTree = inOld;
+			newTree = inNew;
+			oldChecksum = null;
+			newChecksum = null;
+			path = inPath;
+			listener = inListener;
+		}
+
+		/**
+		 * Constructor with checksums.
+		 * @param inOld the checksum of the old tree
+		 * @param inNew the checksum of the new tree
+		 * @param inPath the path of the trees
+		 * @param inListener the listener
+		 */
+		Task(final String inOld, final String inNew, final String inPath,
+				final Listener inListener) {
+			oldTree = null;
+			newTree = null;
+			oldChecksum = inOld;
+			newChecksum = inNew;
+			path = inPath;
+			listener = inListener;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				if (oldTree == null) {
+					oldTree = loadTree(oldChecksum);
+					newTree = loadTree(newChecksum);
+				}
+				List<Task> subtasks = new ArrayList<Task>();
+				compare(oldTree.getLeafChecksums(), newTree.getLeafChecksums(),
+						Object.LEAF, subtasks);
+				compare(oldTree.getTreeChecksums(), newTree.getTreeChecksums(),
+						Object.TREE, subtasks);
+				invokeAll(subtasks);
+			} catch (IOException e) {
+				throw new DiffException(e);
+			}
+		}
+
+		/**
+		 * Compare two sorted maps of nicknames to checksums.
+		 * @param olds the old map
+		 * @param news the new map
+		 * @param type the type of objects in the maps
+		 * @param subtasks the list to add subtrees to compare
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void compare(final Map<String, String> olds,
+				final Map<String, String> news, final int type,
+				final List<Task> subtasks) throws IOException {
+			Iterator<Entry<String, String>> oi = olds.entrySet().iterator();
+			Iterator<Entry<String, String>> ni = news.entrySet().iterator();
+			Entry<String, String> o = next(oi);
+			Entry<String, String> n = next(ni);
+			while (o != null || n != null) {
+				int cmp;
+				if (o == null) {
+					cmp = 1;
+				} else if (n == null) {
+					cmp = -1;
+				} else {
+					cmp = o.getKey().compareTo(n.getKey());
+				}
+				if (cmp < 0) {
+					removedOrAdded(o, type, false);
+					o = next(oi);
+				} else if (cmp > 0) {
+					removedOrAdded(n, type, true);
+					n = next(ni);
+				} else {
+					if (!o.getValue().equals(n.getValue())) {
+						String p = resolve(path, o.getKey());
+						if (type == Object.LEAF) {
+							listener.modified(p, o.getValue(), n.getValue());
+						} else {
+							subtasks.add(new Task(o.getValue(), n.getValue(),
+									p, listener));
+						}
+					}
+					o = next(oi);
+					n = next(ni);
+				}
+			}
+		}
+
+		/**
+		 * Report an object only in one tree.
+		 * @param en the nickname and checksum of the object
+		 * @param type the type of the object
+		 * @param added added or removed
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void removedOrAdded(final Entry<String, String> en,
+				final int type, final boolean added) throws IOException {
+			String p = resolve(path, en.getKey());
+			if (type == Object.LEAF) {
+				report(p, type, en.getValue(), added, listener);
+			} else {
+				reportTree(p, en.getValue(), added, listener);
+			}
+		}
+
+		/**
+		 * Get the next entry.
+		 * @param it the iterator
+		 * @return the next entry, null if no more
+		 */
+		private Entry<String, String> next(
+				final Iterator<Entry<String, String>> it) {
+			if (it.hasNext()) {
+				return it.next();
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package xlong.file.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * JUnit test class for TreeDiff class.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class TreeDiffTest {
+
+	/**
+	 * Create test directory and files before test.
+	 * Create a test directory data/test/
+	 * If the directory already exist, the test will fail.
+	 * Set objectDir of Object Class to data/test/object
+	 */
+	@BeforeClass
+	public static final void before() {
+		System.out.println("Preparing test file...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			fail("The test directory already exist."
+				+ "Please delete the directory \"data/test\" and retry.");
+		} else {
+			try {
+				Files.createDirectories(dir);
+			} catch (IOException e) {
+				fail("Can't create the test directory.");
+				e.printStackTrace();
+			}
+		}
+		Object.setObjectDir("data/test/object");
+	}
+	
+	/**
+	 * Delete test directory and all files in it.
+	 */
+	@AfterClass
+	public static final void after() {
+		System.out.println("Deleting test files...");
+		Path dir = Paths.get("data/test");
+		if (Files.isDirectory(dir)) {
+			if (!deleteFile(dir.toFile())) {
+				fail("Can't delete test files.");
+			}
+		} 
+		System.out.println("Finish.");
+	}
+	
+	/**
+	 * Delete a file or directory.
+	 * @param file the file to delete
+	 * @return success or not
+	 */
+	private static boolean deleteFile(final File file) {
+		if (file.exists()) {
+			if (file.isFile()) {
+				return file.delete();
+			} else if (file.isDirectory()) {
+				boolean flag = true;
+				File[] files = file.listFiles();
+				for (int i = 0; i < files.length; i++) {
+					flag &= deleteFile(files[i]);
+				}
+				flag &= file.delete();
+				return flag;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Write a file.
+	 * @param path the path of the file
+	 * @param content the content
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void write(final String path, final String content)
+			throws IOException {
+		Path p = Paths.get("data/test", path);
+		Files.createDirectories(p.getParent());
+		Files.write(p, content.getBytes());
+	}
+	
+	/**
+	 * Test.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testDiff() throws IOException {
+		write("a/x.txt", "x");
+		write("a/sub/y.txt", "y");
+		write("a/same/z.txt", "z");
+		write("b/x.txt", "x changed");
+		write("b/sub/w.txt", "w");
+		write("b/same/z.txt", "z");
+		write("b/new/q.txt", "q");
+		String a = Tree.create(Paths.get("data/test/a")).save();
+		String b = Tree.create(Paths.get("data/test/b")).save();
+		
+		final List<String> diffs =
+				Collections.synchronizedList(new ArrayList<String>());
+		TreeDiff.Listener listener = new TreeDiff.Listener() {
+			@Override
+			public void added(final String path, final int type,
+					final String checksum) {
+				diffs.add("A " + type + " " + path);
+			}
+
+			@Override
+			public void removed(final String path, final int type,
+					final String checksum) {
+				diffs.add("D " + type + " " + path);
+			}
+
+			@Override
+			public void modified(final String path,
+					final String oldChecksum, final String newChecksum) {
+				diffs.add("M " + path);
+			}
+		};
+		TreeDiff diff = new TreeDiff(2);
+		diff.diff(a, b, listener);
+		Collections.sort(diffs);
+		List<String> expected = new ArrayList<String>();
+		expected.add("A " + Object.TREE + " new");
+		expected.add("A " + Object.LEAF + " sub/w.txt");
+		expected.add("D " + Object.LEAF + " sub/y.txt");
+		expected.add("M x.txt");
+		Collections.sort(expected);
+		assertEquals(expected, diffs);
+		
+		diffs.clear();
+		diff.setExpand(true);
+		diff.diff(b, a, listener);
+		Collections.sort(diffs);
+		assertEquals(5, diffs.size());
+		assertTrue(diffs.contains("D " + Object.LEAF + " new/q.txt"));
+		assertTrue(diffs.contains("D " + Object.TREE + " new"));
+		
+		diffs.clear();
+		diff.diff(a, a, listener);
+		assertEquals(0, diffs.size());
+		diff.shutdown();
+	}
+}
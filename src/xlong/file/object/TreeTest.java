@@ -1,6 +1,8 @@
 package xlong.file.object;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
@@ -8,6 +10,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -141,4 +145,92 @@ public class TreeTest {
 			fail();
 		}
 	}
+	
+	/**
+	 * Test copy on write.
+	 */
+	@Test
+	public final void testTreeCopyOnWrite() {
+		Path oriPath = Paths.get("src/xlong");
+		try {
+			Tree tree = Tree.create(oriPath);
+			String treeChecksum = tree.save();
+			Leaf leaf = (Leaf) tree.get(Paths.get("util/SHA1Util.java"));
+			Tree utilTree = (Tree) tree.get(Paths.get("util"));
+			Tree fileTree = (Tree) tree.get(Paths.get("file"));
+			
+			Tree newTree = tree.withLeaf(Paths.get("util/new/Copy.java"), leaf)
+					.without(Paths.get("util/CompressionUtil.java"));
+			assertEquals(treeChecksum, tree.getChecksum());
+			assertEquals(false, tree.isDirty());
+			assertEquals(leaf, tree.get(Paths.get("util/SHA1Util.java")));
+			assertEquals(null, tree.get(Paths.get("util/new/Copy.java")));
+			assertEquals(fileTree, newTree.get(Paths.get("file")));
+			assertEquals(true, newTree.isDirty());
+			assertEquals(false, fileTree.isDirty());
+			assertEquals(tree, tree.without(Paths.get("util/none")));
+			
+			String newChecksum = newTree.save();
+			assertEquals(false, newTree.isDirty());
+			assertEquals(false, treeChecksum.equals(newChecksum));
+			Tree loaded = (Tree) Tree.load(newChecksum);
+			assertEquals(leaf.getChecksum(), 
+					loaded.get(Paths.get("util/new/Copy.java")).getChecksum());
+			assertEquals(null, 
+					loaded.get(Paths.get("util/CompressionUtil.java")));
+			
+			Tree back = newTree.without(Paths.get("util/new"))
+					.withTree(Paths.get("util"), utilTree);
+			assertEquals(treeChecksum, back.save());
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+	
+	/**
+	 * Test walk and streaming list.
+	 */
+	@Test
+	public final void testTreeWalk() {
+		Path oriPath = Paths.get("src/xlong");
+		try {
+			Tree tree = Tree.create(oriPath);
+			String treeChecksum = tree.save();
+			Tree shallow = (Tree) Container.loadShallow(treeChecksum);
+			StringBuilder s = new StringBuilder();
+			shallow.listAll(s, -1);
+			assertEquals(tree.listAll(), s.toString());
+			
+			StringBuilder top = new StringBuilder();
+			shallow.listAll(top, 1);
+			assertEquals(tree.toString() + "{\n" + tree.list(1) + "}\n", 
+					top.toString());
+			
+			final List<String> visited = new ArrayList<>();
+			final List<String> left = new ArrayList<>();
+			shallow.walk(new Tree.Visitor() {
+				@Override
+				public boolean visit(final String path, final int type,
+						final String checksum, final int depth) {
+					visited.add(path);
+					return !path.equals("util");
+				}
+
+				@Override
+				public void leave(final String path, final String checksum,
+						final int depth) {
+					left.add(path);
+				}
+			});
+			assertTrue(visited.contains("util"));
+			assertTrue(visited.contains("file/object/Tree.java"));
+			assertFalse(visited.contains("util/SHA1Util.java"));
+			assertTrue(left.contains("file"));
+			assertFalse(left.contains("util"));
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
 }
@@ -0,0 +1,35 @@
+package xlong.file.operator;
+
+import xlong.file.GarbageCollector;
+import xlong.file.ObjectManager;
+import xlong.util.Reporter;
+
+/** Delete objects not reachable from any root.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Collect extends Operator {
+
+	@Override
+	public boolean operate(final ObjectManager om, final String[] args) {
+		if (args.length == 1) {
+			Reporter.info("Collect garbage");
+			GarbageCollector gc = new GarbageCollector();
+			if (!gc.collect()) {
+				return false;
+			}
+			Reporter.info("Marked " + gc.getMarkedCount() 
+					+ " objects, deleted " + gc.getDeletedCount() 
+					+ " objects (" + gc.getDeletedBytes() + " bytes)");
+			return true;
+		} else {
+			return false;
+		}
+	}
+	
+	@Override
+	public boolean isExclusive() {
+		return true;
+	}
+
+}
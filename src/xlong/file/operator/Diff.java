@@ -0,0 +1,82 @@
+package xlong.file.operator;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import xlong.file.ObjectManager;
+import xlong.file.object.Object;
+import xlong.file.object.TreeDiff;
+
+/** Print the differences between two roots.
+ * <p>
+ * Usage: Diff oldRootName newRootName [expand]
+ * <p>
+ * Each difference is printed in a line: "A" for added, "D" for
+ * deleted and "M" for modified, then the type and the path.
+ * If "expand" is given, objects in added or deleted trees are
+ * also printed.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Diff extends Operator {
+
+	@Override
+	public boolean operate(final ObjectManager om, final String[] args) {
+		if (args.length < 3 || args.length > 4) {
+			return false;
+		}
+		String oldChecksum = ObjectManager.getRootMap().get(args[1]);
+		String newChecksum = ObjectManager.getRootMap().get(args[2]);
+		if (oldChecksum == null || newChecksum == null) {
+			return false;
+		}
+		TreeDiff diff = new TreeDiff();
+		if (args.length == 4) {
+			if (!"expand".equals(args[3])) {
+				return false;
+			}
+			diff.setExpand(true);
+		}
+		final PrintStream out = ObjectManager.getOut();
+		try {
+			diff.diff(oldChecksum, newChecksum, new TreeDiff.Listener() {
+				@Override
+				public void added(final String path, final int type,
+						final String checksum) {
+					out.println("A " + typeName(type) + " " + path);
+				}
+
+				@Override
+				public void removed(final String path, final int type,
+						final String checksum) {
+					out.println("D " + typeName(type) + " " + path);
+				}
+
+				@Override
+				public void modified(final String path,
+						final String oldLeaf, final String newLeaf) {
+					out.println("M leaf " + path);
+				}
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			diff.shutdown();
+		}
+		return true;
+	}
+
+	/**
+	 * Get the name of a type.
+	 * @param type the type
+	 * @return the name
+	 */
+	private static String typeName(final int type) {
+		if (type == Object.TREE) {
+			return "tree";
+		}
+		return "leaf";
+	}
+
+}
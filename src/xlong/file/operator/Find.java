@@ -0,0 +1,55 @@
+package xlong.file.operator;
+
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import xlong.file.ObjectManager;
+import xlong.file.PathIndex;
+
+/** Find files and directories by name or path in all roots.
+ * <p>
+ * Usage: Find pattern [limit]
+ * <p>
+ * The pattern is a glob, see {@link PathIndex}. 
+ * A pattern without "/" matches names, such as "config.yaml", 
+ * "Tree*" or "*.java". A pattern with "/" matches paths in roots, 
+ * such as "xlong/**&#47;*Test.java".
+ * Each hit is printed in a line: the root name and the path,
+ * then the type and the checksum.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Find extends Operator {
+
+	@Override
+	public boolean operate(final ObjectManager om, final String[] args) {
+		if (args.length < 2 || args.length > 3) {
+			return false;
+		}
+		int limit = -1;
+		if (args.length == 3) {
+			try {
+				limit = Integer.parseInt(args[2]);
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+		PathIndex index = PathIndex.getIndex();
+		if (index == null) {
+			return false;
+		}
+		List<PathIndex.Hit> hits;
+		try {
+			hits = index.find(args[1], limit);
+		} catch (PatternSyntaxException e) {
+			return false;
+		}
+		StringBuilder s = new StringBuilder();
+		for (PathIndex.Hit hit:hits) {
+			s.append(hit.toString()).append('\n');
+		}
+		ObjectManager.getOut().print(s);
+		return true;
+	}
+
+}
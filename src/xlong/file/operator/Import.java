@@ -6,10 +6,18 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import xlong.file.ObjectManager;
+import xlong.file.PathIndex;
 import xlong.file.object.Leaf;
+import xlong.file.object.PipelinedImport;
 import xlong.file.object.Tree;
+import xlong.util.Reporter;
 
 /** Import file or directory.
+ * <p>
+ * Usage: Import path rootName [readers workers writers]
+ * <p>
+ * Directories are imported by a {@link PipelinedImport}, with the
+ * given number of threads in each stage.
  * 
  * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
  */
@@ -18,33 +26,43 @@ public final class Import extends Operator {
 	
 	@Override
 	public boolean operate(final ObjectManager om, final String[] args) {
-		if (args.length == 3) {
-			System.out.println("Import " + args[1]);
+		if (args.length == 3 || args.length == 6) {
+			Reporter.info("Import " + args[1]);
 			Path path = Paths.get(args[1]);
 			String rootName = args[2];
 			if (!ObjectManager.checkRootName(rootName)) {
 				return false;
 			}
 			if (Files.isDirectory(path)) {
+				Reporter.begin(new Reporter.Meter("Import " + rootName));
 				try {
-					Tree tree = Tree.create(path);
+					Tree tree = createPipeline(args).create(path);
 					tree.save();
 					//System.out.println(tree.toString());
+					if (!ObjectManager.putRoot(tree, rootName)) {
+						return false;
+					}
 					ObjectManager.putRelation(tree);
-					ObjectManager.putRoot(tree, rootName);	
+					PathIndex.getIndex().add(tree, rootName);
 					ObjectManager.traceContainer(tree);
 					ObjectManager.changeRoot(tree);
-				} catch (IOException e) {
+				} catch (IOException | IllegalArgumentException e) {
 					e.printStackTrace();
 					return false;
+				} finally {
+					Reporter.end();
 				}
 			} else if (Files.exists(path)) {
 				try {
 					Leaf leaf = Leaf.create(path);
 					leaf.save();
 					//System.out.println(leaf.toString());
+					if (!ObjectManager.putRoot(leaf, rootName)) {
+						return false;
+					}
 					ObjectManager.putRelation(leaf);
-					ObjectManager.putRoot(leaf, rootName);
+					PathIndex.getIndex().add(leaf, 
+							path.getFileName().toString());
 					ObjectManager.traceContainer(leaf);
 					ObjectManager.changeRoot(leaf);
 				} catch (IOException e) {
@@ -59,4 +77,22 @@ public final class Import extends Operator {
 		}
 	}
 
+	/**
+	 * Create the import pipeline with the threads in arguments.
+	 * @param args arguments
+	 * @return the pipeline
+	 */
+	private static PipelinedImport createPipeline(final String[] args) {
+		if (args.length == 3) {
+			return new PipelinedImport();
+		}
+		return new PipelinedImport(Integer.parseInt(args[3]),
+				Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+	}
+	
+	@Override
+	public boolean isPath(final int index) {
+		return index == 1;
+	}
+
 }
@@ -4,6 +4,9 @@ import xlong.file.ObjectManager;
 
 /**
  * The abstract father of all operators.
+ * <p>
+ * One instance of each operator is shared by all operations,
+ * so operators should not keep state between operations.
  * 
  * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
  */
@@ -15,5 +18,23 @@ public abstract class Operator {
 	 * @return success or not
 	 */
 	public abstract boolean operate(ObjectManager om, String[] args);
+	
+	/**
+	 * whether the operator must run without any other operation.
+	 * @return exclusive or not
+	 */
+	public boolean isExclusive() {
+		return false;
+	}
+	
+	/**
+	 * whether an argument is a path in the file system.
+	 * Relative paths are resolved by clients before sending.
+	 * @param index the index of the argument, 0 is the operator name
+	 * @return a path or not
+	 */
+	public boolean isPath(final int index) {
+		return false;
+	}
 
 }
@@ -0,0 +1,97 @@
+package xlong.file.operator;
+
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of operators.
+ * <p>
+ * Operators are found by their simple class name. Operators listed in
+ * META-INF/services/xlong.file.operator.Operator are discovered when
+ * the registry is first used, other operators in this package are
+ * loaded by name on first use. Each operator is created only once,
+ * the instance is shared by all later operations. Names not found are
+ * remembered, so an unknown name is not looked up by class again.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class OperatorRegistry {
+
+	/** the package of operators loaded by name. */
+	private static final String PACKAGE = "xlong.file.operator.";
+
+	/** the most names not found remembered. */
+	private static final int MISSING_CAPACITY = 1024;
+
+	/** map of operator names to operators. */
+	private static final ConcurrentHashMap<String, Operator> OPERATORS =
+			new ConcurrentHashMap<String, Operator>();
+
+	/** names not found. */
+	private static final Set<String> MISSING = Collections.newSetFromMap(
+			new ConcurrentHashMap<String, Boolean>());
+
+	static {
+		try {
+			for (Operator o:ServiceLoader.load(Operator.class)) {
+				OPERATORS.putIfAbsent(o.getClass().getSimpleName(), o);
+			}
+		} catch (ServiceConfigurationError e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Private constructor to make sure no instance of this class will be
+	 * created.
+	 */
+	private OperatorRegistry() {
+		// will not be called
+	}
+
+	/**
+	 * Get the operator with given name.
+	 * @param name the name of the operator
+	 * @return the operator, null if not found
+	 */
+	public static Operator get(final String name) {
+		Operator o = OPERATORS.get(name);
+		if (o != null || MISSING.contains(name)) {
+			return o;
+		}
+		try {
+			o = (Operator) Class.forName(PACKAGE + name).newInstance();
+		} catch (ClassNotFoundException | InstantiationException
+				| IllegalAccessException | ClassCastException e) {
+			if (MISSING.size() >= MISSING_CAPACITY) {
+				// names from clients are not trusted to be few
+				MISSING.clear();
+			}
+			MISSING.add(name);
+			return null;
+		}
+		Operator old = OPERATORS.putIfAbsent(name, o);
+		return old == null ? o : old;
+	}
+
+	/**
+	 * Register an operator with given name.
+	 * Replace the operator with the same name.
+	 * @param name the name of the operator
+	 * @param o the operator
+	 */
+	public static void register(final String name, final Operator o) {
+		OPERATORS.put(name, o);
+		MISSING.remove(name);
+	}
+
+	/**
+	 * @return the names of known operators
+	 */
+	public static Set<String> getNames() {
+		return OPERATORS.keySet();
+	}
+}
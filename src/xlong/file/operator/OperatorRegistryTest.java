@@ -0,0 +1,42 @@
+package xlong.file.operator;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * JUnit test class for OperatorRegistry class.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class OperatorRegistryTest {
+
+	/**
+	 * Test operators are discovered and cached.
+	 */
+	@Test
+	public final void testGet() {
+		assertTrue(OperatorRegistry.getNames().contains("Import"));
+		Operator o = OperatorRegistry.get("Import");
+		assertTrue(o instanceof Import);
+		assertSame(o, OperatorRegistry.get("Import"));
+		assertSame(OperatorRegistry.get("Remove"),
+				OperatorRegistry.get("Remove"));
+	}
+
+	/**
+	 * Test unknown operators.
+	 */
+	@Test
+	public final void testUnknown() {
+		assertNull(OperatorRegistry.get("NoSuchOperator"));
+		assertNull(OperatorRegistry.get("OperatorRegistry"));
+
+		assertNull(OperatorRegistry.get("LaterOperator"));
+		Operator o = new Find();
+		OperatorRegistry.register("LaterOperator", o);
+		assertSame(o, OperatorRegistry.get("LaterOperator"));
+	}
+}
@@ -0,0 +1,41 @@
+package xlong.file.operator;
+
+import xlong.file.LayoutMigrator;
+import xlong.file.ObjectManager;
+import xlong.file.object.Object;
+import xlong.util.Reporter;
+
+/** Move the objects to a new layout of fan-out directories.
+ * <p>
+ * Usage: Relayout layout
+ * <p>
+ * The layout gives the number of characters of each level, such as
+ * "2/2" or "3/3", see {@link Object}. Other operations go on during
+ * the migration, only the switch to the new layout waits for them,
+ * see {@link LayoutMigrator}.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Relayout extends Operator {
+
+	@Override
+	public boolean operate(final ObjectManager om, final String[] args) {
+		if (args.length != 2) {
+			return false;
+		}
+		int[] layout = Object.parseLayout(args[1]);
+		if (layout == null) {
+			return false;
+		}
+		Reporter.info("Relayout to " + Object.formatLayout(layout));
+		LayoutMigrator migrator = new LayoutMigrator(layout);
+		if (!migrator.migrate()) {
+			return false;
+		}
+		Reporter.info("Moved " + migrator.getMovedCount()
+				+ " objects, deleted " + migrator.getRemovedCount()
+				+ " old files");
+		return true;
+	}
+
+}
@@ -0,0 +1,23 @@
+package xlong.file.operator;
+
+import xlong.file.ObjectManager;
+import xlong.util.Reporter;
+
+/** Remove a root.
+ * The objects of the root are deleted by Collect.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Remove extends Operator {
+
+	@Override
+	public boolean operate(final ObjectManager om, final String[] args) {
+		if (args.length == 2) {
+			Reporter.info("Remove " + args[1]);
+			return ObjectManager.removeRoot(args[1]);
+		} else {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+package xlong.file.operator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import xlong.file.Manager;
+import xlong.file.ObjectManager;
+import xlong.file.object.Container;
+import xlong.file.object.ParallelRestore;
+import xlong.file.object.StatCache;
+import xlong.file.object.Tree;
+import xlong.util.Reporter;
+import xlong.util.SHA1Util;
+
+/** Restore a root to a directory or a file.
+ * <p>
+ * Usage: Restore rootName path [workers [inflaters [writers]]]
+ * <p>
+ * The files written to a directory are recorded in the manager
+ * directory, see {@link StatCache}, so a later {@link Sync} to it
+ * does not read them again.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Restore extends Operator {
+
+	/** the directory in the manager directory of the files known. */
+	static final String STATS_DIR = "restored";
+
+	@Override
+	public boolean operate(final ObjectManager om, final String[] args) {
+		if (args.length < 3 || args.length > 6) {
+			return false;
+		}
+		Reporter.info("Restore " + args[1] + " to " + args[2]);
+		String checksum = ObjectManager.getRootMap().get(args[1]);
+		if (checksum == null) {
+			return false;
+		}
+		Container root = ObjectManager.getContainer(checksum);
+		if (root == null) {
+			return false;
+		}
+		Path path = Paths.get(args[2]);
+		try {
+			if (root instanceof Tree) {
+				ParallelRestore restore = createRestore(args);
+				restore.setProgress(meter("Restore " + args[1]));
+				boolean flag = restore((Tree) root, path, restore);
+				Reporter.info("Restored " + restore.getDoneFiles()
+						+ " files (" + restore.getDoneBytes() + " bytes)");
+				return flag;
+			} else {
+				return root.restore(path);
+			}
+		} catch (IOException | NumberFormatException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Restore a tree to a directory, comparing with the files known
+	 * from the last restore to it. The files known are saved after.
+	 * @param tree the tree
+	 * @param dir the directory
+	 * @param restore the restore engine
+	 * @return totally success or not
+	 * @throws IOException if an I/O error occurs
+	 */
+	static boolean restore(final Tree tree, final Path dir,
+			final ParallelRestore restore) throws IOException {
+		Path statPath = Paths.get(Manager.getManagerDir(), STATS_DIR,
+				SHA1Util.sha1Checksum(dir.toAbsolutePath().normalize()
+						.toString()));
+		restore.setStatCache(StatCache.load(statPath));
+		boolean flag = restore.restore(tree, dir);
+		restore.getStatCache().save(statPath);
+		return flag;
+	}
+
+	/**
+	 * Create a progress listener reports to a meter.
+	 * @param name the name of the operation
+	 * @return the listener
+	 */
+	static ParallelRestore.Progress meter(final String name) {
+		final Reporter.Meter meter = new Reporter.Meter(name);
+		return new ParallelRestore.Progress() {
+			@Override
+			public void restored(final Path file, final long bytes,
+					final long doneFiles, final long totalFiles) {
+				meter.setTotalFiles(totalFiles);
+				meter.add(1, bytes);
+			}
+		};
+	}
+
+	/**
+	 * Create the restore engine with the limits in arguments.
+	 * @param args arguments
+	 * @return the restore engine
+	 */
+	private static ParallelRestore createRestore(final String[] args) {
+		if (args.length == 3) {
+			return new ParallelRestore();
+		}
+		int workers = Integer.parseInt(args[3]);
+		int inflaters = workers;
+		int writers = workers;
+		if (args.length > 4) {
+			inflaters = Integer.parseInt(args[4]);
+		}
+		if (args.length > 5) {
+			writers = Integer.parseInt(args[5]);
+		}
+		return new ParallelRestore(workers, inflaters, writers);
+	}
+	
+	@Override
+	public boolean isPath(final int index) {
+		return index == 2;
+	}
+
+}
@@ -0,0 +1,62 @@
+package xlong.file.operator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import xlong.file.ObjectManager;
+import xlong.file.object.Container;
+import xlong.file.object.Tree;
+
+/** Print the objects of a root and their names.
+ * <p>
+ * Usage: Show rootName [depth]
+ * <p>
+ * Only trees up to the given depth are printed with their objects,
+ * all trees are printed if no depth is given.
+ * The root is loaded shallowly and printed while walking,
+ * so large roots are not loaded into memory.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Show extends Operator {
+
+	@Override
+	public boolean operate(final ObjectManager om, final String[] args) {
+		if (args.length < 2 || args.length > 3) {
+			return false;
+		}
+		String checksum = ObjectManager.getRootMap().get(args[1]);
+		if (checksum == null) {
+			return false;
+		}
+		int depth = -1;
+		if (args.length == 3) {
+			try {
+				depth = Integer.parseInt(args[2]);
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+		try {
+			Container con = Container.loadShallow(checksum);
+			if (con == null) {
+				return false;
+			}
+			Writer out = new BufferedWriter(
+					new OutputStreamWriter(ObjectManager.getOut()));
+			if (con instanceof Tree) {
+				((Tree) con).listAll(out, depth);
+			} else {
+				out.append(con.toString());
+			}
+			out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+}
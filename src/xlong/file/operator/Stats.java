@@ -0,0 +1,36 @@
+package xlong.file.operator;
+
+import java.io.IOException;
+
+import xlong.file.ObjectManager;
+import xlong.util.Metrics;
+
+/** Print the metrics of the storage.
+ * <p>
+ * Usage: Stats [reset]
+ * <p>
+ * The metrics are set to zero after printing if "reset" is given.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Stats extends Operator {
+
+	@Override
+	public boolean operate(final ObjectManager om, final String[] args) {
+		if (args.length > 2
+				|| args.length == 2 && !"reset".equals(args[1])) {
+			return false;
+		}
+		try {
+			Metrics.dump(ObjectManager.getOut());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		if (args.length == 2) {
+			Metrics.resetAll();
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,72 @@
+package xlong.file.operator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import xlong.file.ObjectManager;
+import xlong.file.object.Container;
+import xlong.file.object.ParallelRestore;
+import xlong.file.object.Tree;
+import xlong.util.Reporter;
+
+/** Restore a root to a directory, only write new or changed files.
+ * <p>
+ * Usage: Sync rootName directory [size] [delete]
+ * <p>
+ * Files are compared by size and modified time with the files known
+ * from the last restore to the directory. Files with another time are
+ * compared by checksum, or written if "size" is given.
+ * Files not in the root are deleted if "delete" is given.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Sync extends Operator {
+
+	@Override
+	public boolean operate(final ObjectManager om, final String[] args) {
+		if (args.length < 3 || args.length > 5) {
+			return false;
+		}
+		ParallelRestore restore = new ParallelRestore();
+		restore.setMode(ParallelRestore.Mode.CHECKSUM);
+		for (int i = 3; i < args.length; i++) {
+			if ("size".equals(args[i])) {
+				restore.setMode(ParallelRestore.Mode.SIZE);
+			} else if ("delete".equals(args[i])) {
+				restore.setDeleteExtras(true);
+			} else {
+				return false;
+			}
+		}
+		Reporter.info("Sync " + args[1] + " to " + args[2]);
+		String checksum = ObjectManager.getRootMap().get(args[1]);
+		if (checksum == null) {
+			return false;
+		}
+		Container root = ObjectManager.getContainer(checksum);
+		if (!(root instanceof Tree)) {
+			return false;
+		}
+		Path path = Paths.get(args[2]);
+		try {
+			restore.setProgress(Restore.meter("Sync " + args[1]));
+			boolean flag = Restore.restore((Tree) root, path, restore);
+			Reporter.info("Wrote " 
+					+ (restore.getDoneFiles() - restore.getSkippedFiles())
+					+ " files, skipped " + restore.getSkippedFiles()
+					+ " files, deleted " + restore.getDeletedFiles()
+					+ " files, hashed " + restore.getHashedFiles() + " files");
+			return flag;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	@Override
+	public boolean isPath(final int index) {
+		return index == 2;
+	}
+
+}
@@ -0,0 +1,52 @@
+package xlong.file.operator;
+
+import xlong.file.ObjectManager;
+import xlong.file.Verifier;
+import xlong.util.Reporter;
+
+/** Check the objects match their checksums and the roots are complete.
+ * <p>
+ * Usage: Verify [restart] [threads]
+ * <p>
+ * A stopped verification goes on where it stopped, unless "restart"
+ * is given. Fails if a corrupt or missing object is found,
+ * see {@link Verifier}.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Verify extends Operator {
+
+	@Override
+	public boolean operate(final ObjectManager om, final String[] args) {
+		boolean resume = true;
+		int threads = Runtime.getRuntime().availableProcessors() * 2;
+		for (int i = 1; i < args.length; i++) {
+			if ("restart".equals(args[i])) {
+				resume = false;
+			} else {
+				try {
+					threads = Integer.parseInt(args[i]);
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		Reporter.info("Verify objects");
+		Verifier verifier = new Verifier(threads, resume);
+		if (!verifier.verify()) {
+			return false;
+		}
+		Reporter.info("Scanned " + verifier.getScannedCount()
+				+ " objects (" + verifier.getScannedBytes() + " bytes), "
+				+ verifier.getSkippedDirs() + " directories already done, "
+				+ verifier.getCorrupt().size() + " corrupt, "
+				+ verifier.getMissing().size() + " missing");
+		return verifier.isClean();
+	}
+	
+	@Override
+	public boolean isExclusive() {
+		return true;
+	}
+
+}
@@ -0,0 +1,578 @@
+package xlong.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes files atomically: a file is written to a temporary file in
+ * the same directory, then moved to its place by one atomic rename.
+ * A file is never seen partly written, even after a crash.
+ * <p>
+ * What is forced to the disk is set by the sync policy, the system
+ * property "lxfile.sync":
+ * <ul>
+ * <li>"none": nothing is forced, the system writes files when it
+ * likes. A crash can leave objects cut short.</li>
+ * <li>"object": each temporary file is forced before its rename, and
+ * its directory after.</li>
+ * <li>"batch" (default): temporary files wait, still open, until
+ * "lxfile.sync.batch" files ({@value #DEFAULT_BATCH}) are written.
+ * Then they are forced together, renamed, and their directories
+ * forced once each.</li>
+ * <li>"import": as "batch", but the directories are forced only when
+ * the manager is saved, once per import.</li>
+ * </ul>
+ * A waiting file is forced through the channel that wrote it, so each
+ * file is opened once, and it is renamed only after it is forced, so
+ * an object seen after a crash is never empty or cut short. Until it
+ * is renamed, {@link #exists(Path)} counts it, and
+ * {@link #isPending(Path)} tells readers to {@link #flush()} first.
+ * Each waiting file holds an open file, so the batch also bounds the
+ * number of open files.
+ * <p>
+ * Files written with replace, such as the manager, are always forced
+ * and renamed at once unless the policy is "none", after the files
+ * before them. With "batch" or "import", a power failure can lose files
+ * of the last batch, never the files of a saved manager.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class AtomicWriter {
+
+	/**
+	 * When files are forced to the disk.
+	 */
+	public enum Sync {
+		/** never. */
+		NONE,
+		/** each file. */
+		OBJECT,
+		/** once every batch of files. */
+		BATCH,
+		/** files once every batch, directories when the manager is saved. */
+		IMPORT
+	}
+
+	/**
+	 * A temporary file written but not renamed.
+	 */
+	private static final class Waiting {
+
+		/** the channel that wrote the file, open. */
+		private final FileChannel channel;
+
+		/** the temporary file. */
+		private final Path temp;
+
+		/** the target. */
+		private final Path target;
+
+		/**
+		 * Constructor.
+		 * @param inChannel the channel that wrote the file
+		 * @param inTemp the temporary file
+		 * @param inTarget the target
+		 */
+		Waiting(final FileChannel inChannel, final Path inTemp,
+				final Path inTarget) {
+			channel = inChannel;
+			temp = inTemp;
+			target = inTarget;
+		}
+	}
+
+	/** the default number of files forced together. */
+	public static final int DEFAULT_BATCH = 256;
+
+	/** the suffix of temporary files. */
+	public static final String SUFFIX = ".tmp";
+
+	/** temporary files not renamed, by target. Guarded by itself. */
+	private static final Map<Path, Waiting> WAITING =
+			new LinkedHashMap<Path, Waiting>();
+
+	/** files renamed but their directories not forced. Guarded by WAITING. */
+	private static final List<Path> PENDING = new ArrayList<Path>();
+
+	/** the number of waiting files, read without the lock. */
+	private static volatile int waitingCount = 0;
+
+	/** held while waiting files are renamed. */
+	private static final Object FLUSH_LOCK = new Object();
+
+	/** the sync policy. */
+	private static volatile Sync sync = Sync.BATCH;
+
+	/** the number of files forced together. */
+	private static volatile int batch = DEFAULT_BATCH;
+
+	static {
+		String value = System.getProperty("lxfile.sync");
+		if (value != null) {
+			try {
+				sync = Sync.valueOf(value.toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				e.printStackTrace();
+			}
+		}
+		batch = Math.max(1,
+				Integer.getInteger("lxfile.sync.batch", DEFAULT_BATCH));
+	}
+
+	/**
+	 * Private constructor to make sure no instance of this class will be
+	 * created.
+	 */
+	private AtomicWriter() {
+		// will not be called
+	}
+
+	/**
+	 * @return the sync policy
+	 */
+	public static Sync getSync() {
+		return sync;
+	}
+
+	/**
+	 * Set the sync policy. Renames not forced yet are forced by the
+	 * next {@link #flush()}.
+	 * @param inSync the sync policy
+	 */
+	public static void setSync(final Sync inSync) {
+		sync = inSync;
+	}
+
+	/**
+	 * @return the number of files forced together
+	 */
+	public static int getBatch() {
+		return batch;
+	}
+
+	/**
+	 * @param inBatch the number of files forced together
+	 */
+	public static void setBatch(final int inBatch) {
+		batch = Math.max(1, inBatch);
+	}
+
+	/**
+	 * @return the number of files written but not forced, or renamed
+	 * but their directories not forced
+	 */
+	public static int getPending() {
+		synchronized (WAITING) {
+			return WAITING.size() + PENDING.size();
+		}
+	}
+
+	/**
+	 * Whether a file is written but waits to be renamed. Readers must
+	 * {@link #flush()} before they read it.
+	 * @param target the target
+	 * @return waits or not
+	 */
+	public static boolean isPending(final Path target) {
+		if (waitingCount == 0) {
+			return false;
+		}
+		synchronized (WAITING) {
+			return WAITING.containsKey(target);
+		}
+	}
+
+	/**
+	 * Whether a file exists or waits to be renamed.
+	 * @param target the target
+	 * @return exists or not
+	 */
+	public static boolean exists(final Path target) {
+		return Files.exists(target) || isPending(target);
+	}
+
+	/**
+	 * Create a temporary file next to the target.
+	 * The directory of the target must exist.
+	 * @param target the file to write
+	 * @return the temporary file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static Path temp(final Path target) throws IOException {
+		return Files.createTempFile(target.toAbsolutePath().getParent(),
+				"." + target.getFileName(), SUFFIX);
+	}
+
+	/**
+	 * Open a temporary file to write it. The channel is given back to
+	 * {@link #commit(FileChannel, Path, Path, boolean)} or
+	 * {@link #discard(FileChannel, Path)}.
+	 * @param temp the temporary file
+	 * @return the channel
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static FileChannel open(final Path temp) throws IOException {
+		return FileChannel.open(temp, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Get a stream writing to a channel. Closing the stream does not
+	 * close the channel.
+	 * @param channel the channel
+	 * @return the stream
+	 */
+	public static OutputStream newOutputStream(final FileChannel channel) {
+		return new FilterOutputStream(Channels.newOutputStream(channel)) {
+			@Override
+			public void write(final byte[] b, final int off, final int len)
+					throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		};
+	}
+
+	/**
+	 * @param file a file
+	 * @return the file is a temporary file or not
+	 */
+	public static boolean isTemp(final Path file) {
+		String name = file.getFileName().toString();
+		return name.startsWith(".") && name.endsWith(SUFFIX);
+	}
+
+	/**
+	 * Move a written temporary file to the target, now or with the next
+	 * batch. The channel is closed, or kept until the file is forced.
+	 * If the target exists and replace is false, the temporary file is
+	 * deleted. Two files moved to the same target at the same time
+	 * must have the same content.
+	 * @param channel the channel that wrote the temporary file
+	 * @param temp the temporary file
+	 * @param target the target
+	 * @param replace replace the target or not
+	 * @return moved or waits to be moved, false if the target exists
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static boolean commit(final FileChannel channel, final Path temp,
+			final Path target, final boolean replace) throws IOException {
+		Sync s = sync;
+		if (replace || s == Sync.NONE || s == Sync.OBJECT) {
+			if (!replace && exists(target)) {
+				discard(channel, temp);
+				return false;
+			}
+			boolean force = s != Sync.NONE;
+			if (replace && force) {
+				// the files written before are kept before this one
+				flush();
+			}
+			return move(channel, temp, target, replace, force);
+		}
+		boolean added = false;
+		boolean full = false;
+		if (!Files.exists(target)) {
+			synchronized (WAITING) {
+				if (!WAITING.containsKey(target)) {
+					WAITING.put(target, new Waiting(channel, temp, target));
+					waitingCount = WAITING.size();
+					added = true;
+					full = waitingCount >= batch;
+				}
+			}
+		}
+		if (!added) {
+			discard(channel, temp);
+			return false;
+		}
+		if (full) {
+			flush(s == Sync.BATCH);
+		}
+		return true;
+	}
+
+	/**
+	 * Force a temporary file if asked, close it and rename it to the
+	 * target.
+	 * @param channel the channel that wrote the temporary file
+	 * @param temp the temporary file
+	 * @param target the target
+	 * @param replace replace the target or not
+	 * @param force force the file and the directory or not
+	 * @return moved or not, false if the target exists
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static boolean move(final FileChannel channel, final Path temp,
+			final Path target, final boolean replace, final boolean force)
+					throws IOException {
+		try {
+			if (force) {
+				force(channel);
+			}
+		} finally {
+			channel.close();
+		}
+		if (!move(temp, target, replace)) {
+			Files.deleteIfExists(temp);
+			return false;
+		}
+		if (force) {
+			forceDirectory(target.toAbsolutePath().getParent());
+		}
+		return true;
+	}
+
+	/**
+	 * Rename a temporary file to the target, atomically if the system
+	 * can. Otherwise the target is only replaced if asked.
+	 * @param temp the temporary file
+	 * @param target the target
+	 * @param replace replace the target or not
+	 * @return moved or not, false if the target exists
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static boolean move(final Path temp, final Path target,
+			final boolean replace) throws IOException {
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			if (replace) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			} else {
+				try {
+					Files.move(temp, target);
+				} catch (FileAlreadyExistsException ex) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Close and delete a temporary file after a failure.
+	 * @param channel the channel that wrote the file, can be null
+	 * @param temp the temporary file
+	 */
+	public static void discard(final FileChannel channel, final Path temp) {
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+			Files.deleteIfExists(temp);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write bytes to a file atomically.
+	 * The directory of the target must exist.
+	 * @param target the file
+	 * @param bytes the bytes
+	 * @param replace replace the target or not
+	 * @return written or not, false if the target exists
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static boolean write(final Path target, final byte[] bytes,
+			final boolean replace) throws IOException {
+		if (!replace && exists(target)) {
+			return false;
+		}
+		Path temp = temp(target);
+		FileChannel channel = null;
+		boolean done = false;
+		try {
+			channel = open(temp);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			done = commit(channel, temp, target, replace);
+			return done;
+		} finally {
+			if (!done) {
+				discard(channel, temp);
+			}
+		}
+	}
+
+	/**
+	 * Copy a file atomically, if the target does not exist.
+	 * The directory of the target must exist.
+	 * @param source the file to copy
+	 * @param target the copy
+	 * @return copied or not, false if the target exists
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static boolean copy(final Path source, final Path target)
+			throws IOException {
+		if (exists(target)) {
+			return false;
+		}
+		if (isPending(source)) {
+			flush();
+		}
+		Path temp = temp(target);
+		FileChannel channel = null;
+		boolean done = false;
+		try (FileChannel in = FileChannel.open(source,
+				StandardOpenOption.READ)) {
+			channel = open(temp);
+			long size = in.size();
+			long position = 0;
+			while (position < size) {
+				long n = channel.transferFrom(in, position, size - position);
+				if (n <= 0) {
+					break;
+				}
+				position += n;
+			}
+			done = commit(channel, temp, target, false);
+			return done;
+		} finally {
+			if (!done) {
+				discard(channel, temp);
+			}
+		}
+	}
+
+	/**
+	 * Force and rename all waiting files, then force the directories of
+	 * all files renamed but not forced, so the renames are kept.
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void flush() throws IOException {
+		flush(true);
+	}
+
+	/**
+	 * Force and rename all waiting files, at the end of an operation.
+	 * The directories are forced as the policy says: now with "batch",
+	 * when the manager is saved with "import".
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void endBatch() throws IOException {
+		flush(sync != Sync.IMPORT);
+	}
+
+	/**
+	 * Force all waiting files together, then rename them.
+	 * A file that fails is deleted with the rest of its batch.
+	 * @param directories force the directories too or not
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void flush(final boolean directories) throws IOException {
+		synchronized (FLUSH_LOCK) {
+			List<Waiting> files;
+			synchronized (WAITING) {
+				files = new ArrayList<Waiting>(WAITING.values());
+			}
+			int moved = 0;
+			try {
+				for (Waiting w:files) {
+					force(w.channel);
+				}
+				List<Path> renamed = new ArrayList<Path>(files.size());
+				for (; moved < files.size(); moved++) {
+					Waiting w = files.get(moved);
+					w.channel.close();
+					if (move(w.temp, w.target, false)) {
+						renamed.add(w.target);
+					} else {
+						Files.deleteIfExists(w.temp);
+					}
+				}
+				synchronized (WAITING) {
+					PENDING.addAll(renamed);
+				}
+			} finally {
+				for (int i = moved; i < files.size(); i++) {
+					discard(files.get(i).channel, files.get(i).temp);
+				}
+				synchronized (WAITING) {
+					for (Waiting w:files) {
+						WAITING.remove(w.target);
+					}
+					waitingCount = WAITING.size();
+				}
+			}
+			if (directories) {
+				forceDirectories();
+			}
+		}
+	}
+
+	/**
+	 * Force the directories of all files renamed but not forced.
+	 */
+	private static void forceDirectories() {
+		List<Path> files;
+		synchronized (WAITING) {
+			if (PENDING.isEmpty()) {
+				return;
+			}
+			files = new ArrayList<Path>(PENDING);
+			PENDING.clear();
+		}
+		Set<Path> dirs = new LinkedHashSet<Path>();
+		for (Path file:files) {
+			Path dir = file.toAbsolutePath().getParent();
+			dirs.add(dir);
+			if (dir.getParent() != null) {
+				// the directory may be new
+				dirs.add(dir.getParent());
+			}
+		}
+		for (Path dir:dirs) {
+			forceDirectory(dir);
+		}
+	}
+
+	/**
+	 * Force a written file to the disk.
+	 * @param channel the channel that wrote the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void force(final FileChannel channel) throws IOException {
+		channel.force(true);
+		Metrics.SYNCED.increment();
+	}
+
+	/**
+	 * Force a directory to the disk, so renames in it are kept.
+	 * Not all systems can open a directory, then this does nothing.
+	 * @param dir the directory
+	 */
+	private static void forceDirectory(final Path dir) {
+		try (FileChannel ch = FileChannel.open(dir,
+				StandardOpenOption.READ)) {
+			ch.force(true);
+			Metrics.SYNCED.increment();
+		} catch (IOException e) {
+			// not supported on this system
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package xlong.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for AtomicWriter class.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class AtomicWriterTest {
+
+	/** the test directory. */
+	private Path dir;
+
+	/** the sync policy before the test. */
+	private AtomicWriter.Sync sync;
+
+	/** the batch before the test. */
+	private int batch;
+
+	/**
+	 * Create the test directory.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Before
+	public final void before() throws IOException {
+		dir = Files.createTempDirectory("atomic");
+		sync = AtomicWriter.getSync();
+		batch = AtomicWriter.getBatch();
+	}
+
+	/**
+	 * Delete the test directory.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@After
+	public final void after() throws IOException {
+		AtomicWriter.flush();
+		AtomicWriter.setSync(sync);
+		AtomicWriter.setBatch(batch);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file:files) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(dir);
+	}
+
+	/**
+	 * Test writing with and without replace.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testWrite() throws IOException {
+		Path file = dir.resolve("f");
+		assertTrue(AtomicWriter.write(file, new byte[] {1, 2}, false));
+		assertFalse(AtomicWriter.write(file, new byte[] {3}, false));
+		AtomicWriter.flush();
+		assertArrayEquals(new byte[] {1, 2}, Files.readAllBytes(file));
+		assertTrue(AtomicWriter.write(file, new byte[] {3}, true));
+		assertArrayEquals(new byte[] {3}, Files.readAllBytes(file));
+		Path copy = dir.resolve("g");
+		assertTrue(AtomicWriter.copy(file, copy));
+		assertFalse(AtomicWriter.copy(file, copy));
+		AtomicWriter.endBatch();
+		assertArrayEquals(new byte[] {3}, Files.readAllBytes(copy));
+		assertEquals(2, count());
+	}
+
+	/**
+	 * Test files wait until a batch is full, then are forced and
+	 * renamed together.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testBatch() throws IOException {
+		AtomicWriter.flush();
+		AtomicWriter.setSync(AtomicWriter.Sync.BATCH);
+		AtomicWriter.setBatch(3);
+		long synced = Metrics.SYNCED.sum();
+		Path a = dir.resolve("a");
+		assertTrue(AtomicWriter.write(a, new byte[] {1}, false));
+		AtomicWriter.write(dir.resolve("b"), new byte[] {1}, false);
+		assertEquals(2, AtomicWriter.getPending());
+		assertFalse(Files.exists(a));
+		assertTrue(AtomicWriter.isPending(a));
+		assertTrue(AtomicWriter.exists(a));
+		assertFalse(AtomicWriter.write(a, new byte[] {2}, false));
+		assertEquals(synced, Metrics.SYNCED.sum());
+		AtomicWriter.write(dir.resolve("c"), new byte[] {1}, false);
+		assertEquals(0, AtomicWriter.getPending());
+		assertArrayEquals(new byte[] {1}, Files.readAllBytes(a));
+		// three files, then their directory and its parent
+		assertTrue(Metrics.SYNCED.sum() >= synced + 3);
+		AtomicWriter.setSync(AtomicWriter.Sync.IMPORT);
+		AtomicWriter.write(dir.resolve("d"), new byte[] {1}, false);
+		AtomicWriter.write(dir.resolve("e"), new byte[] {1}, false);
+		AtomicWriter.write(dir.resolve("f"), new byte[] {1}, false);
+		// renamed, directories not forced
+		assertTrue(Files.exists(dir.resolve("f")));
+		assertEquals(3, AtomicWriter.getPending());
+		AtomicWriter.write(dir.resolve("g"), new byte[] {1}, false);
+		assertFalse(Files.exists(dir.resolve("g")));
+		AtomicWriter.write(dir.resolve("m"), new byte[] {1}, true);
+		assertEquals(0, AtomicWriter.getPending());
+		assertEquals(8, count());
+	}
+
+	/**
+	 * Test nothing is forced if the policy is none.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testNone() throws IOException {
+		AtomicWriter.flush();
+		AtomicWriter.setSync(AtomicWriter.Sync.NONE);
+		long synced = Metrics.SYNCED.sum();
+		AtomicWriter.write(dir.resolve("a"), new byte[] {1}, false);
+		AtomicWriter.write(dir.resolve("m"), new byte[] {1}, true);
+		assertEquals(synced, Metrics.SYNCED.sum());
+		assertEquals(0, AtomicWriter.getPending());
+		assertEquals(2, count());
+	}
+
+	/**
+	 * Test failed writes leave no temporary file.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testFailure() throws IOException {
+		Path file = dir.resolve("f");
+		try {
+			AtomicWriter.copy(dir.resolve("missing"), file);
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse(Files.exists(file));
+		assertEquals(0, count());
+		assertTrue(AtomicWriter.isTemp(AtomicWriter.temp(file)));
+	}
+
+	/**
+	 * @return the number of files in the test directory
+	 * @throws IOException if an I/O error occurs
+	 */
+	private int count() throws IOException {
+		int n = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file:files) {
+				assertFalse(AtomicWriter.isTemp(file));
+				n++;
+			}
+		}
+		return n;
+	}
+}
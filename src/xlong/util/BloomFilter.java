@@ -0,0 +1,294 @@
+package xlong.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A scalable Bloom filter of strings, safe to use from several threads.
+ * <p>
+ * A Bloom filter answers whether a string may have been added.
+ * "No" is always right, "yes" is wrong with a small probability.
+ * <p>
+ * The filter is a list of stages. When the last stage is full,
+ * a new stage with twice the capacity and half the false positive
+ * probability is added, so the total false positive probability
+ * stays below twice the one given, however many strings are added.
+ * <p>
+ * Strings are expected to be hexadecimal checksums, such as SHA-1
+ * checksums. Their digits are already uniformly distributed, so the
+ * hash values are taken from the digits directly.
+ * Other strings are hashed by their hash codes.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class BloomFilter implements Serializable {
+
+	/** for serialization. */
+	private static final long serialVersionUID = -3371873624460012373L;
+
+	/** number of hexadecimal digits in a long. */
+	private static final int DIGITS = 16;
+
+	/** bits in a long. */
+	private static final int LONG_BITS = 64;
+
+	/** the base of the digits. */
+	private static final int HEX = 16;
+
+	/** constant to mix hash codes. */
+	private static final long MIX = 0x9E3779B97F4A7C15L;
+
+	/** constant to mix hash codes. */
+	private static final long MIX2 = 0xBF58476D1CE4E5B9L;
+
+	/** constant to mix hash codes. */
+	private static final long MIX3 = 0x94D049BB133111EBL;
+
+	/** the stages. */
+	private final List<Stage> stages;
+
+	/** the false positive probability of the first stage. */
+	private final double fpp;
+
+	/**
+	 * One Bloom filter with fixed capacity.
+	 */
+	private static final class Stage implements Serializable {
+
+		/** for serialization. */
+		private static final long serialVersionUID = 1796436325592003593L;
+
+		/** the bits. */
+		private final AtomicLongArray bits;
+
+		/** the number of bits. */
+		private final long size;
+
+		/** the number of hash functions. */
+		private final int hashes;
+
+		/** the number of strings can be added. */
+		private final long capacity;
+
+		/** the number of strings added. */
+		private final AtomicLong count = new AtomicLong();
+
+		/**
+		 * Constructor.
+		 * @param inCapacity the number of strings can be added
+		 * @param p the false positive probability
+		 */
+		Stage(final long inCapacity, final double p) {
+			capacity = inCapacity;
+			long m = (long) Math.ceil(-inCapacity * Math.log(p)
+					/ (Math.log(2) * Math.log(2)));
+			int words = (int) Math.min(Integer.MAX_VALUE,
+					(m + LONG_BITS - 1) / LONG_BITS);
+			bits = new AtomicLongArray(words);
+			size = (long) words * LONG_BITS;
+			hashes = Math.max(1,
+					(int) Math.round((double) size / inCapacity * Math.log(2)));
+		}
+
+		/**
+		 * @param h1 the first hash value
+		 * @param h2 the second hash value
+		 * @return may contain or not
+		 */
+		boolean mightContain(final long h1, final long h2) {
+			for (int i = 0; i < hashes; i++) {
+				long bit = ((h1 + i * h2) & Long.MAX_VALUE) % size;
+				if ((bits.get((int) (bit / LONG_BITS))
+						& (1L << (bit % LONG_BITS))) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @param h1 the first hash value
+		 * @param h2 the second hash value
+		 */
+		void add(final long h1, final long h2) {
+			for (int i = 0; i < hashes; i++) {
+				long bit = ((h1 + i * h2) & Long.MAX_VALUE) % size;
+				int word = (int) (bit / LONG_BITS);
+				long mask = 1L << (bit % LONG_BITS);
+				long old;
+				do {
+					old = bits.get(word);
+					if ((old & mask) != 0) {
+						break;
+					}
+				} while (!bits.compareAndSet(word, old, old | mask));
+			}
+			count.incrementAndGet();
+		}
+
+		/**
+		 * @return full or not
+		 */
+		boolean isFull() {
+			return count.get() >= capacity;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param expected the number of strings expected
+	 * @param p the false positive probability of the first stage
+	 */
+	public BloomFilter(final long expected, final double p) {
+		fpp = p;
+		stages = new CopyOnWriteArrayList<Stage>();
+		stages.add(new Stage(Math.max(1, expected), p));
+	}
+
+	/**
+	 * Whether the string may have been added.
+	 * @param s the string
+	 * @return false if the string has not been added
+	 */
+	public boolean mightContain(final String s) {
+		long h1 = hash(s, 0);
+		long h2 = hash(s, DIGITS) | 1;
+		for (Stage stage:stages) {
+			if (stage.mightContain(h1, h2)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Add a string.
+	 * @param s the string
+	 */
+	public void add(final String s) {
+		long h1 = hash(s, 0);
+		long h2 = hash(s, DIGITS) | 1;
+		for (Stage stage:stages) {
+			if (stage.mightContain(h1, h2)) {
+				return;
+			}
+		}
+		Stage last = stages.get(stages.size() - 1);
+		if (last.isFull()) {
+			synchronized (this) {
+				last = stages.get(stages.size() - 1);
+				if (last.isFull()) {
+					last = new Stage(last.capacity * 2,
+							fpp / (1L << stages.size()));
+					stages.add(last);
+				}
+			}
+		}
+		last.add(h1, h2);
+	}
+
+	/**
+	 * Get the number of strings added, strings thought added before
+	 * are not counted.
+	 * @return the number of strings
+	 */
+	public long getCount() {
+		long count = 0;
+		for (Stage stage:stages) {
+			count += stage.count.get();
+		}
+		return count;
+	}
+
+	/**
+	 * Get the number of stages.
+	 * @return the number of stages
+	 */
+	public int getStageCount() {
+		return stages.size();
+	}
+
+	/**
+	 * Get a hash value of a string.
+	 * @param s the string
+	 * @param from the index of the first digit
+	 * @return the hash value
+	 */
+	private static long hash(final String s, final int from) {
+		if (s.length() >= from + DIGITS) {
+			long h = 0;
+			for (int i = from; i < from + DIGITS; i++) {
+				int d = Character.digit(s.charAt(i), HEX);
+				if (d < 0) {
+					return mix(s.hashCode() + from);
+				}
+				h = (h << 4) | d;
+			}
+			return h;
+		}
+		return mix(s.hashCode() + from);
+	}
+
+	/**
+	 * Mix the bits of a hash code.
+	 * @param h the hash code
+	 * @return the mixed value
+	 */
+	private static long mix(final long h) {
+		long z = (h + 1) * MIX;
+		z = (z ^ (z >>> 30)) * MIX2;
+		z = (z ^ (z >>> 27)) * MIX3;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Save the filter to a file. The file is replaced atomically.
+	 * @param path the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void save(final Path path) throws IOException {
+		Files.createDirectories(path.getParent());
+		Path temp = AtomicWriter.temp(path);
+		FileChannel channel = null;
+		boolean done = false;
+		try {
+			channel = AtomicWriter.open(temp);
+			try (ObjectOutputStream out = new ObjectOutputStream(
+					new BufferedOutputStream(
+							AtomicWriter.newOutputStream(channel)))) {
+				out.writeObject(this);
+			}
+			done = AtomicWriter.commit(channel, temp, path, true);
+		} finally {
+			if (!done) {
+				AtomicWriter.discard(channel, temp);
+			}
+		}
+	}
+
+	/**
+	 * Load a filter from a file.
+	 * @param path the file
+	 * @return the filter
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static BloomFilter load(final Path path) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(
+				new BufferedInputStream(Files.newInputStream(path)))) {
+			return (BloomFilter) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package xlong.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+/**
+ * JUnit test class for BloomFilter class.
+ * 
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class BloomFilterTest {
+
+	/** the number of strings to add. */
+	private static final int NUM = 20000;
+
+	/**
+	 * Test.
+	 */
+	@Test
+	public final void testBloomFilter() {
+		BloomFilter filter = new BloomFilter(NUM / 8, 0.01);
+		for (int i = 0; i < NUM; i++) {
+			filter.add(SHA1Util.sha1Checksum("in" + i));
+		}
+		assertTrue(filter.getStageCount() > 1);
+		for (int i = 0; i < NUM; i++) {
+			assertTrue(filter.mightContain(SHA1Util.sha1Checksum("in" + i)));
+		}
+		int positives = 0;
+		for (int i = 0; i < NUM; i++) {
+			if (filter.mightContain(SHA1Util.sha1Checksum("out" + i))) {
+				positives++;
+			}
+		}
+		assertTrue(positives < NUM * 0.02);
+		filter.add("not a checksum");
+		assertTrue(filter.mightContain("not a checksum"));
+		
+		Path file = null;
+		try {
+			file = Files.createTempFile("bloom", ".filter");
+			filter.save(file);
+			BloomFilter loaded = BloomFilter.load(file);
+			assertEquals(filter.getCount(), loaded.getCount());
+			for (int i = 0; i < NUM; i++) {
+				assertTrue(loaded.mightContain(
+						SHA1Util.sha1Checksum("in" + i)));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		} finally {
+			if (file != null) {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
@@ -1,13 +1,16 @@
 package xlong.util;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -15,9 +18,13 @@ import java.util.zip.Inflater;
 /**
  * This class wrap ZLIB compression for convenience.
  * <p>
- * This class can just deal with small files (smaller than around 1.3G).
- * If the outFile is exist, methods in this class will replace the exist one.
- * 
+ * Files are compressed and decompressed in 64 KB chunks read through
+ * a {@link FileChannel}, so a file is never held in memory as a whole.
+ * Byte arrays and strings are held in memory.
+ * If the outFile is exist, methods in this class will not replace it.
+ * Compressed files are written by {@link AtomicWriter}, a file that
+ * waits to be renamed is renamed before it is read.
+ *
  * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
  */
 public final class CompressionUtil {
@@ -29,218 +36,469 @@ public final class CompressionUtil {
 	private CompressionUtil() {
 		// will not be called
 	}
-	
-	/** Maximum number of byte to read in each loop.*/
-	private static final int MAXBYTE = 1024;
-	
+
+	/** Maximum number of byte to read or write in each loop.*/
+	private static final int MAXBYTE = 64 * 1024;
+
+	/** Expected ratio of decompressed size to compressed size. */
+	private static final int RATIO = 3;
+
+	/** The charset of strings. */
+	private static final Charset ISO = Charset.forName("ISO-8859-1");
+
 	/**
 	 * Compress given byte array and output to the given path.
 	 * The output directory must exist.
 	 * If the outFile already exist, this method will do nothing.
-	 * 
+	 *
+	 * @param byteArray the input string
+	 * @param outFile the output file path
+	 * @return written or not, false if the outFile already exist
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static boolean compressByteArray(
+			final byte[] byteArray,
+			final Path outFile)
+					throws IOException {
+		return compressByteArray(byteArray, outFile, false);
+	}
+
+	/**
+	 * Compress given byte array and output to the given path.
+	 * The output directory must exist.
+	 * The file is written by {@link AtomicWriter}, it is never seen
+	 * partly written.
+	 *
 	 * @param byteArray the input string
 	 * @param outFile the output file path
+	 * @param replace replace the outFile or not
+	 * @return written or not, false if the outFile already exist
+	 * and replace is false
 	 * @throws IOException if an I/O error occurs
 	 */
-	public static void compressByteArray(
-			final byte[] byteArray, 
-			final Path outFile) 
+	public static boolean compressByteArray(
+			final byte[] byteArray,
+			final Path outFile,
+			final boolean replace)
 					throws IOException {
-		if (Files.exists(outFile)) {
-			return;
+		if (!replace && AtomicWriter.exists(outFile)) {
+			return false;
 		}
-		
-		Deflater deflater = new Deflater();
-		deflater.setInput(byteArray);
+		long start = Tracer.start();
+		Path temp = AtomicWriter.temp(outFile);
+		FileChannel channel = null;
+		long total;
+		boolean done = false;
+		try {
+			channel = AtomicWriter.open(temp);
+			try (OutputStream out = AtomicWriter.newOutputStream(channel)) {
+				total = deflate(byteArray, out);
+			}
+			done = AtomicWriter.commit(channel, temp, outFile, replace);
+		} finally {
+			if (!done) {
+				AtomicWriter.discard(channel, temp);
+			}
+		}
+		if (!done) {
+			return false;
+		}
+		Metrics.COMPRESS_IN.add(byteArray.length);
+		Metrics.COMPRESS_OUT.add(total);
+		Tracer.end(start, Tracer.COMPRESS, outFile.toString(),
+				byteArray.length);
+		return true;
+	}
 
-		BufferedOutputStream out = 
-				new BufferedOutputStream(
-						new FileOutputStream(outFile.toString()));
-		
-		deflater.finish();
-		byte[] buffer = new byte[MAXBYTE];
-		while (!deflater.finished()) {
-			int count = deflater.deflate(buffer);
-			out.write(buffer, 0, count);
+	/**
+	 * Compress given byte array to a byte array.
+	 *
+	 * @param byteArray the input bytes
+	 * @return the compressed bytes
+	 */
+	public static byte[] compress(final byte[] byteArray) {
+		long start = Tracer.start();
+		ByteArrayOutputStream out =
+				new ByteArrayOutputStream(byteArray.length / 2 + 64);
+		try {
+			deflate(byteArray, out);
+		} catch (IOException e) {
+			// not thrown by ByteArrayOutputStream
+			throw new IllegalStateException(e);
 		}
-		deflater.end();
-		out.close();
+		Metrics.COMPRESS_IN.add(byteArray.length);
+		Metrics.COMPRESS_OUT.add(out.size());
+		Tracer.end(start, Tracer.COMPRESS, null, byteArray.length);
+		return out.toByteArray();
 	}
 
-	
 	/**
 	 * Compress given input file and output to given output file.
 	 * The inFile must exist.
 	 * The output directory must exist.
 	 * If the outFile already exist, this method will do nothing.
-	 * 
+	 * The file is written by {@link AtomicWriter}, it is never seen
+	 * partly written.
+	 *
 	 * @param inFile the input file path
 	 * @param outFile the output file path
+	 * @return written or not, false if the outFile already exist
 	 * @throws IOException if the file is not found or the cannot be read.
 	 */
-	public static void compressFile(
-			final Path inFile, 
-			final Path outFile) 
+	public static boolean compressFile(
+			final Path inFile,
+			final Path outFile)
 					throws IOException {
-		if (Files.exists(outFile)) {
-			return;
+		if (AtomicWriter.exists(outFile)) {
+			return false;
+		}
+		long start = Tracer.start();
+		try (FileChannel in = FileChannel.open(inFile,
+				StandardOpenOption.READ)) {
+			Path temp = AtomicWriter.temp(outFile);
+			FileChannel channel = null;
+			long read = 0;
+			long total = 0;
+			boolean done = false;
+			Deflater deflater = new Deflater();
+			try {
+				channel = AtomicWriter.open(temp);
+				try (OutputStream out =
+						AtomicWriter.newOutputStream(channel)) {
+					ByteBuffer input = ByteBuffer.allocate(
+							(int) Math.min(MAXBYTE, in.size() + 1));
+					byte[] buffer = new byte[MAXBYTE];
+					int n;
+					while ((n = in.read(input)) != -1) {
+						deflater.setInput(input.array(), 0, n);
+						read += n;
+						while (!deflater.needsInput()) {
+							total += write(deflater.deflate(buffer), buffer,
+									out);
+						}
+						input.clear();
+					}
+					deflater.finish();
+					while (!deflater.finished()) {
+						total += write(deflater.deflate(buffer), buffer, out);
+					}
+				}
+				done = AtomicWriter.commit(channel, temp, outFile, false);
+			} finally {
+				deflater.end();
+				if (!done) {
+					AtomicWriter.discard(channel, temp);
+				}
+			}
+			if (!done) {
+				return false;
+			}
+			Metrics.COMPRESS_IN.add(read);
+			Metrics.COMPRESS_OUT.add(total);
+			Tracer.end(start, Tracer.COMPRESS, outFile.toString(), read);
+			return true;
 		}
-		
-		byte[] data = toByteArray(inFile);
-		compressByteArray(data, outFile);
 	}
-	
+
 	/**
 	 * Compress given string and output to the given path.
 	 * The output directory must exist.
 	 * If the outFile already exist, this method will do nothing.
-	 * 
+	 *
 	 * @param string the input string
 	 * @param outFile the output file name
 	 * @throws IOException if an I/O error occurs
 	 */
 	public static void compressString(
-			final String string, 
-			final Path outFile) 
+			final String string,
+			final Path outFile)
 					throws IOException {
-		if (Files.exists(outFile)) {
-			return;
-		}
-		
-		byte[] data = string.getBytes("ISO-8859-1");
-		compressByteArray(data, outFile);
-	}	
+		compressByteArray(string.getBytes(ISO), outFile);
+	}
 
 	/**
 	 * Decompress given input file and output to given output file.
 	 * The output directory must exist.
 	 * If the inFile can not decompress, this method will fail.
 	 * If the outFile already exist, this method will fail.
-	 * 
+	 * A partly written outFile is deleted on failure.
+	 *
 	 * @param inFile the input file name
 	 * @param outFile the output file name
 	 * @throws IOException if an I/O error occurs
 	 * @return success or not
-	 */	
+	 */
 	public static boolean decompressToFile(
-			final Path inFile, 
-			final Path outFile) 
+			final Path inFile,
+			final Path outFile)
 					throws IOException {
-		if (Files.exists(outFile)) {
-			return false;
-		}
-		
-		byte[] data = toByteArray(inFile);
-		Inflater inflater = new Inflater();
-		inflater.setInput(data);
-
-		BufferedOutputStream out = 
-				new BufferedOutputStream(
-						new FileOutputStream(outFile.toString()));
-		
-		byte[] buffer = new byte[MAXBYTE];
-		while (!inflater.finished()) {
-			int count;
+		ready(inFile);
+		long start = Tracer.start();
+		try (FileChannel in = FileChannel.open(inFile,
+				StandardOpenOption.READ)) {
+			OutputStream out = create(outFile);
+			if (out == null) {
+				return false;
+			}
+			long read = 0;
+			long total = 0;
+			boolean done = false;
+			Inflater inflater = new Inflater();
 			try {
-				count = inflater.inflate(buffer);
+				ByteBuffer input = ByteBuffer.allocate(
+						(int) Math.min(MAXBYTE, in.size() + 1));
+				byte[] buffer = new byte[MAXBYTE];
+				int n;
+				while (!inflater.finished() && (n = in.read(input)) != -1) {
+					inflater.setInput(input.array(), 0, n);
+					read += n;
+					while (!inflater.finished() && !inflater.needsInput()) {
+						total += write(inflate(inflater, buffer), buffer, out);
+					}
+					input.clear();
+				}
+				if (!inflater.finished()) {
+					throw new DataFormatException("unexpected end of "
+							+ inFile);
+				}
+				out.close();
+				done = true;
 			} catch (DataFormatException e) {
 				e.printStackTrace();
-				out.close();
 				return false;
+			} finally {
+				inflater.end();
+				if (!done) {
+					abort(out, outFile);
+				}
 			}
-			out.write(buffer, 0, count);
+			Metrics.DECOMPRESS_IN.add(read);
+			Metrics.DECOMPRESS_OUT.add(total);
+			Tracer.end(start, Tracer.DECOMPRESS, inFile.toString(), total);
+			return true;
 		}
-		inflater.end();
-		out.close();
-		return true;
 	}
-	
+
 	/**
 	 * Decompress given input file and output to a byte array.
 	 * If the inFile can not decompress, this method will return null.
-	 * 
+	 *
 	 * @param inFile the input file path
 	 * @return the output byte array
 	 * @throws IOException if an I/O error occurs
-	 */	
+	 */
 	public static byte[] decompressToByteArray(
-			final Path inFile) 
+			final Path inFile)
 					throws IOException {
-		
+		ready(inFile);
+		long start = Tracer.start();
 		byte[] data = toByteArray(inFile);
+		ByteArrayOutputStream out =
+				new ByteArrayOutputStream(data.length * RATIO + 64);
 		Inflater inflater = new Inflater();
-		inflater.setInput(data);
-		
-		StringBuilder outString = new StringBuilder();
-		
-		byte[] buffer = new byte[MAXBYTE];
-		while (!inflater.finished()) {
-			int count;
+		try {
+			inflater.setInput(data);
+			byte[] buffer = new byte[MAXBYTE];
+			while (!inflater.finished()) {
+				if (inflater.needsInput()) {
+					throw new DataFormatException("unexpected end of "
+							+ inFile);
+				}
+				write(inflate(inflater, buffer), buffer, out);
+			}
+		} catch (DataFormatException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			inflater.end();
+		}
+		Metrics.DECOMPRESS_IN.add(data.length);
+		Metrics.DECOMPRESS_OUT.add(out.size());
+		Tracer.end(start, Tracer.DECOMPRESS, inFile.toString(), out.size());
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decompress given input file and calculate the SHA-1 checksum of
+	 * the output, without keeping the output.
+	 * If the inFile can not decompress, or has bytes after the
+	 * compressed data, this method will return null.
+	 *
+	 * @param inFile the input file path
+	 * @return the hexadecimal checksum of the output
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static String decompressChecksum(
+			final Path inFile)
+					throws IOException {
+		ready(inFile);
+		long start = Tracer.start();
+		try (FileChannel in = FileChannel.open(inFile,
+				StandardOpenOption.READ)) {
+			MessageDigest sha1 = SHA1Util.newDigest();
+			long read = 0;
+			long total = 0;
+			Inflater inflater = new Inflater();
 			try {
-				count = inflater.inflate(buffer);
+				ByteBuffer input = ByteBuffer.allocate(
+						(int) Math.min(MAXBYTE, in.size() + 1));
+				byte[] buffer = new byte[MAXBYTE];
+				int n;
+				while (!inflater.finished() && (n = in.read(input)) != -1) {
+					inflater.setInput(input.array(), 0, n);
+					read += n;
+					while (!inflater.finished() && !inflater.needsInput()) {
+						int count = inflate(inflater, buffer);
+						sha1.update(buffer, 0, count);
+						total += count;
+					}
+					input.clear();
+				}
+				if (!inflater.finished() || inflater.getRemaining() > 0
+						|| read < in.size()) {
+					return null;
+				}
 			} catch (DataFormatException e) {
-				e.printStackTrace();
+				// not compressed
 				return null;
+			} finally {
+				inflater.end();
 			}
-			outString.append(new String(buffer, 0, count, "ISO-8859-1"));
+			Metrics.DECOMPRESS_IN.add(read);
+			Metrics.DECOMPRESS_OUT.add(total);
+			Metrics.HASHED.add(total);
+			Tracer.end(start, Tracer.DECOMPRESS, inFile.toString(), total);
+			return SHA1Util.toHexString(sha1.digest());
 		}
-		inflater.end();
-		return outString.toString().getBytes("ISO-8859-1");
 	}
-	
+
 	/**
 	 * Decompress given input file and output to a string.
 	 * If the inFile can not decompress, this method will return null.
-	 * 
+	 *
 	 * @param inFile the input file path
 	 * @return the output string
 	 * @throws IOException if an I/O error occurs
-	 */	
+	 */
 	public static String decompressToString(
-			final Path inFile) 
+			final Path inFile)
 					throws IOException {
-		
-		byte[] data = toByteArray(inFile);
-		Inflater inflater = new Inflater();
-		inflater.setInput(data);
-		
-		StringBuilder outString = new StringBuilder();
-		
-		byte[] buffer = new byte[MAXBYTE];
-		while (!inflater.finished()) {
-			int count;
-			try {
-				count = inflater.inflate(buffer);
-			} catch (DataFormatException e) {
-				e.printStackTrace();
-				return null;
-			}
-			outString.append(new String(buffer, 0, count, "ISO-8859-1"));
+		byte[] data = decompressToByteArray(inFile);
+		if (data == null) {
+			return null;
 		}
-		inflater.end();
-		return outString.toString();
+		return new String(data, ISO);
 	}
-	
+
+	/**
+	 * Rename a file written by {@link AtomicWriter} that waits to be
+	 * renamed, before it is read.
+	 * @param inFile the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void ready(final Path inFile) throws IOException {
+		if (AtomicWriter.isPending(inFile)) {
+			AtomicWriter.flush();
+		}
+	}
+
 	/**
 	 * Reads a file and saves its content into a byte array.
 	 * @param filePath the path of the file to read
 	 * @return the byte array saves its content
 	 * @throws IOException if an I/O error occurs
 	 */
-	private static byte[] toByteArray(final Path filePath) 
-			throws IOException {  
-	        byte[] buffer = null;  
-            File file = new File(filePath.toString());  
-            FileInputStream fis = new FileInputStream(file);  
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();  
-            byte[] b = new byte[MAXBYTE];  
-            int n;  
-            while ((n = fis.read(b)) != -1) {  
-                bos.write(b, 0, n);  
-            }  
-            fis.close();  
-            bos.close();  
-            buffer = bos.toByteArray();     
-	        return buffer;  
-	    }  
+	private static byte[] toByteArray(final Path filePath)
+			throws IOException {
+		return Files.readAllBytes(filePath);
+	}
+
+	/**
+	 * Create a file only if it does not exist.
+	 * @param outFile the file
+	 * @return the stream to write, null if the file already exist
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static OutputStream create(final Path outFile)
+			throws IOException {
+		try {
+			return Files.newOutputStream(outFile,
+					StandardOpenOption.CREATE_NEW);
+		} catch (FileAlreadyExistsException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Close and delete a partly written file.
+	 * @param out the stream of the file
+	 * @param outFile the file
+	 */
+	private static void abort(final OutputStream out, final Path outFile) {
+		try {
+			out.close();
+		} catch (IOException e) {
+			// deleted anyway
+		}
+		try {
+			Files.deleteIfExists(outFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Compress a byte array to a stream.
+	 * @param byteArray the input bytes
+	 * @param out the stream
+	 * @return the number of bytes written
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static long deflate(final byte[] byteArray,
+			final OutputStream out) throws IOException {
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(byteArray);
+			deflater.finish();
+			byte[] buffer = new byte[Math.min(MAXBYTE,
+					byteArray.length / 2 + 64)];
+			long total = 0;
+			while (!deflater.finished()) {
+				total += write(deflater.deflate(buffer), buffer, out);
+			}
+			return total;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Inflate into a buffer.
+	 * @param inflater the inflater
+	 * @param buffer the buffer
+	 * @return the number of bytes inflated
+	 * @throws DataFormatException if the data is not ZLIB data
+	 */
+	private static int inflate(final Inflater inflater, final byte[] buffer)
+			throws DataFormatException {
+		int count = inflater.inflate(buffer);
+		if (count == 0 && inflater.needsDictionary()) {
+			throw new DataFormatException("dictionary needed");
+		}
+		return count;
+	}
+
+	/**
+	 * Write the start of a buffer.
+	 * @param count the number of bytes to write
+	 * @param buffer the buffer
+	 * @param out the stream
+	 * @return the number of bytes written
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static int write(final int count, final byte[] buffer,
+			final OutputStream out) throws IOException {
+		out.write(buffer, 0, count);
+		return count;
+	}
 }
@@ -1,6 +1,8 @@
 package xlong.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.io.BufferedWriter;
@@ -72,6 +74,8 @@ public class CompressionUtilTest {
 				Files.deleteIfExists(dir.resolve("f.test_new"));
 				Files.deleteIfExists(dir.resolve("f.test.zlib"));
 				Files.deleteIfExists(dir.resolve("string.test"));
+				Files.deleteIfExists(dir.resolve("cut.test.zlib"));
+				Files.deleteIfExists(dir.resolve("cut.test"));
 				Files.deleteIfExists(dir);
 			} catch (IOException e) {
 				e.printStackTrace();
@@ -156,4 +160,29 @@ public class CompressionUtilTest {
 			assertEquals(oriBytes[i], newBytes[i]);
 		}
 	}
+
+	/**
+	 * Test method for
+	 * {@link xlong.util.CompressionUtil#decompressToFile(Path, Path)}
+	 * with truncated input.
+	 * No partly written file is left.
+	 */
+	@Test
+	public final void testDecTruncated() {
+		Path zipPath = Paths.get("data/test/cut.test.zlib");
+		Path newPath = Paths.get("data/test/cut.test");
+		try {
+			byte[] bytes = CompressionUtil.compress(
+					Files.readAllBytes(Paths.get("data/test/f.test")));
+			byte[] cut = new byte[bytes.length / 2];
+			System.arraycopy(bytes, 0, cut, 0, cut.length);
+			Files.write(zipPath, cut);
+			assertFalse(CompressionUtil.decompressToFile(zipPath, newPath));
+			assertFalse(Files.exists(newPath));
+			assertNull(CompressionUtil.decompressToByteArray(zipPath));
+		} catch (IOException e) {
+			e.printStackTrace();
+			org.junit.Assert.fail();
+		}
+	}
 }
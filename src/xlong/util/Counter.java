@@ -0,0 +1,71 @@
+package xlong.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter for many threads adding at the same time.
+ * <p>
+ * The value is split into cells, each thread adds to the cell chosen
+ * by its id, and the cells are summed when read. Cells are one cache
+ * line apart, so threads on different cells do not slow each other.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Counter {
+
+	/** the number of longs in a cache line. */
+	private static final int PAD = 8;
+
+	/** the number of cells, a power of two. */
+	private static final int CELLS = Integer.highestOneBit(
+			Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1))
+			<< 1;
+
+	/** constant to spread thread ids. */
+	private static final int SPREAD = 0x9E3779B9;
+
+	/** the cells. */
+	private final AtomicLongArray cells = new AtomicLongArray(CELLS * PAD);
+
+	/**
+	 * Add to the counter.
+	 * @param x the value to add
+	 */
+	public void add(final long x) {
+		int h = (int) Thread.currentThread().getId() * SPREAD;
+		cells.getAndAdd(((h >>> 16) & (CELLS - 1)) * PAD, x);
+	}
+
+	/**
+	 * Add one to the counter.
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * Get the value. Adds at the same time may be missed.
+	 * @return the sum of all cells
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < CELLS; i++) {
+			sum += cells.get(i * PAD);
+		}
+		return sum;
+	}
+
+	/**
+	 * Set the value to zero. Adds at the same time may be lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < CELLS; i++) {
+			cells.set(i * PAD, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(sum());
+	}
+}
@@ -0,0 +1,195 @@
+package xlong.util;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads for work on many files, where most time is spent waiting
+ * for the file system.
+ * <p>
+ * On Java 21 or later, if the system property "lxfile.virtual" is set,
+ * each file gets its own virtual thread, and at most "lxfile.virtual"
+ * files are in progress at the same time ("true" means
+ * {@value #DEFAULT_VIRTUAL}). Hundreds of blocking calls can then wait
+ * at the same time without hundreds of platform threads.
+ * Otherwise a fixed number of platform threads is used.
+ * <p>
+ * Virtual threads are reached through {@link VirtualThreads}, by
+ * reflection in the Java 7 build and directly in the Java 21 version
+ * of the multi-release JAR.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class FileExecutors {
+
+	/** the default number of files in progress with virtual threads. */
+	public static final int DEFAULT_VIRTUAL = 256;
+
+	/** factory of virtual threads, null if not supported. */
+	private static final ThreadFactory VIRTUAL_FACTORY =
+			VirtualThreads.factory();
+
+	/** files in progress with virtual threads, 0 if not used. */
+	private static volatile int virtual;
+
+	static {
+		String value = System.getProperty("lxfile.virtual");
+		if (value != null && !"false".equals(value)) {
+			try {
+				setVirtual("true".equals(value) ? DEFAULT_VIRTUAL
+						: Integer.parseInt(value));
+			} catch (NumberFormatException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Private constructor to make sure no instance of this class will be
+	 * created.
+	 */
+	private FileExecutors() {
+		// will not be called
+	}
+
+	/**
+	 * @return virtual threads are supported by this Java or not
+	 */
+	public static boolean isVirtualSupported() {
+		return VIRTUAL_FACTORY != null;
+	}
+
+	/**
+	 * @return the number of files in progress with virtual threads,
+	 * 0 if virtual threads are not used
+	 */
+	public static int getVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Use virtual threads or not. Ignored if they are not supported.
+	 * @param cap the number of files in progress, 0 not to use them
+	 */
+	public static void setVirtual(final int cap) {
+		virtual = isVirtualSupported() ? Math.max(0, cap) : 0;
+	}
+
+	/**
+	 * Create an executor runs one task per file.
+	 * @param threads the number of platform threads,
+	 * if virtual threads are not used
+	 * @return the executor
+	 */
+	public static ExecutorService newExecutor(final int threads) {
+		int cap = virtual;
+		if (cap > 0) {
+			ExecutorService executor = VirtualThreads.newExecutor();
+			if (executor != null) {
+				return new CappedExecutor(executor, cap);
+			}
+		}
+		return Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Create an unstarted thread, virtual if virtual threads are used,
+	 * a daemon platform thread otherwise.
+	 * @param name the name
+	 * @param task the task to run
+	 * @return the thread
+	 */
+	public static Thread newThread(final String name, final Runnable task) {
+		Thread t;
+		if (virtual > 0) {
+			t = VIRTUAL_FACTORY.newThread(task);
+		} else {
+			t = new Thread(task);
+			t.setDaemon(true);
+		}
+		t.setName(name);
+		return t;
+	}
+
+	/**
+	 * Executor limits the tasks running at the same time.
+	 * Submitting waits while the limit is reached, so tasks are not
+	 * started faster than they finish.
+	 */
+	public static final class CappedExecutor extends AbstractExecutorService {
+
+		/** the executor runs the tasks. */
+		private final ExecutorService executor;
+
+		/** permits of running tasks. */
+		private final Semaphore running;
+
+		/**
+		 * Constructor.
+		 * @param inExecutor the executor runs the tasks
+		 * @param cap the number of tasks running at the same time
+		 */
+		public CappedExecutor(final ExecutorService inExecutor,
+				final int cap) {
+			executor = inExecutor;
+			running = new Semaphore(cap);
+		}
+
+		@Override
+		public void execute(final Runnable command) {
+			try {
+				running.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException(e);
+			}
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							command.run();
+						} finally {
+							running.release();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				running.release();
+				throw e;
+			}
+		}
+
+		@Override
+		public void shutdown() {
+			executor.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return executor.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return executor.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return executor.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(final long timeout,
+				final TimeUnit unit) throws InterruptedException {
+			return executor.awaitTermination(timeout, unit);
+		}
+	}
+}
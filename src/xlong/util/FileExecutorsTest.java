@@ -0,0 +1,94 @@
+package xlong.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * JUnit test class for FileExecutors class.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class FileExecutorsTest {
+
+	/** the number of tasks. */
+	private static final int NUM = 50;
+
+	/** the number of tasks running at the same time. */
+	private static final int CAP = 3;
+
+	/**
+	 * Test the cap of running tasks.
+	 * @throws InterruptedException if interrupted
+	 * @throws ExecutionException if a task fails
+	 */
+	@Test
+	public final void testCappedExecutor() throws InterruptedException,
+			ExecutionException {
+		ExecutorService pool = new FileExecutors.CappedExecutor(
+				Executors.newCachedThreadPool(), CAP);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger most = new AtomicInteger();
+		List<Callable<Integer>> tasks = new ArrayList<>();
+		for (int i = 0; i < NUM; i++) {
+			final int id = i;
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws InterruptedException {
+					int n = running.incrementAndGet();
+					int m;
+					do {
+						m = most.get();
+					} while (n > m && !most.compareAndSet(m, n));
+					Thread.sleep(1);
+					running.decrementAndGet();
+					return id;
+				}
+			});
+		}
+		List<Future<Integer>> futures = pool.invokeAll(tasks);
+		for (int i = 0; i < NUM; i++) {
+			assertEquals(i, (int) futures.get(i).get());
+		}
+		assertTrue(most.get() <= CAP);
+		pool.shutdown();
+	}
+
+	/**
+	 * Test virtual threads are only used when supported.
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	public final void testVirtual() throws InterruptedException {
+		int old = FileExecutors.getVirtual();
+		try {
+			FileExecutors.setVirtual(CAP);
+			assertEquals(FileExecutors.isVirtualSupported() ? CAP : 0,
+					FileExecutors.getVirtual());
+			final AtomicInteger done = new AtomicInteger();
+			Thread t = FileExecutors.newThread("test", new Runnable() {
+				@Override
+				public void run() {
+					done.incrementAndGet();
+				}
+			});
+			t.start();
+			t.join();
+			assertEquals(1, done.get());
+			ExecutorService pool = FileExecutors.newExecutor(1);
+			pool.shutdown();
+		} finally {
+			FileExecutors.setVirtual(old);
+		}
+	}
+}
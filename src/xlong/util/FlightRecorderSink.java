@@ -0,0 +1,31 @@
+package xlong.util;
+
+/**
+ * Sink commits a Flight Recorder event per span, with the name of the
+ * step, its subject, its size and its duration.
+ * <p>
+ * Flight Recorder is only available on Java 11 or later, this version
+ * for older ones is never active. The Java 11 version in the
+ * multi-release JAR is active while a recording enables the event
+ * "xlong.Span", for example when started with
+ * -XX:StartFlightRecording or by jcmd JFR.start.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class FlightRecorderSink implements TraceSink {
+
+	@Override
+	public boolean isActive() {
+		return false;
+	}
+
+	@Override
+	public void span(final Tracer.Span span) {
+		// no Flight Recorder
+	}
+
+	@Override
+	public void flush() {
+		// nothing kept
+	}
+}
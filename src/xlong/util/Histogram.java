@@ -0,0 +1,150 @@
+package xlong.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values with logarithmic buckets,
+ * safe to use from several threads.
+ * <p>
+ * Each power of two is split into four buckets, so a value is known
+ * within 25%, whatever its size. Recording a value costs a few
+ * atomic adds and no allocation.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Histogram {
+
+	/** the bits of a value used to choose the bucket in a power of two. */
+	private static final int SUB_BITS = 2;
+
+	/** the number of buckets in a power of two. */
+	private static final int SUB = 1 << SUB_BITS;
+
+	/** the number of buckets. */
+	private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB;
+
+	/** the number of values in each bucket. */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	/** the number of values. */
+	private final Counter count = new Counter();
+
+	/** the sum of values. */
+	private final Counter total = new Counter();
+
+	/** the maximum value. */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a value.
+	 * @param value the value, negative values are taken as 0
+	 */
+	public void record(final long value) {
+		long v = Math.max(0, value);
+		buckets.incrementAndGet(index(v));
+		count.increment();
+		total.add(v);
+		long m;
+		do {
+			m = max.get();
+		} while (v > m && !max.compareAndSet(m, v));
+	}
+
+	/**
+	 * @return the number of values
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the sum of values
+	 */
+	public long getTotal() {
+		return total.sum();
+	}
+
+	/**
+	 * @return the mean of values, 0 if none
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) total.sum() / n;
+	}
+
+	/**
+	 * @return the maximum value, 0 if none
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get a percentile. The result is the largest value in the bucket
+	 * of the percentile, no more than the maximum value.
+	 * @param p the percentile, from 0 to 100
+	 * @return the value, 0 if none
+	 */
+	public long getPercentile(final double p) {
+		long n = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			n += counts[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(Math.min(100, Math.max(0, p)) / 100 * n);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(1, rank)) {
+				long upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1
+						: Long.MAX_VALUE;
+				return Math.min(upper, max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Forget all values. Values recorded at the same time may be lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		total.reset();
+		max.set(0);
+	}
+
+	/**
+	 * Get the bucket of a value.
+	 * @param v the value, not negative
+	 * @return the index of the bucket
+	 */
+	static int index(final long v) {
+		if (v < SUB) {
+			return (int) v;
+		}
+		int exp = Long.SIZE - 1 - Long.numberOfLeadingZeros(v);
+		int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+		return (exp - SUB_BITS + 1) * SUB + sub;
+	}
+
+	/**
+	 * Get the smallest value of a bucket.
+	 * @param index the index of the bucket
+	 * @return the smallest value
+	 */
+	static long lowerBound(final int index) {
+		if (index < SUB) {
+			return index;
+		}
+		int exp = index / SUB + SUB_BITS - 1;
+		return (long) (SUB + index % SUB) << (exp - SUB_BITS);
+	}
+}
@@ -0,0 +1,164 @@
+package xlong.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache for many threads with a bounded number of entries.
+ * <p>
+ * The entries are split into segments by the hash of the key, each
+ * segment is locked alone. When a segment is full, the entry used
+ * least recently in it is evicted, so the cache never holds more than
+ * its capacity, rounded up to a multiple of the number of segments.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class LruCache<K, V> {
+
+	/**
+	 * A segment, in order of access.
+	 * @param <K> the type of keys
+	 * @param <V> the type of values
+	 */
+	private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+
+		/** for serialization. */
+		private static final long serialVersionUID = 3462791608419504783L;
+
+		/** the maximum number of entries. */
+		private final int max;
+
+		/**
+		 * Constructor.
+		 * @param inMax the maximum number of entries
+		 */
+		Segment(final int inMax) {
+			super(16, 0.75f, true);
+			max = inMax;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+			return size() > max;
+		}
+	}
+
+	/** the segments. */
+	private final Segment<K, V>[] segments;
+
+	/** the maximum number of entries. */
+	private final int capacity;
+
+	/**
+	 * Constructor.
+	 * @param inCapacity the maximum number of entries
+	 * @param concurrency the number of segments
+	 */
+	@SuppressWarnings("unchecked")
+	public LruCache(final int inCapacity, final int concurrency) {
+		int n = Math.max(1, Math.min(concurrency, inCapacity));
+		int max = Math.max(1, (inCapacity + n - 1) / n);
+		segments = new Segment[n];
+		for (int i = 0; i < n; i++) {
+			segments[i] = new Segment<K, V>(max);
+		}
+		capacity = max * n;
+	}
+
+	/**
+	 * Get the segment of a key.
+	 * @param key the key
+	 * @return the segment
+	 */
+	private Segment<K, V> segment(final java.lang.Object key) {
+		return segments[(key.hashCode() & Integer.MAX_VALUE)
+				% segments.length];
+	}
+
+	/**
+	 * Get a value and mark it used.
+	 * @param key the key
+	 * @return the value, null if not cached
+	 */
+	public V get(final K key) {
+		Segment<K, V> s = segment(key);
+		synchronized (s) {
+			return s.get(key);
+		}
+	}
+
+	/**
+	 * Put a value.
+	 * @param key the key
+	 * @param value the value
+	 * @return the value replaced, null if none
+	 */
+	public V put(final K key, final V value) {
+		Segment<K, V> s = segment(key);
+		synchronized (s) {
+			return s.put(key, value);
+		}
+	}
+
+	/**
+	 * Put a value if the key is not cached.
+	 * @param key the key
+	 * @param value the value
+	 * @return the value already cached, null if put
+	 */
+	public V putIfAbsent(final K key, final V value) {
+		Segment<K, V> s = segment(key);
+		synchronized (s) {
+			V old = s.get(key);
+			if (old == null) {
+				s.put(key, value);
+			}
+			return old;
+		}
+	}
+
+	/**
+	 * Remove a value.
+	 * @param key the key
+	 * @return the value removed, null if not cached
+	 */
+	public V remove(final K key) {
+		Segment<K, V> s = segment(key);
+		synchronized (s) {
+			return s.remove(key);
+		}
+	}
+
+	/**
+	 * Remove all values.
+	 */
+	public void clear() {
+		for (Segment<K, V> s:segments) {
+			synchronized (s) {
+				s.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of values cached
+	 */
+	public int size() {
+		int n = 0;
+		for (Segment<K, V> s:segments) {
+			synchronized (s) {
+				n += s.size();
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return the maximum number of values cached
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+}
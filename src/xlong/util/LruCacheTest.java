@@ -0,0 +1,52 @@
+package xlong.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * JUnit test class for LruCache class.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class LruCacheTest {
+
+	/**
+	 * Test the least recently used entry is evicted.
+	 */
+	@Test
+	public final void testEvict() {
+		LruCache<String, Integer> cache = new LruCache<String, Integer>(3, 1);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		cache.put("c", 3);
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		cache.put("d", 4);
+		assertNull(cache.get("b"));
+		assertEquals(Integer.valueOf(1), cache.get("a"));
+		assertEquals(3, cache.size());
+		assertEquals(Integer.valueOf(3), cache.putIfAbsent("c", 5));
+		assertEquals(Integer.valueOf(3), cache.remove("c"));
+		assertNull(cache.putIfAbsent("c", 5));
+		assertEquals(Integer.valueOf(5), cache.get("c"));
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	/**
+	 * Test the cache never holds more than its capacity.
+	 */
+	@Test
+	public final void testBound() {
+		LruCache<String, Integer> cache =
+				new LruCache<String, Integer>(100, 8);
+		assertEquals(104, cache.getCapacity());
+		for (int i = 0; i < 10000; i++) {
+			cache.put("key" + i, i);
+		}
+		assertTrue(cache.size() <= cache.getCapacity());
+		assertTrue(cache.size() > 0);
+	}
+}
@@ -0,0 +1,285 @@
+package xlong.util;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of the storage.
+ * <p>
+ * Metrics are always on, recording costs a few atomic adds on
+ * striped cells. They can be read as text by {@link #dump(Appendable)},
+ * or through JMX after {@link #register()}, under the name
+ * {@value #NAME}.
+ * <p>
+ * Latencies are recorded in nanoseconds:
+ * <pre>
+ * long start = System.nanoTime();
+ * ...
+ * Metrics.LOAD.record(System.nanoTime() - start);
+ * </pre>
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Metrics implements MetricsMBean {
+
+	/** the JMX name. */
+	public static final String NAME = "xlong.file:type=Metrics";
+
+	/** bytes hashed. */
+	public static final Counter HASHED = new Counter();
+
+	/** bytes compressed, before compression. */
+	public static final Counter COMPRESS_IN = new Counter();
+
+	/** bytes compressed, after compression. */
+	public static final Counter COMPRESS_OUT = new Counter();
+
+	/** bytes decompressed, before decompression. */
+	public static final Counter DECOMPRESS_IN = new Counter();
+
+	/** bytes decompressed, after decompression. */
+	public static final Counter DECOMPRESS_OUT = new Counter();
+
+	/** objects written. */
+	public static final Counter WRITTEN = new Counter();
+
+	/** objects not written because they exist. */
+	public static final Counter DEDUPLICATED = new Counter();
+
+	/** files and directories forced to the disk. */
+	public static final Counter SYNCED = new Counter();
+
+	/** containers found in the container pool. */
+	public static final Counter POOL_HITS = new Counter();
+
+	/** containers not found in the container pool. */
+	public static final Counter POOL_MISSES = new Counter();
+
+	/** latencies of loading containers. */
+	public static final Histogram LOAD = new Histogram();
+
+	/** latencies of creating blobs. */
+	public static final Histogram BLOB_CREATE = new Histogram();
+
+	/** latencies of restoring blobs. */
+	public static final Histogram BLOB_RESTORE = new Histogram();
+
+	/** nanoseconds in a microsecond. */
+	private static final long MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+
+	/** the registered instance, null if not registered. */
+	private static Metrics registered;
+
+	/**
+	 * Constructor, only for JMX.
+	 */
+	private Metrics() {
+	}
+
+	/**
+	 * Register the metrics to the platform MBean server.
+	 * Registering again does nothing.
+	 * @return success or not
+	 */
+	public static synchronized boolean register() {
+		if (registered != null) {
+			return true;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			Metrics metrics = new Metrics();
+			server.registerMBean(metrics, new ObjectName(NAME));
+			registered = metrics;
+			return true;
+		} catch (JMException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Write all metrics as text, one metric per line.
+	 * @param out where to write
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void dump(final Appendable out) throws IOException {
+		line(out, "bytes.hashed", HASHED.sum());
+		line(out, "bytes.compressed.in", COMPRESS_IN.sum());
+		line(out, "bytes.compressed.out", COMPRESS_OUT.sum());
+		line(out, "bytes.decompressed.in", DECOMPRESS_IN.sum());
+		line(out, "bytes.decompressed.out", DECOMPRESS_OUT.sum());
+		out.append(String.format(Locale.ROOT, "compression.ratio %.3f%n",
+				ratio(COMPRESS_OUT.sum(), COMPRESS_IN.sum())));
+		line(out, "objects.written", WRITTEN.sum());
+		line(out, "objects.deduplicated", DEDUPLICATED.sum());
+		line(out, "files.synced", SYNCED.sum());
+		line(out, "pool.hits", POOL_HITS.sum());
+		line(out, "pool.misses", POOL_MISSES.sum());
+		out.append(String.format(Locale.ROOT, "pool.hitRate %.3f%n",
+				hitRate()));
+		latency(out, "container.load", LOAD);
+		latency(out, "blob.create", BLOB_CREATE);
+		latency(out, "blob.restore", BLOB_RESTORE);
+	}
+
+	/**
+	 * Get all metrics as text.
+	 * @return the text
+	 */
+	public static String text() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			dump(sb);
+		} catch (IOException e) {
+			// not thrown by StringBuilder
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Set all metrics to zero.
+	 */
+	public static void resetAll() {
+		Counter[] counters = {HASHED, COMPRESS_IN, COMPRESS_OUT,
+				DECOMPRESS_IN, DECOMPRESS_OUT, WRITTEN, DEDUPLICATED,
+				SYNCED, POOL_HITS, POOL_MISSES};
+		for (Counter c:counters) {
+			c.reset();
+		}
+		LOAD.reset();
+		BLOB_CREATE.reset();
+		BLOB_RESTORE.reset();
+	}
+
+	/**
+	 * Write a line of a counter.
+	 * @param out where to write
+	 * @param name the name
+	 * @param value the value
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void line(final Appendable out, final String name,
+			final long value) throws IOException {
+		out.append(name).append(' ').append(Long.toString(value))
+			.append(System.lineSeparator());
+	}
+
+	/**
+	 * Write a line of a latency histogram, in microseconds.
+	 * @param out where to write
+	 * @param name the name
+	 * @param h the histogram
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void latency(final Appendable out, final String name,
+			final Histogram h) throws IOException {
+		out.append(String.format(Locale.ROOT,
+				"%s count=%d mean=%.1fus p50=%dus p99=%dus max=%dus%n",
+				name, h.getCount(), h.getMean() / MICRO,
+				h.getPercentile(50) / MICRO, h.getPercentile(99) / MICRO,
+				h.getMax() / MICRO));
+	}
+
+	/**
+	 * @param part the part
+	 * @param whole the whole
+	 * @return part divided by whole, 0 if whole is 0
+	 */
+	private static double ratio(final long part, final long whole) {
+		return whole == 0 ? 0 : (double) part / whole;
+	}
+
+	/**
+	 * @return hits divided by lookups of the container pool
+	 */
+	private static double hitRate() {
+		long hits = POOL_HITS.sum();
+		return ratio(hits, hits + POOL_MISSES.sum());
+	}
+
+	@Override
+	public long getBytesHashed() {
+		return HASHED.sum();
+	}
+
+	@Override
+	public long getBytesCompressed() {
+		return COMPRESS_IN.sum();
+	}
+
+	@Override
+	public long getBytesDecompressed() {
+		return DECOMPRESS_OUT.sum();
+	}
+
+	@Override
+	public double getCompressionRatio() {
+		return ratio(COMPRESS_OUT.sum(), COMPRESS_IN.sum());
+	}
+
+	@Override
+	public long getObjectsWritten() {
+		return WRITTEN.sum();
+	}
+
+	@Override
+	public long getObjectsDeduplicated() {
+		return DEDUPLICATED.sum();
+	}
+
+	@Override
+	public long getFilesSynced() {
+		return SYNCED.sum();
+	}
+
+	@Override
+	public double getPoolHitRate() {
+		return hitRate();
+	}
+
+	@Override
+	public double getLoadMean() {
+		return LOAD.getMean() / MICRO;
+	}
+
+	@Override
+	public long getLoad99() {
+		return LOAD.getPercentile(99) / MICRO;
+	}
+
+	@Override
+	public double getBlobCreateMean() {
+		return BLOB_CREATE.getMean() / MICRO;
+	}
+
+	@Override
+	public long getBlobCreate99() {
+		return BLOB_CREATE.getPercentile(99) / MICRO;
+	}
+
+	@Override
+	public double getBlobRestoreMean() {
+		return BLOB_RESTORE.getMean() / MICRO;
+	}
+
+	@Override
+	public long getBlobRestore99() {
+		return BLOB_RESTORE.getPercentile(99) / MICRO;
+	}
+
+	@Override
+	public String getText() {
+		return text();
+	}
+
+	@Override
+	public void reset() {
+		resetAll();
+	}
+}
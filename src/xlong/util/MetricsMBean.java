@@ -0,0 +1,92 @@
+package xlong.util;
+
+/**
+ * JMX interface of {@link Metrics}.
+ * Latencies are in microseconds.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public interface MetricsMBean {
+
+	/**
+	 * @return the number of bytes hashed
+	 */
+	long getBytesHashed();
+
+	/**
+	 * @return the number of bytes compressed, before compression
+	 */
+	long getBytesCompressed();
+
+	/**
+	 * @return the number of bytes decompressed, after decompression
+	 */
+	long getBytesDecompressed();
+
+	/**
+	 * @return compressed size divided by original size, 0 if nothing
+	 * compressed
+	 */
+	double getCompressionRatio();
+
+	/**
+	 * @return the number of objects written
+	 */
+	long getObjectsWritten();
+
+	/**
+	 * @return the number of objects not written because they exist
+	 */
+	long getObjectsDeduplicated();
+
+	/**
+	 * @return the number of files and directories forced to the disk
+	 */
+	long getFilesSynced();
+
+	/**
+	 * @return hits divided by lookups of the container pool,
+	 * 0 if no lookup
+	 */
+	double getPoolHitRate();
+
+	/**
+	 * @return the mean latency of loading containers
+	 */
+	double getLoadMean();
+
+	/**
+	 * @return the 99th percentile latency of loading containers
+	 */
+	long getLoad99();
+
+	/**
+	 * @return the mean latency of creating blobs
+	 */
+	double getBlobCreateMean();
+
+	/**
+	 * @return the 99th percentile latency of creating blobs
+	 */
+	long getBlobCreate99();
+
+	/**
+	 * @return the mean latency of restoring blobs
+	 */
+	double getBlobRestoreMean();
+
+	/**
+	 * @return the 99th percentile latency of restoring blobs
+	 */
+	long getBlobRestore99();
+
+	/**
+	 * @return all metrics as text
+	 */
+	String getText();
+
+	/**
+	 * Set all metrics to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,87 @@
+package xlong.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * JUnit test class for Metrics, Counter and Histogram classes.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class MetricsTest {
+
+	/** the number of threads. */
+	private static final int THREADS = 4;
+
+	/** the number of adds per thread. */
+	private static final int NUM = 100000;
+
+	/**
+	 * Test counter.
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	public final void testCounter() throws InterruptedException {
+		final Counter counter = new Counter();
+		Thread[] threads = new Thread[THREADS];
+		for (int i = 0; i < THREADS; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < NUM; j++) {
+						counter.increment();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t:threads) {
+			t.join();
+		}
+		assertEquals((long) THREADS * NUM, counter.sum());
+		counter.reset();
+		assertEquals(0, counter.sum());
+	}
+
+	/**
+	 * Test histogram.
+	 */
+	@Test
+	public final void testHistogram() {
+		for (long v = 0; v < 1 << 20; v = v * 3 / 2 + 1) {
+			int i = Histogram.index(v);
+			assertTrue(Histogram.lowerBound(i) <= v);
+			assertTrue(Histogram.lowerBound(i + 1) > v);
+		}
+		assertEquals(Histogram.index(Long.MAX_VALUE),
+				(Long.SIZE - 2) * 4 - 1);
+
+		Histogram h = new Histogram();
+		for (int v = 1; v <= 1000; v++) {
+			h.record(v);
+		}
+		assertEquals(1000, h.getCount());
+		assertEquals(500.5, h.getMean(), 1e-9);
+		assertEquals(1000, h.getMax());
+		long p50 = h.getPercentile(50);
+		assertTrue(p50 >= 500 && p50 <= 500 * 5 / 4);
+		assertEquals(1000, h.getPercentile(100));
+	}
+
+	/**
+	 * Test text dump.
+	 */
+	@Test
+	public final void testDump() {
+		Metrics.resetAll();
+		SHA1Util.sha1Checksum("abc");
+		Metrics.LOAD.record(2000);
+		String text = Metrics.text();
+		assertTrue(text.contains("bytes.hashed 3"));
+		assertTrue(text.contains("container.load count=1 mean=2.0us"));
+		assertTrue(Metrics.register());
+		assertTrue(Metrics.register());
+	}
+}
@@ -0,0 +1,561 @@
+package xlong.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Level gated reporting of events and progress.
+ * <p>
+ * Messages under the current level are dropped. Check the level before
+ * building a message, then a disabled level costs only one field read:
+ * <pre>
+ * if (Reporter.isDebug()) {
+ *     Reporter.debug("Create Blob for " + filePath);
+ * }
+ * </pre>
+ * The level is read from the system property "lxfile.level"
+ * (DEBUG, INFO, WARN, ERROR or OFF), INFO by default.
+ * Messages go to a sink, the standard output by default. A thread can
+ * send its own messages to another sink, such as a client of the
+ * daemon. A meter reports to the sink of the thread created it, from
+ * whichever thread adds work to it.
+ * If the system property "lxfile.async" is true, the standard output
+ * is written by a background thread, so callers never wait for it.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Reporter {
+
+	/** the interval between two progress reports in nanoseconds. */
+	private static final long INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	/** bytes in a megabyte. */
+	private static final double MB = 1024 * 1024;
+
+	/** the current level. */
+	private static volatile int threshold;
+
+	/** the current sink. */
+	private static volatile Sink sink;
+
+	/** the sink of the current thread, null for the current sink. */
+	private static final ThreadLocal<Sink> THREAD_SINK = new ThreadLocal<>();
+
+	/** the meter of the current thread. */
+	private static final ThreadLocal<Meter> METER = new ThreadLocal<>();
+
+	static {
+		Level level;
+		try {
+			level = Level.valueOf(System.getProperty("lxfile.level", "INFO")
+					.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			level = Level.INFO;
+		}
+		threshold = level.ordinal();
+		if (Boolean.getBoolean("lxfile.async")) {
+			final AsyncSink async = new AsyncSink(System.out,
+					AsyncSink.DEFAULT_CAPACITY);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					async.close();
+				}
+			});
+			sink = async;
+		} else {
+			sink = new StreamSink(System.out);
+		}
+	}
+
+	/**
+	 * Private constructor to make sure no instance of this class will be
+	 * created.
+	 */
+	private Reporter() {
+		// will not be called
+	}
+
+	/**
+	 * Levels of messages, from the most to the least verbose.
+	 */
+	public enum Level {
+		/** one message per object. */
+		DEBUG,
+		/** one message per operation, and progress. */
+		INFO,
+		/** something unexpected but handled. */
+		WARN,
+		/** an operation failed. */
+		ERROR,
+		/** nothing is reported. */
+		OFF
+	}
+
+	/**
+	 * Receiver of messages.
+	 * Called by any thread, must be thread safe.
+	 */
+	public interface Sink {
+		/**
+		 * Receive a message.
+		 * @param level the level of the message
+		 * @param message the message
+		 */
+		void report(Level level, String message);
+
+		/**
+		 * Write out all messages received.
+		 */
+		void flush();
+	}
+
+	/**
+	 * @return the current level
+	 */
+	public static Level getLevel() {
+		return Level.values()[threshold];
+	}
+
+	/**
+	 * @param level the level to set
+	 */
+	public static void setLevel(final Level level) {
+		threshold = level.ordinal();
+	}
+
+	/**
+	 * Set the sink, the old sink is flushed.
+	 * @param newSink the sink to set
+	 */
+	public static void setSink(final Sink newSink) {
+		Sink old = sink;
+		sink = newSink;
+		old.flush();
+	}
+
+	/**
+	 * Set the sink of messages reported by the current thread.
+	 * @param threadSink the sink, null for the current sink
+	 */
+	public static void setThreadSink(final Sink threadSink) {
+		if (threadSink == null) {
+			THREAD_SINK.remove();
+		} else {
+			THREAD_SINK.set(threadSink);
+		}
+	}
+
+	/**
+	 * Get the sink of messages reported by the current thread,
+	 * to report through it from other threads.
+	 * @return the sink, null for the current sink
+	 */
+	public static Sink getThreadSink() {
+		return THREAD_SINK.get();
+	}
+
+	/**
+	 * Write out all messages reported.
+	 */
+	public static void flush() {
+		sink.flush();
+	}
+
+	/**
+	 * @param level the level
+	 * @return messages of the level are reported or not
+	 */
+	public static boolean isEnabled(final Level level) {
+		return level.ordinal() >= threshold;
+	}
+
+	/**
+	 * @return debug messages are reported or not
+	 */
+	public static boolean isDebug() {
+		return threshold <= 0;
+	}
+
+	/**
+	 * @return info messages are reported or not
+	 */
+	public static boolean isInfo() {
+		return threshold <= 1;
+	}
+
+	/**
+	 * Report a message.
+	 * @param level the level
+	 * @param message the message
+	 */
+	public static void report(final Level level, final String message) {
+		report(THREAD_SINK.get(), level, message);
+	}
+
+	/**
+	 * Report a message to a sink.
+	 * @param to the sink, null for the current sink
+	 * @param level the level
+	 * @param message the message
+	 */
+	private static void report(final Sink to, final Level level,
+			final String message) {
+		if (isEnabled(level)) {
+			(to == null ? sink : to).report(level, message);
+		}
+	}
+
+	/**
+	 * Report a debug message.
+	 * @param message the message
+	 */
+	public static void debug(final String message) {
+		report(Level.DEBUG, message);
+	}
+
+	/**
+	 * Report an info message.
+	 * @param message the message
+	 */
+	public static void info(final String message) {
+		report(Level.INFO, message);
+	}
+
+	/**
+	 * Report a warning message.
+	 * @param message the message
+	 */
+	public static void warn(final String message) {
+		report(Level.WARN, message);
+	}
+
+	/**
+	 * Report an error message.
+	 * @param message the message
+	 */
+	public static void error(final String message) {
+		report(Level.ERROR, message);
+	}
+
+	/**
+	 * Set the meter of the current thread.
+	 * @param meter the meter
+	 */
+	public static void begin(final Meter meter) {
+		METER.set(meter);
+	}
+
+	/**
+	 * Get the meter of the current thread, to share it with other threads.
+	 * @return the meter, null if none
+	 */
+	public static Meter current() {
+		return METER.get();
+	}
+
+	/**
+	 * Remove the meter of the current thread and report its summary.
+	 * @return the meter, null if none
+	 */
+	public static Meter end() {
+		Meter meter = METER.get();
+		METER.remove();
+		if (meter != null) {
+			meter.finish();
+		}
+		return meter;
+	}
+
+	/**
+	 * Add work done to the meter of the current thread, if any.
+	 * @param files the number of files done
+	 * @param bytes the number of bytes done
+	 */
+	public static void progress(final long files, final long bytes) {
+		Meter meter = METER.get();
+		if (meter != null) {
+			meter.add(files, bytes);
+		}
+	}
+
+	/**
+	 * Progress of one operation, reported at most once a second
+	 * as files per second, megabytes per second and,
+	 * if the total is known, the estimated time left.
+	 */
+	public static final class Meter {
+
+		/** the name of the operation. */
+		private final String name;
+
+		/** the start time in nanoseconds. */
+		private final long start = System.nanoTime();
+
+		/** the number of files done. */
+		private final AtomicLong files = new AtomicLong();
+
+		/** the number of bytes done. */
+		private final AtomicLong bytes = new AtomicLong();
+
+		/** the time of the next report in nanoseconds. */
+		private final AtomicLong next = new AtomicLong(start + INTERVAL);
+
+		/** the number of files in total, 0 if unknown. */
+		private volatile long totalFiles;
+
+		/** the sink of the thread created the meter, null if none. */
+		private final Sink owner = THREAD_SINK.get();
+
+		/**
+		 * Constructor. The progress is reported to the sink of the
+		 * current thread.
+		 * @param inName the name of the operation
+		 */
+		public Meter(final String inName) {
+			name = inName;
+		}
+
+		/**
+		 * @param total the number of files in total, 0 if unknown
+		 */
+		public void setTotalFiles(final long total) {
+			totalFiles = total;
+		}
+
+		/**
+		 * Add work done, report if a second passed since the last report.
+		 * @param doneFiles the number of files done
+		 * @param doneBytes the number of bytes done
+		 */
+		public void add(final long doneFiles, final long doneBytes) {
+			files.addAndGet(doneFiles);
+			bytes.addAndGet(doneBytes);
+			if (!isInfo()) {
+				return;
+			}
+			long now = System.nanoTime();
+			long time = next.get();
+			if (now - time >= 0 && next.compareAndSet(time, now + INTERVAL)) {
+				report(owner, Level.INFO, toString());
+			}
+		}
+
+		/**
+		 * Report the summary.
+		 */
+		public void finish() {
+			if (isInfo()) {
+				report(owner, Level.INFO, toString());
+			}
+		}
+
+		/**
+		 * @return the number of files done
+		 */
+		public long getFiles() {
+			return files.get();
+		}
+
+		/**
+		 * @return the number of bytes done
+		 */
+		public long getBytes() {
+			return bytes.get();
+		}
+
+		@Override
+		public String toString() {
+			double seconds = Math.max(1e-9,
+					(System.nanoTime() - start) / 1e9);
+			long f = files.get();
+			long b = bytes.get();
+			double rate = f / seconds;
+			StringBuilder sb = new StringBuilder();
+			sb.append(name).append(": ").append(f);
+			long total = totalFiles;
+			if (total > 0) {
+				sb.append('/').append(total);
+			}
+			sb.append(" files, ")
+				.append(String.format(Locale.ROOT, "%.1f MB, ", b / MB))
+				.append(String.format(Locale.ROOT, "%.1f files/s, ", rate))
+				.append(String.format(Locale.ROOT, "%.1f MB/s",
+						b / MB / seconds));
+			if (total > 0 && rate > 0) {
+				long left = (long) Math.max(0, (total - f) / rate);
+				sb.append(String.format(Locale.ROOT, ", ETA %d:%02d:%02d",
+						left / 3600, left / 60 % 60, left % 60));
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Sink prints messages to a stream at once.
+	 */
+	public static final class StreamSink implements Sink {
+
+		/** the stream. */
+		private final PrintStream out;
+
+		/**
+		 * Constructor.
+		 * @param inOut the stream
+		 */
+		public StreamSink(final PrintStream inOut) {
+			out = inOut;
+		}
+
+		@Override
+		public void report(final Level level, final String message) {
+			out.println(format(level, message));
+		}
+
+		@Override
+		public void flush() {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Sink buffers messages in a bounded queue, a background thread
+	 * writes them to a stream. Messages are dropped if the queue is
+	 * full, the number dropped is reported later.
+	 */
+	public static final class AsyncSink implements Sink {
+
+		/** the default capacity of the queue. */
+		public static final int DEFAULT_CAPACITY = 8192;
+
+		/** the queue of messages, and latches of flushes. */
+		private final BlockingQueue<java.lang.Object> queue;
+
+		/** the number of messages dropped. */
+		private final AtomicLong dropped = new AtomicLong();
+
+		/** the writer. */
+		private final Writer out;
+
+		/** the background thread. */
+		private final Thread thread;
+
+		/** closed or not. */
+		private volatile boolean closed;
+
+		/**
+		 * Constructor, starts the background thread.
+		 * @param stream the stream to write
+		 * @param capacity the capacity of the queue
+		 */
+		public AsyncSink(final PrintStream stream, final int capacity) {
+			queue = new ArrayBlockingQueue<>(capacity);
+			out = new BufferedWriter(new OutputStreamWriter(stream));
+			thread = new Thread("Reporter") {
+				@Override
+				public void run() {
+					write();
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		public void report(final Level level, final String message) {
+			if (closed || !queue.offer(format(level, message))) {
+				dropped.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void flush() {
+			CountDownLatch latch = new CountDownLatch(1);
+			try {
+				if (closed || !thread.isAlive()) {
+					return;
+				}
+				queue.put(latch);
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Write out all messages and stop the background thread.
+		 */
+		public void close() {
+			flush();
+			closed = true;
+			thread.interrupt();
+		}
+
+		/**
+		 * @return the number of messages dropped
+		 */
+		public long getDropped() {
+			return dropped.get();
+		}
+
+		/**
+		 * Write messages until closed.
+		 */
+		private void write() {
+			long reported = 0;
+			while (!closed) {
+				java.lang.Object o;
+				try {
+					o = queue.take();
+				} catch (InterruptedException e) {
+					// closed
+					return;
+				}
+				try {
+					if (o instanceof String) {
+						out.write((String) o);
+						out.write(System.lineSeparator());
+					}
+					long d = dropped.get();
+					if (d != reported) {
+						out.write("(" + (d - reported)
+								+ " messages dropped)");
+						out.write(System.lineSeparator());
+						reported = d;
+					}
+					if (queue.isEmpty() || o instanceof CountDownLatch) {
+						out.flush();
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				} finally {
+					if (o instanceof CountDownLatch) {
+						((CountDownLatch) o).countDown();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Format a message.
+	 * @param level the level
+	 * @param message the message
+	 * @return the line to write
+	 */
+	private static String format(final Level level, final String message) {
+		if (level == Level.WARN || level == Level.ERROR) {
+			return level + ": " + message;
+		}
+		return message;
+	}
+}
@@ -0,0 +1,116 @@
+package xlong.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * JUnit test class for Reporter class.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class ReporterTest {
+
+	/**
+	 * Test levels and sinks.
+	 */
+	@Test
+	public final void testReporter() {
+		final List<String> messages = new ArrayList<>();
+		Reporter.Level level = Reporter.getLevel();
+		Reporter.setSink(new Reporter.Sink() {
+			@Override
+			public synchronized void report(final Reporter.Level l,
+					final String message) {
+				messages.add(l + " " + message);
+			}
+
+			@Override
+			public void flush() {
+			}
+		});
+		try {
+			Reporter.setLevel(Reporter.Level.INFO);
+			Reporter.debug("a");
+			Reporter.info("b");
+			Reporter.error("c");
+			assertEquals("[INFO b, ERROR c]", messages.toString());
+			assertEquals(false, Reporter.isDebug());
+
+			Reporter.setLevel(Reporter.Level.DEBUG);
+			messages.clear();
+			Reporter.begin(new Reporter.Meter("Test"));
+			Reporter.progress(2, 1024 * 1024);
+			Reporter.Meter meter = Reporter.end();
+			Reporter.progress(1, 1);
+			assertEquals(2, meter.getFiles());
+			assertEquals(1024 * 1024, meter.getBytes());
+			assertEquals(1, messages.size());
+			assertTrue(messages.get(0).startsWith("INFO Test: 2 files, 1.0 MB"));
+
+			Reporter.setLevel(Reporter.Level.OFF);
+			messages.clear();
+			Reporter.error("d");
+			assertEquals(0, messages.size());
+		} finally {
+			Reporter.setLevel(level);
+			Reporter.setSink(new Reporter.StreamSink(System.out));
+		}
+	}
+
+	/**
+	 * Test a meter reports to the sink of the thread created it,
+	 * when work is added by another thread.
+	 * @throws InterruptedException if interrupted
+	 */
+	@Test
+	public final void testMeterSink() throws InterruptedException {
+		Reporter.Level level = Reporter.getLevel();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Reporter.setThreadSink(new Reporter.StreamSink(
+				new PrintStream(bytes)));
+		try {
+			Reporter.setLevel(Reporter.Level.INFO);
+			final Reporter.Meter meter = new Reporter.Meter("Owned");
+			Thread worker = new Thread() {
+				@Override
+				public void run() {
+					meter.finish();
+				}
+			};
+			worker.start();
+			worker.join();
+			assertTrue(bytes.toString().startsWith("Owned: 0 files"));
+		} finally {
+			Reporter.setThreadSink(null);
+			Reporter.setLevel(level);
+		}
+	}
+
+	/**
+	 * Test the async sink.
+	 */
+	@Test
+	public final void testAsyncSink() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Reporter.AsyncSink sink = new Reporter.AsyncSink(
+				new PrintStream(bytes), 4);
+		for (int i = 0; i < 3; i++) {
+			sink.report(Reporter.Level.INFO, "m" + i);
+		}
+		sink.flush();
+		String s = bytes.toString();
+		assertTrue(s.contains("m0") && s.contains("m2"));
+		sink.report(Reporter.Level.WARN, "w");
+		sink.close();
+		assertTrue(bytes.toString().contains("WARN: w"));
+		sink.report(Reporter.Level.INFO, "x");
+		assertEquals(1, sink.getDropped());
+	}
+}
@@ -1,8 +1,11 @@
 package xlong.util;
 
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -28,13 +31,33 @@ public final class SHA1Util {
 	}
 	
 	/** Maximum number of bytes to read in each loop.*/
-	private static final int MAXBYTE = 1024;
+	private static final int MAXBYTE = 64 * 1024;
+	/** Files from this size are memory mapped. */
+	private static final long MAPLIM = 4 * 1024 * 1024;
+	/** Maximum number of bytes to map at a time. */
+	private static final long MAPBYTE = 64 * 1024 * 1024;
 	/** Constant for changing byte into numbers. */
 	private static final int C1 = 0xff;
-	/** Constant for changing byte into numbers. */
-	private static final int C2 = 0x100;
-	/** The base of the output integer. Always uses 16.*/
-	private static final int BASE = 16;
+	/** Constant for the low hexadecimal digit of a byte. */
+	private static final int LOW = 0xf;
+	/** The hexadecimal digits. */
+	private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+	/** The SHA-1 message digest of each thread, reused. */
+	private static final ThreadLocal<MessageDigest> DIGEST =
+			new ThreadLocal<MessageDigest>() {
+				@Override
+				protected MessageDigest initialValue() {
+					return newDigest();
+				}
+			};
+	/** The read buffer of each thread, reused. */
+	private static final ThreadLocal<ByteBuffer> BUFFER =
+			new ThreadLocal<ByteBuffer>() {
+				@Override
+				protected ByteBuffer initialValue() {
+					return ByteBuffer.allocate(MAXBYTE);
+				}
+			};
 	
 	/**
 	 * Gets the SHA-1 checksum of the file with given name.
@@ -47,30 +70,36 @@ public final class SHA1Util {
 			final Path filePath) 
 			throws IOException {
 		
-        MessageDigest sha1 = null;
-		try {
-			sha1 = MessageDigest.getInstance("SHA1");
-		} catch (NoSuchAlgorithmException e) {
-			e.printStackTrace();
-		}
+        MessageDigest sha1 = digest();
 		
-        FileInputStream fis = new FileInputStream(filePath.toString());
-        byte[] data = new byte[MAXBYTE];
-        int read = 0; 
-        while ((read = fis.read(data)) != -1) {
-            sha1.update(data, 0, read);
+        long start = Tracer.start();
+        long total = 0;
+        try (FileChannel in = FileChannel.open(filePath,
+        		StandardOpenOption.READ)) {
+        	long size = in.size();
+        	if (size >= MAPLIM) {
+        		// large files are hashed from the page cache directly
+        		while (total < size) {
+        			long length = Math.min(MAPBYTE, size - total);
+        			sha1.update(in.map(MapMode.READ_ONLY, total, length));
+        			total += length;
+        		}
+        		in.position(total);
+        	}
+        	ByteBuffer data = BUFFER.get();
+        	data.clear();
+        	int read = 0; 
+        	while ((read = in.read(data)) != -1) {
+        		sha1.update(data.array(), 0, read);
+        		total += read;
+        		data.clear();
+        	}
         }
-        fis.close();
+        Metrics.HASHED.add(total);
         
-        byte[] hashBytes = sha1.digest();
-        StringBuffer sb = new StringBuffer();
-        for (int i = 0; i < hashBytes.length; i++) {
-          sb.append(Integer
-        		  .toString((hashBytes[i] & C1) + C2, BASE)
-        		  .substring(1));
-        }
-        
-        return sb.toString();
+        String checksum = toHexString(sha1.digest());
+        Tracer.end(start, Tracer.HASH, checksum, total);
+        return checksum;
 	}
 	
 	/**
@@ -82,22 +111,52 @@ public final class SHA1Util {
 	public static String sha1Checksum(
 			final String input) {
 		
-        MessageDigest sha1 = null;
+        MessageDigest sha1 = digest();
+        
+        byte[] bytes = input.getBytes();
+        Metrics.HASHED.add(bytes.length);
+        return toHexString(sha1.digest(bytes));
+	}
+
+	/**
+	 * Gets the SHA-1 message digest of this thread, reset.
+	 * 
+	 * @return the message digest.
+	 */
+	private static MessageDigest digest() {
+		MessageDigest sha1 = DIGEST.get();
+		sha1.reset();
+		return sha1;
+	}
+
+	/**
+	 * Creates a SHA-1 message digest.
+	 * 
+	 * @return the message digest.
+	 */
+	public static MessageDigest newDigest() {
 		try {
-			sha1 = MessageDigest.getInstance("SHA1");
+			return MessageDigest.getInstance("SHA1");
 		} catch (NoSuchAlgorithmException e) {
-			e.printStackTrace();
+			throw new IllegalStateException(e);
 		}
-        
-        byte[] hashBytes = sha1.digest(input.getBytes());
-        StringBuffer sb = new StringBuffer();
-        for (int i = 0; i < hashBytes.length; i++) {
-          sb.append(Integer
-        		  .toString((hashBytes[i] & C1) + C2, BASE)
-        		  .substring(1));
-        }
-        
-        return sb.toString();
+	}
+	
+	/**
+	 * Gets the hexadecimal representation of the given hash value.
+	 * 
+	 * @param hashBytes the hash value.
+	 * @return the hexadecimal representation of the hash value.
+	 */
+	public static String toHexString(
+			final byte[] hashBytes) {
+		char[] chars = new char[hashBytes.length * 2];
+		for (int i = 0; i < hashBytes.length; i++) {
+			int b = hashBytes[i] & C1;
+			chars[2 * i] = DIGITS[b >>> 4];
+			chars[2 * i + 1] = DIGITS[b & LOW];
+		}
+		return new String(chars);
 	}
 
 	/**
@@ -109,22 +168,13 @@ public final class SHA1Util {
 	public static String sha1Checksum(
 			final byte[] bytesArray) {
 		
-        MessageDigest sha1 = null;
-		try {
-			sha1 = MessageDigest.getInstance("SHA1");
-		} catch (NoSuchAlgorithmException e) {
-			e.printStackTrace();
-		}
-        
-        byte[] hashBytes = sha1.digest(bytesArray);
-        StringBuffer sb = new StringBuffer();
-        for (int i = 0; i < hashBytes.length; i++) {
-          sb.append(Integer
-        		  .toString((hashBytes[i] & C1) + C2, BASE)
-        		  .substring(1));
-        }
+        MessageDigest sha1 = digest();
         
-        return sb.toString();
+        long start = Tracer.start();
+        Metrics.HASHED.add(bytesArray.length);
+        String checksum = toHexString(sha1.digest(bytesArray));
+        Tracer.end(start, Tracer.HASH, checksum, bytesArray.length);
+        return checksum;
 	}
 	
 }
@@ -0,0 +1,76 @@
+package xlong.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Sink writes spans to a text file, one span per line:
+ * <pre>
+ * start(ms) thread name subject size duration(ms)
+ * </pre>
+ * Start times are from the creation of the sink.
+ * Sort the file by the first column to see a timeline.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class TimelineSink implements TraceSink {
+
+	/** nanoseconds in a millisecond. */
+	private static final double MILLI = 1e6;
+
+	/** the time the sink is created, in nanoseconds. */
+	private final long origin = System.nanoTime();
+
+	/** the writer. */
+	private final Writer out;
+
+	/**
+	 * Constructor. The file is replaced.
+	 * @param path the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public TimelineSink(final Path path) throws IOException {
+		out = Files.newBufferedWriter(path, Charset.forName("UTF-8"));
+	}
+
+	@Override
+	public boolean isActive() {
+		return true;
+	}
+
+	@Override
+	public synchronized void span(final Tracer.Span span) {
+		try {
+			out.write(String.format(Locale.ROOT, "%.3f %s %s %s %d %.3f%n",
+					(span.getStart() - origin) / MILLI, span.getThread(),
+					span.getName(), span.getSubject(), span.getSize(),
+					span.getDuration() / MILLI));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public synchronized void flush() {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write out all spans and close the file.
+	 */
+	public synchronized void close() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
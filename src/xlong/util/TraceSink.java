@@ -0,0 +1,33 @@
+package xlong.util;
+
+/**
+ * Receiver of spans traced by {@link Tracer}.
+ * <p>
+ * Sinks can be added by {@link Tracer#addSink(TraceSink)}, or found
+ * by {@link java.util.ServiceLoader}: list the class in
+ * META-INF/services/xlong.util.TraceSink and give it a public
+ * constructor without arguments.
+ * A sink takes spans only while it is active. A sink that turns on
+ * or off by itself calls {@link Tracer#refresh()} when it does.
+ * Called by any thread, must be thread safe.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public interface TraceSink {
+
+	/**
+	 * @return the sink takes spans now or not
+	 */
+	boolean isActive();
+
+	/**
+	 * Receive a finished span.
+	 * @param span the span
+	 */
+	void span(Tracer.Span span);
+
+	/**
+	 * Write out all spans received.
+	 */
+	void flush();
+}
@@ -0,0 +1,268 @@
+package xlong.util;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Timing of single steps, such as hashing, compressing or loading
+ * one object.
+ * <p>
+ * A step is traced as a span with its name, its subject (a checksum
+ * or a file), its size (bytes, or the number of sons of a tree)
+ * and its duration. Spans go to sinks, tracing is
+ * on only while a sink is active. When it is off, a step costs one
+ * field read and nothing is allocated:
+ * <pre>
+ * long start = Tracer.start();
+ * ...
+ * Tracer.end(start, Tracer.HASH, checksum, size);
+ * </pre>
+ * Sinks are found by {@link ServiceLoader}. On Java 11 or later,
+ * {@link FlightRecorderSink} is active while a Flight Recorder
+ * recording runs, and commits a JFR event per span. If the system
+ * property "lxfile.trace" is set, a {@link TimelineSink} also writes
+ * a text timeline to the file it names.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public final class Tracer {
+
+	/** name of hashing steps. */
+	public static final String HASH = "hash";
+
+	/** name of compressing steps. */
+	public static final String COMPRESS = "compress";
+
+	/** name of decompressing steps. */
+	public static final String DECOMPRESS = "decompress";
+
+	/** name of writing steps. */
+	public static final String WRITE = "write";
+
+	/** name of saving containers. */
+	public static final String SAVE = "save";
+
+	/** name of loading containers. */
+	public static final String LOAD = "load";
+
+	/** name of recovering containers. */
+	public static final String RECOVER = "recover";
+
+	/** the start of a step when tracing is off. */
+	public static final long OFF = Long.MIN_VALUE;
+
+	/** the sinks. */
+	private static final List<TraceSink> SINKS =
+			new CopyOnWriteArrayList<TraceSink>();
+
+	/** tracing or not. */
+	private static volatile boolean enabled;
+
+	static {
+		try {
+			for (TraceSink sink:ServiceLoader.load(TraceSink.class)) {
+				SINKS.add(sink);
+			}
+		} catch (ServiceConfigurationError e) {
+			e.printStackTrace();
+		}
+		String file = System.getProperty("lxfile.trace");
+		if (file != null) {
+			try {
+				final TimelineSink timeline =
+						new TimelineSink(Paths.get(file));
+				Runtime.getRuntime().addShutdownHook(new Thread() {
+					@Override
+					public void run() {
+						timeline.close();
+					}
+				});
+				SINKS.add(timeline);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		refresh();
+	}
+
+	/**
+	 * Private constructor to make sure no instance of this class will be
+	 * created.
+	 */
+	private Tracer() {
+		// will not be called
+	}
+
+	/**
+	 * A finished step.
+	 */
+	public static final class Span {
+
+		/** the name of the step. */
+		private final String name;
+
+		/** the checksum or the file the step works on, can be null. */
+		private final String subject;
+
+		/** the bytes or the number of sons, -1 if unknown. */
+		private final long size;
+
+		/** the start time in nanoseconds. */
+		private final long start;
+
+		/** the duration in nanoseconds. */
+		private final long duration;
+
+		/** the name of the thread. */
+		private final String thread;
+
+		/**
+		 * Constructor.
+		 * @param inName the name of the step
+		 * @param inSubject the checksum or the file, can be null
+		 * @param inSize the bytes or the number of sons, -1 if unknown
+		 * @param inStart the start time in nanoseconds
+		 * @param inDuration the duration in nanoseconds
+		 * @param inThread the name of the thread
+		 */
+		public Span(final String inName, final String inSubject,
+				final long inSize, final long inStart, final long inDuration,
+				final String inThread) {
+			name = inName;
+			subject = inSubject;
+			size = inSize;
+			start = inStart;
+			duration = inDuration;
+			thread = inThread;
+		}
+
+		/**
+		 * @return the name of the step
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the checksum or the file the step works on, can be null
+		 */
+		public String getSubject() {
+			return subject;
+		}
+
+		/**
+		 * @return the bytes or the number of sons, -1 if unknown
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * @return the start time in nanoseconds, see
+		 * {@link System#nanoTime()}
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * @return the duration in nanoseconds
+		 */
+		public long getDuration() {
+			return duration;
+		}
+
+		/**
+		 * @return the name of the thread
+		 */
+		public String getThread() {
+			return thread;
+		}
+
+		@Override
+		public String toString() {
+			return name + " " + subject + " " + size + " " + duration;
+		}
+	}
+
+	/**
+	 * @return tracing or not
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Add a sink, tracing is on after this if the sink is active.
+	 * @param sink the sink
+	 */
+	public static void addSink(final TraceSink sink) {
+		SINKS.add(sink);
+		refresh();
+	}
+
+	/**
+	 * Remove a sink, tracing is off if no active sink left.
+	 * The sink is flushed.
+	 * @param sink the sink
+	 */
+	public static void removeSink(final TraceSink sink) {
+		SINKS.remove(sink);
+		refresh();
+		sink.flush();
+	}
+
+	/**
+	 * Turn tracing on if a sink is active, off if none.
+	 * Called by sinks when they turn on or off.
+	 */
+	public static void refresh() {
+		boolean on = false;
+		for (TraceSink sink:SINKS) {
+			on |= sink.isActive();
+		}
+		enabled = on;
+	}
+
+	/**
+	 * Start a step.
+	 * @return the start time, {@link #OFF} if tracing is off
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : OFF;
+	}
+
+	/**
+	 * End a step.
+	 * @param start the value returned by {@link #start()}
+	 * @param name the name of the step
+	 * @param subject the checksum or the file the step works on
+	 * @param size the bytes or the number of sons, -1 if unknown
+	 */
+	public static void end(final long start, final String name,
+			final String subject, final long size) {
+		if (start == OFF) {
+			return;
+		}
+		Span span = new Span(name, subject, size, start,
+				System.nanoTime() - start, Thread.currentThread().getName());
+		for (TraceSink sink:SINKS) {
+			if (sink.isActive()) {
+				sink.span(span);
+			}
+		}
+	}
+
+	/**
+	 * Write out all spans of all sinks.
+	 */
+	public static void flush() {
+		for (TraceSink sink:SINKS) {
+			sink.flush();
+		}
+	}
+}
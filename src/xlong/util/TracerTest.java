@@ -0,0 +1,82 @@
+package xlong.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * JUnit test class for Tracer class.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+public class TracerTest {
+
+	/**
+	 * Test spans go to sinks only when added.
+	 */
+	@Test
+	public final void testTracer() {
+		final List<Tracer.Span> spans = new ArrayList<>();
+		TraceSink sink = new TraceSink() {
+			@Override
+			public boolean isActive() {
+				return true;
+			}
+
+			@Override
+			public synchronized void span(final Tracer.Span span) {
+				spans.add(span);
+			}
+
+			@Override
+			public void flush() {
+			}
+		};
+		assertEquals(Tracer.OFF, Tracer.start());
+		Tracer.addSink(sink);
+		try {
+			assertTrue(Tracer.isEnabled());
+			String checksum = SHA1Util.sha1Checksum(new byte[] {1, 2, 3});
+			assertEquals(1, spans.size());
+			Tracer.Span span = spans.get(0);
+			assertEquals(Tracer.HASH, span.getName());
+			assertEquals(checksum, span.getSubject());
+			assertEquals(3, span.getSize());
+			assertTrue(span.getDuration() >= 0);
+		} finally {
+			Tracer.removeSink(sink);
+		}
+		SHA1Util.sha1Checksum(new byte[] {1, 2, 3});
+		assertEquals(1, spans.size());
+		assertEquals(false, Tracer.isEnabled());
+	}
+
+	/**
+	 * Test timeline.
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Test
+	public final void testTimeline() throws IOException {
+		Path file = Files.createTempFile("timeline", ".txt");
+		try {
+			TimelineSink sink = new TimelineSink(file);
+			sink.span(new Tracer.Span(Tracer.LOAD, "abc", -1,
+					System.nanoTime(), 1500000, "main"));
+			sink.close();
+			List<String> lines = Files.readAllLines(file,
+					Charset.forName("UTF-8"));
+			assertEquals(1, lines.size());
+			assertTrue(lines.get(0).endsWith(" main load abc -1 1.500"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
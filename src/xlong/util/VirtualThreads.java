@@ -0,0 +1,73 @@
+package xlong.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads of Java 21, found by reflection so this
+ * class compiles and runs on Java 7.
+ * <p>
+ * The multi-release JAR replaces this class on Java 21 or later by one
+ * calling the API directly.
+ *
+ * @author Xiang Long (longx13@mails.tsinghua.edu.cn)
+ */
+final class VirtualThreads {
+
+	/** Executors.newVirtualThreadPerTaskExecutor, null if not found. */
+	private static final Method NEW_EXECUTOR;
+
+	/** factory of virtual threads, null if not found. */
+	private static final ThreadFactory FACTORY;
+
+	static {
+		Method m = null;
+		ThreadFactory f = null;
+		try {
+			m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			java.lang.Object b = Thread.class.getMethod("ofVirtual")
+					.invoke(null);
+			f = (ThreadFactory) builder.getMethod("factory").invoke(b);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// before Java 21
+			m = null;
+			f = null;
+		}
+		NEW_EXECUTOR = m;
+		FACTORY = f;
+	}
+
+	/**
+	 * Private constructor to make sure no instance of this class will be
+	 * created.
+	 */
+	private VirtualThreads() {
+		// will not be called
+	}
+
+	/**
+	 * @return a factory of virtual threads, null if not supported
+	 */
+	static ThreadFactory factory() {
+		return FACTORY;
+	}
+
+	/**
+	 * @return an executor runs each task in a new virtual thread,
+	 * null if not supported
+	 */
+	static ExecutorService newExecutor() {
+		if (NEW_EXECUTOR == null) {
+			return null;
+		}
+		try {
+			return (ExecutorService) NEW_EXECUTOR.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+}